@@ -0,0 +1,273 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.canonical;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Writes the canonical form of JSON values, as defined by the JSON Canonicalization Scheme (RFC 8785):
+ * no whitespace, object members sorted by their keys' UTF-16 code units, numbers written as the shortest
+ * ECMAScript form of their double value and strings with only the mandatory escapes, all encoded as UTF-8.
+ * Equal documents therefore always have the same canonical bytes, whatever their member order or number notation.
+ * <p>
+ * The {@code digest} methods feed those bytes into a {@link MessageDigest} through a small buffer,
+ * without building the canonical text first.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class CanonicalJSON {
+    private CanonicalJSON() {
+    }
+
+    public static String toString(JSONValue value) {
+        return new String(toBytes(value), StandardCharsets.UTF_8);
+    }
+
+    public static byte[] toBytes(JSONValue value) {
+        CanonicalOutput out = new CanonicalOutput(256);
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the canonical form of the given value to the given stream, which is not flushed or closed.
+     *
+     * @throws UncheckedIOException if the stream cannot be written to
+     */
+    public static void write(JSONValue value, OutputStream stream) {
+        CanonicalOutput out = new CanonicalOutput(stream);
+        write(value, out);
+        out.flush();
+    }
+
+    /**
+     * Updates the given digest with the canonical form of the given value and completes it.
+     *
+     * @param value  the value to digest
+     * @param digest the digest to update, such as {@code MessageDigest.getInstance("SHA-256")}
+     * @return the digest
+     * @throws IllegalArgumentException if the value contains a NaN or infinite number
+     */
+    public static byte[] digest(JSONValue value, MessageDigest digest) {
+        CanonicalOutput out = new CanonicalOutput(digest);
+        write(value, out);
+        out.flush();
+        return digest.digest();
+    }
+
+    /**
+     * Reads one value from the given reader and updates the given digest with its canonical form, without building
+     * a tree. Only the members of objects which are still open are kept, in their canonical form, so that they can be
+     * sorted once the object ends.
+     *
+     * @param reader the reader to read from
+     * @param digest the digest to update
+     * @return the digest
+     * @throws ParseException if the input is not valid JSON
+     */
+    public static byte[] digest(JSONReader reader, MessageDigest digest) throws ParseException {
+        CanonicalOutput out = new CanonicalOutput(digest);
+        write(reader, out);
+        out.flush();
+        return digest.digest();
+    }
+
+    private static void write(JSONValue value, CanonicalOutput out) {
+        switch (value.getType()) {
+            case OBJECT:
+                Map<String, JSONValue> map = value.toObject().toMap();
+                String[] keys = map.keySet().toArray(new String[0]);
+                Arrays.sort(keys);
+                out.write('{');
+                for (int i = 0; i < keys.length; i++) {
+                    if (i != 0)
+                        out.write(',');
+                    out.writeString(keys[i]);
+                    out.write(':');
+                    write(map.get(keys[i]), out);
+                }
+                out.write('}');
+                break;
+            case ARRAY:
+                List<JSONValue> list = value.toArray().toList();
+                out.write('[');
+                for (int i = 0, size = list.size(); i < size; i++) {
+                    if (i != 0)
+                        out.write(',');
+                    write(list.get(i), out);
+                }
+                out.write(']');
+                break;
+            case STRING:
+                out.writeString(value.toString());
+                break;
+            case NUMBER:
+                out.writeNumber(value.toNumber());
+                break;
+            case BOOLEAN:
+                out.writeAscii(value.toBoolean() ? "true" : "false");
+                break;
+            default:
+                out.writeAscii("null");
+        }
+    }
+
+    private static void write(JSONReader reader, CanonicalOutput root) {
+        Deque<Frame> frames = new ArrayDeque<>();
+        TokenType type = reader.getCurrentTokenType();
+        if (type == null)
+            type = reader.getNextTokenType();
+        while (true) {
+            Frame top = frames.peek();
+            // the output of the value starting at this token
+            CanonicalOutput out = root;
+            if (top != null) {
+                if (top.object) {
+                    // type is the key
+                    if (type == TokenType.OBJECT_END && top.members.isEmpty()) {
+                        type = close(frames, reader);
+                        if (type == null)
+                            return;
+                        continue;
+                    }
+                    if (type != TokenType.STRING)
+                        reader.error();
+                    top.key = (String) reader.getCurrentToken();
+                    reader.expectNextType(TokenType.COLON);
+                    type = reader.getNextTokenType();
+                    out = top.value = new CanonicalOutput(64);
+                } else {
+                    if (type == TokenType.ARRAY_END && top.count == 0) {
+                        type = close(frames, reader);
+                        if (type == null)
+                            return;
+                        continue;
+                    }
+                    out = top.out;
+                    if (top.count != 0)
+                        out.write(',');
+                }
+            }
+            switch (type) {
+                case OBJECT_START:
+                    frames.push(new Frame(true, out));
+                    type = reader.getNextTokenType();
+                    continue;
+                case ARRAY_START:
+                    out.write('[');
+                    frames.push(new Frame(false, out));
+                    type = reader.getNextTokenType();
+                    continue;
+                case STRING:
+                    out.writeString((String) reader.getCurrentToken());
+                    break;
+                case NUMBER:
+                    out.writeNumber((Number) reader.getCurrentToken());
+                    break;
+                case TRUE:
+                    out.writeAscii("true");
+                    break;
+                case FALSE:
+                    out.writeAscii("false");
+                    break;
+                case NULL:
+                    out.writeAscii("null");
+                    break;
+                default:
+                    reader.error();
+            }
+            type = completed(frames, reader);
+            if (type == null)
+                return;
+        }
+    }
+
+    /**
+     * Records a completed value in its container, and closes every container that ends after it.
+     *
+     * @return the first token of the next value or key, or null if the root value is complete
+     */
+    private static TokenType completed(Deque<Frame> frames, JSONReader reader) {
+        while (true) {
+            Frame top = frames.peek();
+            if (top == null)
+                return null;
+            if (top.object)
+                top.members.put(top.key, top.value.toByteArray());
+            top.count++;
+            TokenType type = reader.getNextTokenType();
+            if (type == TokenType.COMMA)
+                return reader.getNextTokenType();
+            if (type != (top.object ? TokenType.OBJECT_END : TokenType.ARRAY_END))
+                reader.error();
+            frames.pop();
+            top.close();
+        }
+    }
+
+    /**
+     * Closes an empty container.
+     */
+    private static TokenType close(Deque<Frame> frames, JSONReader reader) {
+        frames.pop().close();
+        return completed(frames, reader);
+    }
+
+    private static class Frame {
+        private final boolean object;
+        private final CanonicalOutput out;
+        /**
+         * The canonical form of the members of an object, sorted by key.
+         */
+        private final SortedMap<String, byte[]> members;
+        private String key;
+        private CanonicalOutput value;
+        private int count;
+
+        Frame(boolean object, CanonicalOutput out) {
+            this.object = object;
+            this.out = out;
+            this.members = object ? new TreeMap<>() : null;
+        }
+
+        void close() {
+            if (!object) {
+                out.write(']');
+                return;
+            }
+            out.write('{');
+            boolean first = true;
+            for (Map.Entry<String, byte[]> member : members.entrySet()) {
+                if (!first)
+                    out.write(',');
+                first = false;
+                out.writeString(member.getKey());
+                out.write(':');
+                out.write(member.getValue());
+            }
+            out.write('}');
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.canonical;
+
+import net.vpg.vjson.writer.NumberWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Encodes canonical JSON tokens as UTF-8 into a byte buffer, which is drained into a {@link MessageDigest}
+ * or an {@link OutputStream} whenever it fills up, or grows if it has neither.
+ */
+final class CanonicalOutput {
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private final MessageDigest digest;
+    private final OutputStream out;
+    private final StringBuilder number = new StringBuilder(32);
+    private byte[] buffer;
+    private int count;
+
+    CanonicalOutput(MessageDigest digest) {
+        this(digest, null, 8192);
+    }
+
+    CanonicalOutput(OutputStream out) {
+        this(null, out, 8192);
+    }
+
+    /**
+     * Creates a growing output.
+     */
+    CanonicalOutput(int capacity) {
+        this(null, null, capacity);
+    }
+
+    private CanonicalOutput(MessageDigest digest, OutputStream out, int capacity) {
+        this.digest = digest;
+        this.out = out;
+        this.buffer = new byte[capacity];
+    }
+
+    private void ensure(int n) {
+        if (count + n <= buffer.length)
+            return;
+        if (digest == null && out == null) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + n));
+        } else {
+            flush();
+        }
+    }
+
+    void flush() {
+        if (digest != null) {
+            digest.update(buffer, 0, count);
+        } else if (out != null) {
+            try {
+                out.write(buffer, 0, count);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        count = 0;
+    }
+
+    void write(char ascii) {
+        ensure(1);
+        buffer[count++] = (byte) ascii;
+    }
+
+    void write(byte[] bytes) {
+        if (bytes.length > buffer.length) {
+            flush();
+            if (digest != null) {
+                digest.update(bytes);
+                return;
+            }
+            if (out != null) {
+                try {
+                    out.write(bytes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    void writeAscii(CharSequence s) {
+        ensure(s.length());
+        for (int i = 0, len = s.length(); i < len; i++)
+            buffer[count++] = (byte) s.charAt(i);
+    }
+
+    void writeNumber(Number value) {
+        number.setLength(0);
+        NumberWriter.appendCanonical(number, value.doubleValue());
+        writeAscii(number);
+    }
+
+    /**
+     * Writes a quoted string, escaping only quotes, backslashes and control characters.
+     */
+    void writeString(String s) {
+        write('"');
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    ensure(1);
+                    buffer[count++] = (byte) c;
+                } else {
+                    writeEscape(c);
+                }
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[count++] = (byte) (0xc0 | c >> 6);
+                buffer[count++] = (byte) (0x80 | c & 0x3f);
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                ensure(4);
+                buffer[count++] = (byte) (0xf0 | cp >> 18);
+                buffer[count++] = (byte) (0x80 | cp >> 12 & 0x3f);
+                buffer[count++] = (byte) (0x80 | cp >> 6 & 0x3f);
+                buffer[count++] = (byte) (0x80 | cp & 0x3f);
+            } else {
+                // lone surrogates cannot be encoded, like String.getBytes they become the replacement character
+                if (Character.isSurrogate(c))
+                    c = '\uFFFD';
+                ensure(3);
+                buffer[count++] = (byte) (0xe0 | c >> 12);
+                buffer[count++] = (byte) (0x80 | c >> 6 & 0x3f);
+                buffer[count++] = (byte) (0x80 | c & 0x3f);
+            }
+        }
+        write('"');
+    }
+
+    private void writeEscape(char c) {
+        switch (c) {
+            case '"':
+                writeAscii("\\\"");
+                break;
+            case '\\':
+                writeAscii("\\\\");
+                break;
+            case '\b':
+                writeAscii("\\b");
+                break;
+            case '\f':
+                writeAscii("\\f");
+                break;
+            case '\n':
+                writeAscii("\\n");
+                break;
+            case '\r':
+                writeAscii("\\r");
+                break;
+            case '\t':
+                writeAscii("\\t");
+                break;
+            default:
+                ensure(6);
+                buffer[count++] = '\\';
+                buffer[count++] = 'u';
+                buffer[count++] = '0';
+                buffer[count++] = '0';
+                buffer[count++] = HEX[c >> 4];
+                buffer[count++] = HEX[c & 0xf];
+        }
+    }
+
+    /**
+     * @return the bytes of a growing output
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.index;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An index of the elements of a JSON file whose top-level value is an array, which allows reading single
+ * elements without scanning the file.
+ * <p>
+ * The index records the byte range of every element and, optionally, which element has which value of a
+ * key field, such as {@code "id"}. It is built by a single pass over the raw bytes, which does not decode
+ * or parse anything but the key fields, and can be stored in a sidecar file next to the indexed file.
+ * {@link #open(Path, String)} reuses the sidecar as long as the size and modification time of the file
+ * still match, and rebuilds it otherwise.
+ * <p>
+ * Lookups read only the bytes of the requested element, and can be made from several threads at once.
+ * The index can also be built from the command line with
+ * {@code java net.vpg.vjson.index.JSONIndex <file> [keyField]}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONIndex implements Closeable {
+    public static final String SIDECAR_EXTENSION = ".vjidx";
+    private static final int MAGIC = 0x564A4958; // VJIX
+    private static final byte VERSION = 1;
+    private final Path file;
+    private final long fileSize;
+    private final long lastModified;
+    private final long[] starts;
+    private final long[] ends;
+    private final String keyField;
+    private final Map<String, Integer> keys;
+    private FileChannel channel;
+
+    private JSONIndex(Path file, long fileSize, long lastModified, long[] starts, long[] ends, String keyField, Map<String, Integer> keys) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.starts = starts;
+        this.ends = ends;
+        this.keyField = keyField;
+        this.keys = keys;
+    }
+
+    /**
+     * Scans the given file and indexes its elements.
+     *
+     * @param file     a file containing a JSON array
+     * @param keyField the member of the elements to index the elements by, or null
+     * @return the index, which is not written to a sidecar
+     * @throws IOException    if the file cannot be read
+     * @throws ParseException if the file does not contain an array
+     */
+    public static JSONIndex build(Path file, String keyField) throws IOException {
+        long fileSize = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        Scanner scanner = new Scanner(keyField);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            long offset = 0;
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                scanner.scan(buffer.array(), buffer.limit(), offset);
+                offset += buffer.limit();
+                buffer.clear();
+            }
+            scanner.finish(offset);
+        }
+        return new JSONIndex(file, fileSize, lastModified,
+            Arrays.copyOf(scanner.starts, scanner.count), Arrays.copyOf(scanner.ends, scanner.count),
+            keyField, scanner.keys);
+    }
+
+    /**
+     * Loads the sidecar of the given file if it is up to date, or builds the index and writes the sidecar.
+     *
+     * @param file     a file containing a JSON array
+     * @param keyField the member of the elements to index the elements by, or null
+     * @return the index
+     * @throws IOException if the file cannot be read or the sidecar cannot be written
+     */
+    public static JSONIndex open(Path file, String keyField) throws IOException {
+        Path sidecar = sidecarOf(file);
+        if (Files.exists(sidecar)) {
+            JSONIndex index = load(file, sidecar);
+            if (index != null && index.isCurrent() && (keyField == null || keyField.equals(index.keyField)))
+                return index;
+        }
+        JSONIndex index = build(file, keyField);
+        index.write(sidecar);
+        return index;
+    }
+
+    /**
+     * Reads an index from a sidecar.
+     *
+     * @param file    the indexed file
+     * @param sidecar the sidecar
+     * @return the index, or null if the sidecar is not in a known format
+     * @throws IOException if the sidecar cannot be read
+     */
+    public static JSONIndex load(Path file, Path sidecar) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecar), 65536))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION)
+                return null;
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            int count = in.readInt();
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            for (int i = 0; i < count; i++) {
+                starts[i] = in.readLong();
+                ends[i] = in.readLong();
+            }
+            String keyField = in.readBoolean() ? readString(in) : null;
+            int keyCount = in.readInt();
+            Map<String, Integer> keys = new HashMap<>(Math.max((int) (keyCount / .75f) + 1, 16));
+            for (int i = 0; i < keyCount; i++)
+                keys.put(readString(in), in.readInt());
+            return new JSONIndex(file, fileSize, lastModified, starts, ends, keyField, keys);
+        }
+    }
+
+    public static Path sidecarOf(Path file) {
+        return file.resolveSibling(file.getFileName() + SIDECAR_EXTENSION);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0 || args.length > 2) {
+            System.err.println("Usage: java " + JSONIndex.class.getName() + " <file> [keyField]");
+            System.exit(2);
+        }
+        Path file = Paths.get(args[0]);
+        long start = System.nanoTime();
+        JSONIndex index = build(file, args.length == 2 ? args[1] : null);
+        Path sidecar = sidecarOf(file);
+        index.write(sidecar);
+        System.out.printf("Indexed %d elements%s of %s in %d ms, written to %s%n", index.size(),
+            index.keyField == null ? "" : " and " + index.keys.size() + " keys",
+            file, (System.nanoTime() - start) / 1000000, sidecar);
+    }
+
+    /**
+     * Writes this index to a sidecar.
+     *
+     * @throws IOException if the sidecar cannot be written
+     */
+    public void write(Path sidecar) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(sidecar), 65536))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                out.writeLong(starts[i]);
+                out.writeLong(ends[i]);
+            }
+            out.writeBoolean(keyField != null);
+            if (keyField != null)
+                writeString(out, keyField);
+            out.writeInt(keys.size());
+            for (Map.Entry<String, Integer> entry : keys.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return whether the indexed file has the same size and modification time as when it was indexed
+     */
+    public boolean isCurrent() throws IOException {
+        return Files.exists(file) && Files.size(file) == fileSize && Files.getLastModifiedTime(file).toMillis() == lastModified;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * @return the byte offset of the first byte of an element
+     */
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    /**
+     * @return the byte offset after the last byte of an element
+     */
+    public long getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @return the index of the element whose key field has the given value, or -1 if there is none
+     */
+    public int indexOf(String key) {
+        Integer index = keys.get(key);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Reads and parses one element.
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public JSONValue get(int index) throws IOException {
+        return JSONValue.parse(reader(index));
+    }
+
+    /**
+     * Reads and parses the element whose key field has the given value.
+     *
+     * @return the element, or null if there is none
+     * @throws IOException if the file cannot be read
+     */
+    public JSONValue find(String key) throws IOException {
+        int index = indexOf(key);
+        return index == -1 ? null : get(index);
+    }
+
+    /**
+     * @return a reader of the tokens of one element
+     * @throws IOException if the file cannot be read
+     */
+    public JSONReader reader(int index) throws IOException {
+        return new DefaultJSONReader(new String(read(index), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the raw UTF-8 bytes of one element
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] read(int index) throws IOException {
+        long start = starts[index];
+        long length = ends[index] - start;
+        if (length > Integer.MAX_VALUE - 8)
+            throw new IOException("Element " + index + " is too large to be read at once: " + length + " bytes");
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        FileChannel channel = channel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) == -1)
+                throw new EOFException("The file " + file + " was truncated after it was indexed");
+        }
+        return buffer.array();
+    }
+
+    private synchronized FileChannel channel() throws IOException {
+        if (channel == null)
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+        return channel;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null)
+            channel.close();
+        channel = null;
+    }
+
+    /**
+     * Finds the elements of the top-level array in raw UTF-8 bytes. Only the bytes of key fields are decoded.
+     */
+    private static class Scanner {
+        private final byte[] keyField;
+        private final Map<String, Integer> keys = new HashMap<>();
+        private long[] starts = new long[1024];
+        private long[] ends = new long[1024];
+        private int count;
+        private int depth;
+        private boolean started;
+        private boolean finished;
+        private boolean inString;
+        private boolean escaped;
+        /**
+         * Whether the current element is a scalar which has not ended yet.
+         */
+        private boolean inScalar;
+        private long elementStart = -1;
+        // key field matching, only in objects which are elements
+        private boolean expectKey;
+        private boolean matchedKey;
+        private boolean capturing;
+        private ByteArrayOutputStream capture;
+
+        Scanner(String keyField) {
+            this.keyField = keyField == null ? null : keyField.getBytes(StandardCharsets.UTF_8);
+        }
+
+        void scan(byte[] bytes, int length, long offset) {
+            int captureFrom = capture != null ? 0 : -1;
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (inString) {
+                    if (escaped)
+                        escaped = false;
+                    else if (b == '\\')
+                        escaped = true;
+                    else if (b == '"') {
+                        inString = false;
+                        if (depth == 1 && inScalar)
+                            endElement(offset + i + 1);
+                        else if (depth == 2 && expectKey && capture != null) {
+                            // the member name has ended
+                            capture.write(bytes, Math.max(captureFrom, 0), i + 1 - Math.max(captureFrom, 0));
+                            matchedKey = isKeyField(capture.toByteArray());
+                            capture = null;
+                            captureFrom = -1;
+                            expectKey = false;
+                        }
+                    }
+                    continue;
+                }
+                switch (b) {
+                    case ' ':
+                    case '\t':
+                    case '\r':
+                    case '\n':
+                        if (depth == 1 && inScalar)
+                            endElement(offset + i);
+                        continue;
+                    case '"':
+                        inString = true;
+                        if (depth == 1 && !inScalar && elementStart == -1) {
+                            startElement(offset + i);
+                            inScalar = true;
+                        } else if (depth == 2 && expectKey && keyField != null) {
+                            capture = new ByteArrayOutputStream();
+                            captureFrom = i;
+                        } else if (depth == 2 && matchedKey && !capturing) {
+                            capturing = true;
+                            capture = new ByteArrayOutputStream();
+                            captureFrom = i;
+                        }
+                        continue;
+                    case '{':
+                    case '[':
+                        if (!started || finished) {
+                            if (b != '[' || finished)
+                                throw new ParseException((int) Math.min(offset + i, Integer.MAX_VALUE), String.valueOf((char) b));
+                            started = true;
+                            depth = 1;
+                            continue;
+                        }
+                        if (depth == 1)
+                            startElement(offset + i);
+                        if (depth == 2)
+                            matchedKey = false;
+                        depth++;
+                        if (depth == 2) {
+                            expectKey = b == '{';
+                            matchedKey = false;
+                        }
+                        continue;
+                    case '}':
+                    case ']':
+                        if (depth == 2 && capturing)
+                            captureFrom = endCapture(bytes, captureFrom, i);
+                        if (depth == 1 && inScalar)
+                            endElement(offset + i);
+                        depth--;
+                        if (depth == 1)
+                            endElement(offset + i + 1);
+                        else if (depth == 0)
+                            finished = true;
+                        continue;
+                    case ',':
+                        if (depth == 1 && inScalar)
+                            endElement(offset + i);
+                        else if (depth == 2) {
+                            if (capturing)
+                                captureFrom = endCapture(bytes, captureFrom, i);
+                            expectKey = true;
+                            matchedKey = false;
+                        }
+                        continue;
+                    case ':':
+                        continue;
+                    default:
+                        if (!started || finished)
+                            throw new ParseException((int) Math.min(offset + i, Integer.MAX_VALUE), String.valueOf((char) b));
+                        if (depth == 1 && elementStart == -1) {
+                            startElement(offset + i);
+                            inScalar = true;
+                        } else if (depth == 2 && matchedKey && !capturing) {
+                            capturing = true;
+                            capture = new ByteArrayOutputStream();
+                            captureFrom = i;
+                        }
+                }
+            }
+            // keep the part of a name or key value which continues in the next block
+            if (capture != null && captureFrom != -1)
+                capture.write(bytes, captureFrom, length - captureFrom);
+        }
+
+        private int endCapture(byte[] bytes, int captureFrom, int end) {
+            capture.write(bytes, Math.max(captureFrom, 0), end - Math.max(captureFrom, 0));
+            String text = new String(capture.toByteArray(), StandardCharsets.UTF_8).trim();
+            JSONValue value = JSONValue.parse(text);
+            keys.putIfAbsent(value.getType() == JSONValue.Type.STRING ? value.toString() : value.deserialize(), count);
+            capture = null;
+            capturing = false;
+            matchedKey = false;
+            return -1;
+        }
+
+        private boolean isKeyField(byte[] name) {
+            // the name includes its quotes, and is only decoded if it contains escapes
+            if (name.length == keyField.length + 2 && Arrays.equals(name, 1, name.length - 1, keyField, 0, keyField.length))
+                return true;
+            for (byte b : name) {
+                if (b == '\\')
+                    return JSONValue.parse(new String(name, StandardCharsets.UTF_8)).toString()
+                        .equals(new String(keyField, StandardCharsets.UTF_8));
+            }
+            return false;
+        }
+
+        private void startElement(long offset) {
+            elementStart = offset;
+        }
+
+        private void endElement(long offset) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = elementStart;
+            ends[count] = offset;
+            count++;
+            elementStart = -1;
+            inScalar = false;
+            expectKey = false;
+            matchedKey = false;
+        }
+
+        void finish(long length) {
+            if (!finished || inString)
+                throw new ParseException((int) Math.min(length, Integer.MAX_VALUE), "EOF");
+        }
+    }
+}
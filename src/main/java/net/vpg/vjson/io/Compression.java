@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.io;
+
+import java.io.*;
+import java.util.zip.*;
+
+/**
+ * The compression formats understood by the stream based {@code parse} and {@code write} methods.
+ *
+ * @author Vaibhav Nargwani
+ */
+public enum Compression {
+    /**
+     * Plain, uncompressed JSON.
+     */
+    NONE,
+    /**
+     * The gzip file format, as written by {@link GZIPOutputStream}.
+     */
+    GZIP,
+    /**
+     * The zlib format, as written by {@link DeflaterOutputStream}.
+     */
+    DEFLATE,
+    /**
+     * Detects {@link #GZIP} or {@link #DEFLATE} input from its header and falls back to {@link #NONE}.
+     * Only valid for input.
+     */
+    AUTO;
+
+    /**
+     * The size of the blocks that are inflated or deflated at once.
+     */
+    public static final int BLOCK_SIZE = 1 << 16;
+
+    /**
+     * Detects the compression of the given stream from its first two bytes, which are pushed back afterwards.
+     *
+     * @param in a stream that can push back at least 2 bytes
+     * @return {@link #GZIP}, {@link #DEFLATE} or {@link #NONE}
+     */
+    public static Compression detect(PushbackInputStream in) throws IOException {
+        int b0 = in.read();
+        int b1 = b0 == -1 ? -1 : in.read();
+        if (b1 != -1)
+            in.unread(b1);
+        if (b0 != -1)
+            in.unread(b0);
+        if (b0 == 0x1f && b1 == 0x8b)
+            return GZIP;
+        // zlib header: deflate method, window of at most 32K, no preset dictionary and a valid check value,
+        // which no valid JSON text starts with
+        if (b1 != -1 && (b0 & 0x0f) == 8 && b0 >> 4 <= 7 && (b1 & 0x20) == 0 && (b0 << 8 | b1) % 31 == 0)
+            return DEFLATE;
+        return NONE;
+    }
+
+    public InputStream wrap(InputStream in) throws IOException {
+        return wrap(in, true);
+    }
+
+    /**
+     * Wraps the given stream so that reading from it yields the uncompressed data.
+     *
+     * @param in          the compressed stream
+     * @param closeSource whether closing the returned stream should close {@code in};
+     *                    inflater resources are always released
+     * @return the decompressing stream
+     */
+    public InputStream wrap(InputStream in, boolean closeSource) throws IOException {
+        if (!closeSource)
+            in = new NonClosingInputStream(in);
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, BLOCK_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(in, new Inflater(), BLOCK_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inf.end();
+                    }
+                };
+            case AUTO:
+                PushbackInputStream pushback = new PushbackInputStream(in, 2);
+                return detect(pushback).wrap(pushback, true);
+            default:
+                return in;
+        }
+    }
+
+    public OutputStream wrap(OutputStream out) throws IOException {
+        return wrap(out, true);
+    }
+
+    /**
+     * Wraps the given stream so that data written to it is compressed in blocks of {@link #BLOCK_SIZE} bytes.
+     * Closing the returned stream finishes the compressed data.
+     *
+     * @param out         the target stream
+     * @param closeTarget whether closing the returned stream should close {@code out};
+     *                    deflater resources are always released
+     * @return the compressing stream
+     */
+    public OutputStream wrap(OutputStream out, boolean closeTarget) throws IOException {
+        if (!closeTarget)
+            out = new NonClosingOutputStream(out);
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, BLOCK_SIZE);
+            case DEFLATE:
+                return new DeflaterOutputStream(out, new Deflater(), BLOCK_SIZE) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        def.end();
+                    }
+                };
+            case AUTO:
+                throw new IllegalArgumentException("AUTO compression can only be used for input");
+            default:
+                return out;
+        }
+    }
+
+    private static class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // leave the source open
+        }
+    }
+
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // leave the target open
+            out.flush();
+        }
+    }
+}
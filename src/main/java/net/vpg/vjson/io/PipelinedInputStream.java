@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.ref.Cleaner;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link InputStream} which reads its source ahead on a separate daemon thread, so that expensive sources
+ * such as decompressing streams are drained in parallel with the consumer.
+ * <p>
+ * The source is read into a fixed ring of buffers, so the reading thread is never more than
+ * {@code bufferCount - 1} buffers ahead of the consumer.
+ * The thread stops by itself once it has read the whole source or failed to read it.
+ * A stream which is abandoned before that must be {@linkplain #close() closed}, which stops the thread
+ * and closes the source; otherwise both are only released after the stream has been garbage collected.
+ * Like most streams, instances of this class are not thread-safe.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class PipelinedInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_SIZE = Compression.BLOCK_SIZE;
+    public static final int DEFAULT_BUFFER_COUNT = 4;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final Cleaner cleaner = Cleaner.create(runnable -> {
+        Thread thread = new Thread(runnable, "VJSON-pipeline-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Chunk END = new Chunk(null, -1, null);
+    private final Pump pump;
+    private final Cleaner.Cleanable cleanable;
+    private byte[] current;
+    private int position;
+    private int limit;
+    private boolean eof;
+    private boolean closed;
+
+    public PipelinedInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    public PipelinedInputStream(InputStream in, int bufferSize, int bufferCount) {
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        if (bufferCount < 2)
+            throw new IllegalArgumentException("bufferCount must be at least 2");
+        pump = new Pump(in, bufferSize, bufferCount);
+        // the pump must not reference this stream, or an abandoned stream would never become unreachable
+        cleanable = cleaner.register(this, pump);
+        pump.thread.start();
+    }
+
+    private boolean next() throws IOException {
+        if (eof)
+            return false;
+        if (closed)
+            throw new IOException("Stream closed");
+        if (current != null) {
+            pump.free.add(current);
+            current = null;
+        }
+        Chunk chunk;
+        try {
+            chunk = pump.filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (chunk.error != null) {
+            end();
+            throw new IOException("Failed to read ahead", chunk.error);
+        }
+        if (chunk == END) {
+            end();
+            return false;
+        }
+        current = chunk.buffer;
+        position = 0;
+        limit = chunk.length;
+        return true;
+    }
+
+    /**
+     * Releases the buffers once the thread has stopped by itself. The source stays open until {@link #close()}.
+     */
+    private void end() {
+        eof = true;
+        pump.free.clear();
+        pump.filled.clear();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == limit && !next())
+            return -1;
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (position == limit && !next())
+            return -1;
+        int count = Math.min(len, limit - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        current = null;
+        position = limit = 0;
+        pump.stop();
+        cleanable.clean();
+        if (pump.failure != null)
+            throw pump.failure;
+    }
+
+    /**
+     * The reading side, which runs on its own thread and is also the cleanup action of its stream.
+     */
+    private static class Pump implements Runnable {
+        private final InputStream in;
+        private final BlockingQueue<byte[]> free;
+        private final BlockingQueue<Chunk> filled;
+        private final Thread thread;
+        private volatile boolean stopped;
+        private IOException failure;
+
+        private Pump(InputStream in, int bufferSize, int bufferCount) {
+            this.in = in;
+            this.free = new ArrayBlockingQueue<>(bufferCount);
+            // room for every buffer and the end marker
+            this.filled = new ArrayBlockingQueue<>(bufferCount + 1);
+            for (int i = 0; i < bufferCount; i++)
+                free.add(new byte[bufferSize]);
+            thread = new Thread(this::fill, "VJSON-pipeline-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+        }
+
+        private void fill() {
+            try {
+                while (!stopped) {
+                    byte[] buffer = free.take();
+                    int length = 0;
+                    int read = 0;
+                    while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1)
+                        length += read;
+                    if (length != 0)
+                        filled.put(new Chunk(buffer, length, null));
+                    if (read == -1) {
+                        filled.put(END);
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // failures caused by closing the source concurrently are expected
+                if (!stopped)
+                    filled.offer(new Chunk(null, -1, e instanceof IOException ? (IOException) e : new IOException(e)));
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        }
+
+        private void stop() {
+            stopped = true;
+            thread.interrupt();
+        }
+
+        /**
+         * Called once, by {@link PipelinedInputStream#close()} or after the stream has become unreachable.
+         */
+        @Override
+        public void run() {
+            stop();
+            try {
+                in.close();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+    }
+
+    private static class Chunk {
+        private final byte[] buffer;
+        private final int length;
+        private final IOException error;
+
+        Chunk(byte[] buffer, int length, IOException error) {
+            this.buffer = buffer;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import java.time.Duration;
+
+/**
+ * The global switch for parser and serializer instrumentation.
+ * <p>
+ * Instrumentation is disabled by default, in which case parsing and serialization only pay for one volatile read.
+ * It is enabled by registering a {@link MetricsListener}, which receives the full {@link ParseMetrics} and
+ * {@link SerializeMetrics} of every operation, and/or by enabling JDK Flight Recorder events, which are emitted
+ * for operations reaching a configurable size or duration while a recording is running.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONMetrics {
+    private static volatile boolean enabled;
+    private static volatile MetricsListener listener;
+    private static volatile boolean flightRecorderEvents;
+    private static volatile long eventMinChars;
+    private static volatile long eventMinNanos;
+
+    private JSONMetrics() {
+        // utility class
+    }
+
+    public static MetricsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @param listener the listener to notify of every parse and serialization, or null to remove the current one
+     */
+    public static synchronized void setListener(MetricsListener listener) {
+        JSONMetrics.listener = listener;
+        enabled = listener != null || flightRecorderEvents;
+    }
+
+    /**
+     * Enables the {@link ParseEvent} and {@link SerializeEvent} Flight Recorder events.
+     * An event is emitted for every operation that processes at least {@code minChars} characters
+     * <b>or</b> takes at least {@code minDuration}.
+     *
+     * @param minChars    the size threshold, in characters or bytes
+     * @param minDuration the duration threshold
+     */
+    public static synchronized void enableFlightRecorderEvents(long minChars, Duration minDuration) {
+        eventMinChars = minChars;
+        eventMinNanos = minDuration.toNanos();
+        flightRecorderEvents = true;
+        enabled = true;
+    }
+
+    public static synchronized void disableFlightRecorderEvents() {
+        flightRecorderEvents = false;
+        enabled = listener != null;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called by parsers when they start a parse.
+     *
+     * @return the probe to finish once the parse completes, or null if instrumentation is disabled
+     */
+    public static ParseProbe startParse() {
+        return enabled ? new ParseProbe(listener, flightRecorderEvents ? new ParseEvent() : null) : null;
+    }
+
+    /**
+     * Called by serializers when they start serializing a value.
+     *
+     * @return the probe to finish once the serialization completes, or null if instrumentation is disabled
+     */
+    public static SerializeProbe startSerialize() {
+        return enabled ? new SerializeProbe(listener, flightRecorderEvents ? new SerializeEvent() : null) : null;
+    }
+
+    static boolean reachesThreshold(long chars, long nanos) {
+        return chars >= eventMinChars || nanos >= eventMinNanos;
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+/**
+ * Receives the metrics of every parse and serialization once a listener is registered with
+ * {@link JSONMetrics#setListener(MetricsListener)}.
+ * Callbacks are invoked on the parsing or serializing thread, so implementations must be thread-safe and fast.
+ *
+ * @author Vaibhav Nargwani
+ */
+public interface MetricsListener {
+    void onParse(ParseMetrics metrics);
+
+    default void onSerialize(SerializeMetrics metrics) {
+    }
+}
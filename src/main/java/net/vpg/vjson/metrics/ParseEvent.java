@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * A Flight Recorder event for a parse reaching the thresholds set with
+ * {@link JSONMetrics#enableFlightRecorderEvents(long, java.time.Duration)}.
+ *
+ * @author Vaibhav Nargwani
+ */
+@Name("net.vpg.vjson.Parse")
+@Label("JSON Parse")
+@Category("VJSON")
+@Description("Parse of a large or slow JSON document")
+@StackTrace
+public final class ParseEvent extends Event {
+    @Label("Characters")
+    @Description("Characters, or bytes for binary input, consumed by the parse")
+    long chars;
+    @Label("Tokens")
+    long tokens;
+    @Label("Root Type")
+    String rootType;
+    @Label("Reader")
+    Class<?> reader;
+}
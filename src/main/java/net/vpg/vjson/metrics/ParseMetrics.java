@@ -0,0 +1,126 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import net.vpg.vjson.parser.JSONParser;
+import net.vpg.vjson.parser.TreeBuilder;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONValue;
+
+/**
+ * The metrics of a single parse.
+ * Counters which the reader does not support are reported as -1.
+ * <p>
+ * The per-type value counts and the maximum depth are counted by the {@link TreeBuilder} while it builds the tree,
+ * so that they cost neither a second walk of the tree nor any allocation.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class ParseMetrics {
+    private final Class<?> readerType;
+    private final long chars;
+    private final long tokens;
+    private final long stringChars;
+    private final long numberChars;
+    private final long[] values = new long[JSONValue.Type.values().length];
+    private final Throwable error;
+    private final long nanos;
+    private final int maxDepth;
+
+    ParseMetrics(JSONReader reader, TreeBuilder builder, Throwable error, long nanos) {
+        this.readerType = reader.getClass();
+        this.chars = reader.getCharCount();
+        this.tokens = reader.getTokenCount();
+        this.stringChars = reader.getStringCharCount();
+        this.numberChars = reader.getNumberCharCount();
+        this.error = error;
+        this.nanos = nanos;
+        for (JSONValue.Type type : JSONValue.Type.values())
+            values[type.ordinal()] = builder.getValueCount(type);
+        this.maxDepth = builder.getMaxDepth();
+    }
+
+    public Class<?> getReaderType() {
+        return readerType;
+    }
+
+    /**
+     * @return the number of characters, or bytes for binary input, consumed by the parse
+     */
+    public long getChars() {
+        return chars;
+    }
+
+    public long getTokens() {
+        return tokens;
+    }
+
+    public long getStringChars() {
+        return stringChars;
+    }
+
+    public long getNumberChars() {
+        return numberChars;
+    }
+
+    /**
+     * @param type the type of values to count
+     * @return the number of values of the given type in the parsed document, including the root,
+     * or in the part of it read before the parse failed
+     */
+    public long getValueCount(JSONValue.Type type) {
+        return values[type.ordinal()];
+    }
+
+    /**
+     * @return the maximum nesting depth of the parsed document, as defined by {@link JSONParser#setMaxDepth(int)}:
+     * a scalar root has a depth of 0 and every enclosing object or array adds 1
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * @return the cause of the failure if the parse failed, null otherwise
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ParseMetrics[reader=").append(readerType.getSimpleName())
+            .append(", chars=").append(chars)
+            .append(", tokens=").append(tokens)
+            .append(", stringChars=").append(stringChars)
+            .append(", numberChars=").append(numberChars);
+        for (JSONValue.Type type : JSONValue.Type.values()) {
+            sb.append(", ").append(type.name().toLowerCase()).append('=').append(values[type.ordinal()]);
+        }
+        sb.append(", maxDepth=").append(maxDepth).append(", nanos=").append(nanos);
+        if (error != null)
+            sb.append(", error=").append(error);
+        return sb.append(']').toString();
+    }
+}
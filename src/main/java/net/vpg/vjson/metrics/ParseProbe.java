@@ -0,0 +1,79 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import net.vpg.vjson.parser.TreeBuilder;
+import net.vpg.vjson.reader.JSONReader;
+
+/**
+ * Measures one parse, see {@link JSONMetrics#startParse()}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class ParseProbe {
+    private final MetricsListener listener;
+    private final ParseEvent event;
+    private final long start;
+
+    ParseProbe(MetricsListener listener, ParseEvent event) {
+        this.listener = listener;
+        this.event = event;
+        if (event != null)
+            event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Records a completed parse.
+     *
+     * @param reader  the reader the document was parsed from, which must not have been closed yet
+     * @param builder the builder which built the parsed value, and counted its values while doing so
+     */
+    public void finish(JSONReader reader, TreeBuilder builder) {
+        long nanos = System.nanoTime() - start;
+        commitEvent(reader, builder.getResult().getType().name(), nanos);
+        if (listener != null)
+            listener.onParse(new ParseMetrics(reader, builder, null, nanos));
+    }
+
+    /**
+     * Records a failed parse.
+     *
+     * @param reader  the reader the document was parsed from, which must not have been closed yet
+     * @param builder the builder of the parsed value, which has counted the values read before the failure
+     * @param error   the cause of the failure
+     */
+    public void fail(JSONReader reader, TreeBuilder builder, Throwable error) {
+        long nanos = System.nanoTime() - start;
+        commitEvent(reader, null, nanos);
+        if (listener != null)
+            listener.onParse(new ParseMetrics(reader, builder, error, nanos));
+    }
+
+    private void commitEvent(JSONReader reader, String rootType, long nanos) {
+        if (event == null)
+            return;
+        event.end();
+        long chars = reader.getCharCount();
+        if (event.shouldCommit() && JSONMetrics.reachesThreshold(chars, nanos)) {
+            event.chars = chars;
+            event.tokens = reader.getTokenCount();
+            event.rootType = rootType;
+            event.reader = reader.getClass();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import net.vpg.vjson.value.JSONValue;
+
+/**
+ * The metrics of a single serialization.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class SerializeMetrics {
+    private final JSONValue.Type rootType;
+    private final String format;
+    private final long chars;
+    private final long nanos;
+
+    SerializeMetrics(JSONValue.Type rootType, String format, long chars, long nanos) {
+        this.rootType = rootType;
+        this.format = format;
+        this.chars = chars;
+        this.nanos = nanos;
+    }
+
+    public JSONValue.Type getRootType() {
+        return rootType;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of characters, or bytes for binary output, produced
+     */
+    public long getChars() {
+        return chars;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "SerializeMetrics[rootType=" + rootType + ", format=" + format + ", chars=" + chars + ", nanos=" + nanos + "]";
+    }
+}
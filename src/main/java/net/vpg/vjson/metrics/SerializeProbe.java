@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.metrics;
+
+import net.vpg.vjson.value.JSONValue;
+
+/**
+ * Measures one serialization, see {@link JSONMetrics#startSerialize()}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class SerializeProbe {
+    private final MetricsListener listener;
+    private final SerializeEvent event;
+    private final long start;
+
+    SerializeProbe(MetricsListener listener, SerializeEvent event) {
+        this.listener = listener;
+        this.event = event;
+        if (event != null)
+            event.begin();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Records a completed serialization.
+     *
+     * @param rootType the type of the serialized value
+     * @param format   the output format, such as {@code "text"} or {@code "binary"}
+     * @param chars    the number of characters, or bytes for binary output, produced
+     */
+    public void finish(JSONValue.Type rootType, String format, long chars) {
+        long nanos = System.nanoTime() - start;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit() && JSONMetrics.reachesThreshold(chars, nanos)) {
+                event.chars = chars;
+                event.rootType = rootType.name();
+                event.format = format;
+                event.commit();
+            }
+        }
+        if (listener != null)
+            listener.onSerialize(new SerializeMetrics(rootType, format, chars, nanos));
+    }
+}
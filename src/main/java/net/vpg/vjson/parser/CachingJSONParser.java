@@ -0,0 +1,254 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.parser;
+
+import net.vpg.vjson.value.JSONValue;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * A wrapper around a {@link JSONParser} which caches parsed documents by their content.
+ * <p>
+ * Inputs are keyed by a fast 64-bit hash of their bytes or characters, and are compared in full on a hash match,
+ * so two inputs share a cached tree only if they are identical. Cached trees are
+ * {@linkplain JSONValue#toImmutable() immutable} and shared between all callers that parse the same content.
+ * The least recently used entries are evicted once either the entry count or the estimated retained bytes
+ * of the cache exceed their limits.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class CachingJSONParser {
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private final Map<Key, Entry> cache = new LinkedHashMap<>(16, .75f, true);
+    private final JSONParser parser;
+    private final int maxEntries;
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CachingJSONParser(int maxEntries, long maxBytes) {
+        this(new JSONParser(), maxEntries, maxBytes);
+    }
+
+    public CachingJSONParser(JSONParser parser, int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0)
+            throw new IllegalArgumentException("Cache limits must be positive");
+        this.parser = parser;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    static long hash(byte[] bytes) {
+        long h = SEED ^ bytes.length;
+        int i = 0;
+        for (int limit = bytes.length - 7; i < limit; i += 8) {
+            h = mix(h, (long) LONGS.get(bytes, i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < bytes.length; i++, shift += 8) {
+            tail |= (bytes[i] & 0xFFL) << shift;
+        }
+        return finish(mix(h, tail));
+    }
+
+    static long hash(String s) {
+        int length = s.length();
+        long h = SEED ^ length;
+        int i = 0;
+        for (int limit = length - 3; i < limit; i += 4) {
+            h = mix(h, (long) s.charAt(i) | (long) s.charAt(i + 1) << 16 | (long) s.charAt(i + 2) << 32 | (long) s.charAt(i + 3) << 48);
+        }
+        long tail = 0;
+        for (int shift = 0; i < length; i++, shift += 16) {
+            tail |= (long) s.charAt(i) << shift;
+        }
+        return finish(mix(h, tail));
+    }
+
+    private static long mix(long h, long v) {
+        v *= 0xBF58476D1CE4E5B9L;
+        v ^= v >>> 31;
+        return Long.rotateLeft(h ^ v, 27) * 0x94D049BB133111EBL;
+    }
+
+    private static long finish(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        return h ^ h >>> 33;
+    }
+
+    /**
+     * Parses the given JSON text, or returns the cached tree of a previous parse of the same text.
+     *
+     * @param s the text to parse
+     * @return the immutable, possibly shared tree
+     * @throws ParseException if the text is not valid JSON
+     */
+    public JSONValue parse(String s) throws ParseException {
+        Key key = new Key(hash(s), s);
+        JSONValue cached = lookup(key);
+        return cached != null ? cached : store(key, parser.parse(s).toImmutable(), 40L + s.length() * 2L);
+    }
+
+    /**
+     * Parses the given UTF-8 encoded JSON text, or returns the cached tree of a previous parse of the same bytes.
+     * The cache keeps its own copy of the array, so the caller may reuse it once this method returns.
+     *
+     * @param bytes the UTF-8 encoded text to parse
+     * @return the immutable, possibly shared tree
+     * @throws ParseException if the text is not valid JSON
+     */
+    public JSONValue parse(byte[] bytes) throws ParseException {
+        Key key = new Key(hash(bytes), bytes);
+        JSONValue cached = lookup(key);
+        if (cached != null)
+            return cached;
+        JSONValue value = parser.parse(new String(bytes, StandardCharsets.UTF_8)).toImmutable();
+        // the array may be a pooled buffer, which would silently change the key once it is refilled
+        return store(new Key(key.hash, bytes.clone()), value, 16L + bytes.length);
+    }
+
+    private synchronized JSONValue lookup(Key key) {
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private JSONValue store(Key key, JSONValue value, long sourceBytes) {
+        long weight = 64 + sourceBytes + value.estimateRetainedBytes();
+        if (weight > maxBytes)
+            return value;
+        synchronized (this) {
+            Entry previous = cache.putIfAbsent(key, new Entry(value, weight));
+            if (previous != null)
+                // another thread has parsed the same content in the meantime
+                return previous.value;
+            bytes += weight;
+            Iterator<Entry> iterator = cache.values().iterator();
+            while (cache.size() > maxEntries || bytes > maxBytes) {
+                Entry eldest = iterator.next();
+                iterator.remove();
+                bytes -= eldest.weight;
+                evictions++;
+            }
+        }
+        return value;
+    }
+
+    public synchronized void clear() {
+        cache.clear();
+        bytes = 0;
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, cache.size(), bytes);
+    }
+
+    private static class Key {
+        private final long hash;
+        private final Object content;
+
+        private Key(long hash, Object content) {
+            this.hash = hash;
+            this.content = content;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            if (hash != key.hash)
+                return false;
+            if (content instanceof byte[])
+                return key.content instanceof byte[] && Arrays.equals((byte[]) content, (byte[]) key.content);
+            return content.equals(key.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+
+    private static class Entry {
+        private final JSONValue value;
+        private final long weight;
+
+        private Entry(JSONValue value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long estimatedBytes;
+
+        private Stats(long hits, long misses, long evictions, int entries, long estimatedBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.estimatedBytes = estimatedBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", entries=" + entries + ", estimatedBytes=" + estimatedBytes + "]";
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.parser;
+
+import net.vpg.vjson.reader.JSONReader;
+
+/**
+ * Receives the structure and values of a document as {@link JSONParser#parse(JSONReader, JSONHandler)} reads it,
+ * so that it can be folded into any structure without building a tree. Numbers are passed without boxing
+ * whenever the reader supports it.
+ * <p>
+ * Members of an object are passed as a {@link #key(String)} followed by the callbacks of their value.
+ * The callbacks are made as the tokens are read, so the sequence of callbacks is always well-formed,
+ * with no unbalanced container or key outside an object, but it may stop at any point: if the document turns out
+ * to be malformed or to exceed a limit, the parser throws and the handler has only seen the part before the error.
+ * {@link TreeBuilder} is the handler that builds a {@link net.vpg.vjson.value.JSONValue} tree.
+ *
+ * @author Vaibhav Nargwani
+ */
+public interface JSONHandler {
+    void startObject();
+
+    void key(String key);
+
+    void endObject();
+
+    void startArray();
+
+    void endArray();
+
+    void value(long value);
+
+    void value(double value);
+
+    /**
+     * Called for numbers which are neither a long nor a double, such as a {@link java.math.BigDecimal}.
+     */
+    void value(Number value);
+
+    void value(CharSequence value);
+
+    void value(boolean value);
+
+    void nullValue();
+}
@@ -15,14 +15,23 @@
  */
 package net.vpg.vjson.parser;
 
+import net.vpg.vjson.io.Compression;
+import net.vpg.vjson.io.PipelinedInputStream;
+import net.vpg.vjson.metrics.JSONMetrics;
+import net.vpg.vjson.metrics.ParseProbe;
 import net.vpg.vjson.reader.DefaultJSONReader;
 import net.vpg.vjson.reader.JSONReader;
-import net.vpg.vjson.value.JSONArray;
-import net.vpg.vjson.value.JSONObject;
 import net.vpg.vjson.value.JSONValue;
 
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
 
 import static net.vpg.vjson.parser.TokenType.*;
 
@@ -35,6 +44,15 @@ import static net.vpg.vjson.parser.TokenType.*;
  * @author Vaibhav Nargwani
  */
 public class JSONParser {
+    /**
+     * Files up to this size are read at once by {@link #parseAll}, larger ones are streamed.
+     */
+    private static final long SMALL_FILE = 1 << 20;
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutor();
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxDocumentSize = Long.MAX_VALUE;
+    private long maxRetainedBytes = Long.MAX_VALUE;
+
     public JSONValue parse(String s) throws ParseException {
         return parse(new DefaultJSONReader(s), true);
     }
@@ -51,6 +69,32 @@ public class JSONParser {
         return parse(new DefaultJSONReader(stream), true);
     }
 
+    public JSONValue parse(InputStream stream, Compression compression) throws ParseException {
+        return parse(stream, compression, false);
+    }
+
+    /**
+     * Parses a possibly compressed stream of UTF-8 encoded JSON. The stream itself is not closed.
+     *
+     * @param stream      the stream to parse
+     * @param compression the compression of the stream, {@link Compression#AUTO} to detect it
+     * @param pipelined   whether to decompress on a separate thread through a {@link PipelinedInputStream},
+     *                    so that inflating overlaps with parsing
+     * @return the parsed value
+     * @throws ParseException if the stream is not valid JSON or cannot be read
+     */
+    public JSONValue parse(InputStream stream, Compression compression, boolean pipelined) throws ParseException {
+        InputStream in;
+        try {
+            in = compression.wrap(stream, false);
+        } catch (IOException e) {
+            throw new ParseException(0, e);
+        }
+        if (pipelined)
+            in = new PipelinedInputStream(in);
+        return parse(new DefaultJSONReader(new InputStreamReader(in, StandardCharsets.UTF_8), true), true);
+    }
+
     public JSONValue parse(Reader reader) throws ParseException {
         return parse(new DefaultJSONReader(reader), true);
     }
@@ -60,8 +104,17 @@ public class JSONParser {
     }
 
     public JSONValue parse(JSONReader reader, boolean closeAfterParse) throws ParseException {
+        ParseProbe probe = JSONMetrics.startParse();
+        TreeBuilder builder = new TreeBuilder(maxRetainedBytes);
         try {
-            return parseValue(reader);
+            JSONValue value = parseValue(reader, builder);
+            if (probe != null)
+                probe.finish(reader, builder);
+            return value;
+        } catch (RuntimeException e) {
+            if (probe != null)
+                probe.fail(reader, builder, e);
+            throw e;
         } finally {
             if (closeAfterParse) {
                 try {
@@ -73,63 +126,287 @@ public class JSONParser {
         }
     }
 
-    private JSONValue parseValue(JSONReader reader) throws ParseException {
-        if (reader.getCurrentTokenType() == null)
-            reader.getNextTokenType();
-        switch (reader.getCurrentTokenType()) {
-            default:
-                reader.error();
-            case STRING:
-            case TRUE:
-            case FALSE:
-            case NULL:
-            case NUMBER:
-                return JSONValue.of(reader.getCurrentToken());
-            case OBJECT_START:
-                return parseObject(reader);
-            case ARRAY_START:
-                return parseArray(reader);
+    /**
+     * Parses many sources concurrently and returns the results in the order of the sources.
+     *
+     * @see #parseAll(Collection, int, Consumer)
+     */
+    public <S> List<ParseResult<S>> parseAll(Collection<? extends S> sources, int maxConcurrency) {
+        List<ParseResult<S>> results = new ArrayList<>(Collections.nCopies(sources.size(), null));
+        this.<S>parseAll(sources, maxConcurrency, result -> results.set(result.getIndex(), result));
+        return results;
+    }
+
+    /**
+     * Parses many sources concurrently, and passes the result of each source to {@code onResult} as soon as it
+     * is available. Every source is either a {@link Path}, a {@link File} or a {@link URL} of UTF-8 encoded JSON,
+     * and a source which fails to parse or to be read does not affect the others.
+     * <p>
+     * Sources are parsed on virtual threads if the runtime supports them, and on a pool of platform threads
+     * otherwise. At most {@code maxConcurrency} sources are open or parsed at once, and the next source is only
+     * started when a result has been handed to {@code onResult}, which is always called on the calling thread.
+     * This method returns once every source has been handled.
+     *
+     * @param sources        the sources to parse
+     * @param maxConcurrency the maximum number of sources parsed at once
+     * @param onResult       receives the results in the order they complete
+     * @throws CancellationException if the calling thread is interrupted, in which case unfinished sources are abandoned
+     */
+    public <S> void parseAll(Collection<? extends S> sources, int maxConcurrency, Consumer<? super ParseResult<S>> onResult) {
+        if (maxConcurrency <= 0)
+            throw new IllegalArgumentException("maxConcurrency must be positive");
+        ExecutorService executor = newBatchExecutor(maxConcurrency);
+        try {
+            CompletionService<ParseResult<S>> completion = new ExecutorCompletionService<>(executor);
+            Iterator<? extends S> iterator = sources.iterator();
+            int index = 0;
+            int pending = 0;
+            while (pending != 0 || iterator.hasNext()) {
+                while (pending < maxConcurrency && iterator.hasNext()) {
+                    int i = index++;
+                    S source = iterator.next();
+                    completion.submit(() -> parseSource(i, source));
+                    pending++;
+                }
+                ParseResult<S> result = completion.take().get();
+                pending--;
+                onResult.accept(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            // parseSource reports all failures in its result
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private JSONObject parseObject(JSONReader reader) throws ParseException {
-        JSONObject object = new JSONObject();
-        reader.getNextTokenType();
-        while (true) {
-            TokenType type = reader.getCurrentTokenType();
-            if (type == OBJECT_END)
-                return object;
-            if (type != STRING)
-                reader.error();
-            String key = reader.getCurrentToken().toString();
-            reader.expectNextType(COLON);
-            reader.getNextTokenType();
-            object.put(key, parseValue(reader));
-            switch (reader.getNextTokenType()) {
-                default:
-                    reader.error();
-                case OBJECT_END:
-                    return object;
-                case COMMA:
-                    reader.getNextTokenType();
+    private <S> ParseResult<S> parseSource(int index, S source) {
+        try {
+            return new ParseResult<>(index, source, parseSource(source), null);
+        } catch (IOException | RuntimeException e) {
+            return new ParseResult<>(index, source, null, e);
+        }
+    }
+
+    private JSONValue parseSource(Object source) throws IOException {
+        if (source instanceof File)
+            source = ((File) source).toPath();
+        if (source instanceof Path) {
+            Path path = (Path) source;
+            // small files are read at once, so that no reader buffer is allocated for them
+            if (Files.size(path) > SMALL_FILE)
+                return parse(new DefaultJSONReader(Files.newBufferedReader(path, StandardCharsets.UTF_8), true), true);
+            return parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        }
+        if (source instanceof URL) {
+            try (InputStream in = ((URL) source).openStream()) {
+                return parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        throw new IllegalArgumentException("Cannot parse a source of " + (source == null ? "null" : source.getClass()));
+    }
+
+    private static Method findVirtualThreadExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newBatchExecutor(int maxConcurrency) {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException ignore) {
+                // fall back to platform threads
             }
         }
+        int threads = Math.min(maxConcurrency, Runtime.getRuntime().availableProcessors() * 4);
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "JSONParser-parseAll");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    private JSONArray parseArray(JSONReader reader) throws ParseException {
-        JSONArray array = new JSONArray();
-        if (reader.getNextTokenType() == ARRAY_END)
-            return array;
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum nesting depth of parsed documents, where a scalar root has a depth of 0
+     * and every enclosing object or array adds 1. Deeper documents fail with a
+     * {@link ParseException#LIMIT_EXCEEDED} exception. There is no limit by default.
+     *
+     * @param maxDepth the maximum depth
+     * @return this parser, for chaining
+     */
+    public JSONParser setMaxDepth(int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth must not be negative");
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public long getMaxDocumentSize() {
+        return maxDocumentSize;
+    }
+
+    /**
+     * Sets the maximum number of characters, or bytes for binary input, a document may span.
+     * Larger documents fail with a {@link ParseException#LIMIT_EXCEEDED} exception.
+     * Readers which {@linkplain JSONReader#limitCharCount(long) support it}, such as {@link DefaultJSONReader},
+     * fail as soon as the limit is crossed, even in the middle of a huge string or number.
+     * Other readers which {@linkplain JSONReader#getCharCount() count} their input are only checked after each value,
+     * so a single token may be read into memory in full before the limit trips.
+     * There is no limit by default.
+     *
+     * @param maxDocumentSize the maximum size
+     * @return this parser, for chaining
+     */
+    public JSONParser setMaxDocumentSize(long maxDocumentSize) {
+        if (maxDocumentSize < 0)
+            throw new IllegalArgumentException("maxDocumentSize must not be negative");
+        this.maxDocumentSize = maxDocumentSize;
+        return this;
+    }
+
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * Sets the memory budget of a parsed tree, as estimated by {@link JSONValue#estimateRetainedBytes()}.
+     * Parsing fails with a {@link ParseException#LIMIT_EXCEEDED} exception as soon as the tree built so far
+     * exceeds it, instead of running out of heap. Documents which do not fit can be processed without a tree,
+     * see {@link #parse(JSONReader, JSONHandler)}. There is no limit by default.
+     *
+     * @param maxRetainedBytes the maximum estimated size in bytes
+     * @return this parser, for chaining
+     */
+    public JSONParser setMaxRetainedBytes(long maxRetainedBytes) {
+        if (maxRetainedBytes < 0)
+            throw new IllegalArgumentException("maxRetainedBytes must not be negative");
+        this.maxRetainedBytes = maxRetainedBytes;
+        return this;
+    }
+
+    /**
+     * Parses the value starting at the current token of the reader, or the next one if the reader has not been read yet,
+     * and passes it to the handler instead of building a tree. The reader is not closed.
+     * The limits of this parser apply, and the handler has received a part of the document if parsing fails.
+     *
+     * @param reader  the reader to read tokens from
+     * @param handler the handler to pass the document to
+     * @throws ParseException if the document is not valid JSON or exceeds a limit
+     */
+    public void parse(JSONReader reader, JSONHandler handler) throws ParseException {
+        reader.limitCharCount(maxDocumentSize);
+        TokenType type = reader.getCurrentTokenType();
+        if (type == null)
+            type = reader.getNextTokenType();
+        boolean checkSize = maxDocumentSize != Long.MAX_VALUE;
+        // whether each open container is an object, tracked here instead of the call stack,
+        // so the depth of a document is only bounded by setMaxDepth and the heap
+        boolean[] objects = new boolean[16];
+        int depth = 0;
         while (true) {
-            array.add(parseValue(reader));
-            switch (reader.getNextTokenType()) {
+            // type is the first token of a value
+            switch (type) {
+                case OBJECT_START:
+                case ARRAY_START:
+                    boolean object = type == OBJECT_START;
+                    if (depth == maxDepth)
+                        throw ParseException.limitExceeded(reader.getPosition(), "Document is nested deeper than " + maxDepth + " levels");
+                    if (depth == objects.length)
+                        objects = Arrays.copyOf(objects, depth * 2);
+                    objects[depth++] = object;
+                    if (object)
+                        handler.startObject();
+                    else
+                        handler.startArray();
+                    type = reader.getNextTokenType();
+                    if (type == (object ? OBJECT_END : ARRAY_END)) {
+                        depth--;
+                        if (object)
+                            handler.endObject();
+                        else
+                            handler.endArray();
+                        break;
+                    }
+                    if (object)
+                        type = readKey(reader, type, handler);
+                    continue;
+                case NUMBER:
+                    if (reader.isCurrentLong())
+                        handler.value(reader.getCurrentLong());
+                    else if (reader.isCurrentDouble())
+                        handler.value(reader.getCurrentDouble());
+                    else
+                        handler.value((Number) reader.getCurrentToken());
+                    break;
+                case STRING:
+                    handler.value((CharSequence) reader.getCurrentToken());
+                    break;
+                case TRUE:
+                    handler.value(true);
+                    break;
+                case FALSE:
+                    handler.value(false);
+                    break;
+                case NULL:
+                    handler.nullValue();
+                    break;
                 default:
                     reader.error();
-                case ARRAY_END:
-                    return array;
-                case COMMA:
-                    reader.getNextTokenType();
+                    return;
+            }
+            // a value is complete, move to the start of the next value
+            while (true) {
+                if (checkSize && reader.getCharCount() > maxDocumentSize)
+                    throw ParseException.limitExceeded(reader.getPosition(), "Document exceeds " + maxDocumentSize + " characters");
+                if (depth == 0)
+                    return;
+                boolean object = objects[depth - 1];
+                type = reader.getNextTokenType();
+                if (type == COMMA) {
+                    type = reader.getNextTokenType();
+                    if (object)
+                        type = readKey(reader, type, handler);
+                    break;
+                }
+                if (type != (object ? OBJECT_END : ARRAY_END))
+                    reader.error();
+                depth--;
+                if (object)
+                    handler.endObject();
+                else
+                    handler.endArray();
             }
         }
     }
+
+    private JSONValue parseValue(JSONReader reader, TreeBuilder builder) throws ParseException {
+        try {
+            parse(reader, builder);
+        } catch (ParseException e) {
+            // the builder does not know where it is in the input
+            if (e.getType() == ParseException.LIMIT_EXCEEDED && e.getPosition() < 0)
+                throw ParseException.limitExceeded(reader.getPosition(), e.getMessage());
+            throw e;
+        }
+        return builder.getResult();
+    }
+
+    private TokenType readKey(JSONReader reader, TokenType type, JSONHandler handler) throws ParseException {
+        if (type != STRING)
+            reader.error();
+        handler.key(reader.getCurrentToken().toString());
+        reader.expectNextType(COLON);
+        return reader.getNextTokenType();
+    }
 }
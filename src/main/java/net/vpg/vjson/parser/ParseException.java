@@ -18,6 +18,8 @@ package net.vpg.vjson.parser;
 public class ParseException extends RuntimeException {
     public static final int UNEXPECTED_TOKEN = 0;
     public static final int UNEXPECTED_EXCEPTION = 1;
+    public static final int LIMIT_EXCEEDED = 2;
+    public static final int SCHEMA_VIOLATION = 3;
     private final int type;
     private final int position;
     private final String token;
@@ -36,6 +38,20 @@ public class ParseException extends RuntimeException {
         this.token = null;
     }
 
+    /**
+     * @param position the position of the error, or -1 if it did not occur while reading input
+     */
+    protected ParseException(int type, int position, String message) {
+        super(position < 0 ? message : message + " at position " + position);
+        this.position = position;
+        this.type = type;
+        this.token = null;
+    }
+
+    public static ParseException limitExceeded(int position, String message) {
+        return new ParseException(LIMIT_EXCEEDED, position, message);
+    }
+
     public int getType() {
         return type;
     }
@@ -48,7 +64,7 @@ public class ParseException extends RuntimeException {
     }
 
     /**
-     * @return the unexpected token, or null if {@code type} is {@link #UNEXPECTED_EXCEPTION}
+     * @return the unexpected token, or null if {@code type} is not {@link #UNEXPECTED_TOKEN}
      */
     public Object getToken() {
         return token;
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.parser;
+
+import net.vpg.vjson.value.JSONValue;
+
+/**
+ * The outcome of parsing one source of {@link JSONParser#parseAll}, which holds either the parsed value
+ * or the exception that prevented it.
+ *
+ * @param <S> the type of the sources
+ * @author Vaibhav Nargwani
+ */
+public final class ParseResult<S> {
+    private final int index;
+    private final S source;
+    private final JSONValue value;
+    private final Exception error;
+
+    ParseResult(int index, S source, JSONValue value, Exception error) {
+        this.index = index;
+        this.source = source;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * @return the position of the source in the parsed collection
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public S getSource() {
+        return source;
+    }
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+
+    /**
+     * @return the parsed value, or null if parsing failed
+     */
+    public JSONValue getValue() {
+        return value;
+    }
+
+    /**
+     * @return the {@link ParseException} or {@link java.io.IOException} that occurred, or null if parsing succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "ParseResult[" + source + (error == null ? "]" : ", error=" + error + "]");
+    }
+}
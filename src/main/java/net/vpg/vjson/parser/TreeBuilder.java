@@ -0,0 +1,205 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.parser;
+
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONNull;
+import net.vpg.vjson.value.JSONObject;
+import net.vpg.vjson.value.JSONValue;
+
+import java.util.Arrays;
+
+/**
+ * A {@link JSONHandler} which builds a {@link JSONValue} tree, as used by {@link JSONParser#parse(net.vpg.vjson.reader.JSONReader)}.
+ * Numbers that belong to an array are added to it without boxing.
+ * A builder builds a single document, and keeps a running estimate of the heap it retains,
+ * which approximates {@link JSONValue#estimateRetainedBytes()} without the spare capacity of arrays.
+ * It also counts the values of each type and the maximum depth as it goes, for {@link net.vpg.vjson.metrics.ParseMetrics}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class TreeBuilder implements JSONHandler {
+    private JSONValue[] containers = new JSONValue[16];
+    private String[] keys = new String[16];
+    private int depth;
+    private JSONValue result;
+    private long maxRetainedBytes = Long.MAX_VALUE;
+    private long retainedBytes;
+    private final long[] counts = new long[JSONValue.Type.values().length];
+    private int maxDepth;
+
+    public TreeBuilder() {
+    }
+
+    /**
+     * @param maxRetainedBytes the memory budget of the document, see {@link #getRetainedBytes()}
+     */
+    public TreeBuilder(long maxRetainedBytes) {
+        if (maxRetainedBytes < 0)
+            throw new IllegalArgumentException("maxRetainedBytes must not be negative");
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    /**
+     * @return the document, or null if it has not been completed
+     */
+    public JSONValue getResult() {
+        return result;
+    }
+
+    /**
+     * @return the estimated heap retained by the values built so far
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * @param type the type of values to count
+     * @return the number of values of the given type started so far, including the root
+     */
+    public long getValueCount(JSONValue.Type type) {
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * @return the maximum depth reached so far, where a scalar root has a depth of 0
+     * and every enclosing object or array adds 1, like {@link JSONParser#setMaxDepth(int)}
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public void startObject() {
+        counts[JSONValue.Type.OBJECT.ordinal()]++;
+        retain(64);
+        push(new JSONObject());
+    }
+
+    @Override
+    public void key(String key) {
+        retain(80 + key.length());
+        keys[depth - 1] = key;
+    }
+
+    @Override
+    public void endObject() {
+        add(pop());
+    }
+
+    @Override
+    public void startArray() {
+        counts[JSONValue.Type.ARRAY.ordinal()]++;
+        retain(56);
+        push(new JSONArray());
+    }
+
+    @Override
+    public void endArray() {
+        add(pop());
+    }
+
+    @Override
+    public void value(long value) {
+        counts[JSONValue.Type.NUMBER.ordinal()]++;
+        if (depth != 0 && containers[depth - 1] instanceof JSONArray) {
+            retain(8);
+            ((JSONArray) containers[depth - 1]).addLong(value);
+        } else {
+            retain(32);
+            add(JSONValue.of(value));
+        }
+    }
+
+    @Override
+    public void value(double value) {
+        counts[JSONValue.Type.NUMBER.ordinal()]++;
+        if (depth != 0 && containers[depth - 1] instanceof JSONArray) {
+            retain(8);
+            ((JSONArray) containers[depth - 1]).addDouble(value);
+        } else {
+            retain(32);
+            add(JSONValue.of(value));
+        }
+    }
+
+    @Override
+    public void value(Number value) {
+        counts[JSONValue.Type.NUMBER.ordinal()]++;
+        retain(32);
+        add(JSONValue.of(value));
+    }
+
+    @Override
+    public void value(CharSequence value) {
+        counts[JSONValue.Type.STRING.ordinal()]++;
+        retain(56 + value.length());
+        add(JSONValue.of(value.toString()));
+    }
+
+    @Override
+    public void value(boolean value) {
+        counts[JSONValue.Type.BOOLEAN.ordinal()]++;
+        add(JSONValue.of(value));
+    }
+
+    @Override
+    public void nullValue() {
+        counts[JSONValue.Type.NULL.ordinal()]++;
+        add(JSONNull.getInstance());
+    }
+
+    private void retain(long bytes) {
+        retainedBytes += bytes;
+        if (retainedBytes > maxRetainedBytes)
+            throw ParseException.limitExceeded(-1, "Document exceeds the memory budget of " + maxRetainedBytes + " bytes");
+    }
+
+    private void push(JSONValue container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+        }
+        containers[depth++] = container;
+        if (depth > maxDepth)
+            maxDepth = depth;
+    }
+
+    private JSONValue pop() {
+        JSONValue container = containers[--depth];
+        containers[depth] = null;
+        keys[depth] = null;
+        return container;
+    }
+
+    /**
+     * Adds a completed value to the innermost open container, or completes the document.
+     */
+    private void add(JSONValue value) {
+        if (depth == 0) {
+            result = value;
+            return;
+        }
+        JSONValue container = containers[depth - 1];
+        if (container instanceof JSONObject) {
+            ((JSONObject) container).put(keys[depth - 1], value);
+        } else {
+            retain(4);
+            ((JSONArray) container).add(value);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.patch;
+
+import net.vpg.vjson.value.JSONPointer;
+import net.vpg.vjson.value.JSONValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+class Differ {
+    /**
+     * Arrays whose middle sections differ in more than this many elements are patched element by element
+     * instead, keeping the O(D^2) memory of the edit script search bounded.
+     */
+    private static final int MAX_EDIT_DISTANCE = 1024;
+    private static final byte EQUAL = 0;
+    private static final byte DELETE = 1;
+    private static final byte INSERT = 2;
+    private final Structure structure = new Structure();
+    private final List<PatchOperation> operations;
+
+    Differ(List<PatchOperation> operations) {
+        this.operations = operations;
+    }
+
+    void diff(String path, JSONValue source, JSONValue target) {
+        if (structure.equal(source, target))
+            return;
+        if (source.getType() != target.getType() || source.getType() != JSONValue.Type.OBJECT && source.getType() != JSONValue.Type.ARRAY) {
+            operations.add(PatchOperation.replace(path, Structure.copy(target)));
+        } else if (source.getType() == JSONValue.Type.OBJECT) {
+            Map<String, JSONValue> x = source.toObject().toMap();
+            Map<String, JSONValue> y = target.toObject().toMap();
+            for (Map.Entry<String, JSONValue> entry : x.entrySet()) {
+                String childPath = path + '/' + JSONPointer.escape(entry.getKey());
+                JSONValue other = y.get(entry.getKey());
+                if (other == null)
+                    operations.add(PatchOperation.remove(childPath));
+                else
+                    diff(childPath, entry.getValue(), other);
+            }
+            for (Map.Entry<String, JSONValue> entry : y.entrySet()) {
+                if (!x.containsKey(entry.getKey()))
+                    operations.add(PatchOperation.add(path + '/' + JSONPointer.escape(entry.getKey()), Structure.copy(entry.getValue())));
+            }
+        } else {
+            diffArrays(path, source.toArray().toList(), target.toArray().toList());
+        }
+    }
+
+    private void diffArrays(String path, List<JSONValue> a, List<JSONValue> b) {
+        int n = a.size();
+        int m = b.size();
+        int start = 0;
+        while (start < n && start < m && structure.equal(a.get(start), b.get(start))) {
+            start++;
+        }
+        int end = 0;
+        while (end < n - start && end < m - start && structure.equal(a.get(n - 1 - end), b.get(m - 1 - end))) {
+            end++;
+        }
+        List<JSONValue> x = a.subList(start, n - end);
+        List<JSONValue> y = b.subList(start, m - end);
+        byte[] script = editScript(x, y);
+        if (script == null) {
+            // too many differences, treat the whole middle section as one change
+            script = new byte[x.size() + y.size()];
+            Arrays.fill(script, 0, x.size(), DELETE);
+            Arrays.fill(script, x.size(), script.length, INSERT);
+        }
+        emit(path, x, y, script, start);
+    }
+
+    /**
+     * Walks the edit script, pairing up deletions and insertions of the same run into in-place diffs of the
+     * elements involved, and tracks the index each operation applies to in the partially patched array.
+     */
+    private void emit(String path, List<JSONValue> x, List<JSONValue> y, byte[] script, int index) {
+        int i = 0;
+        int j = 0;
+        int s = 0;
+        while (s < script.length) {
+            if (script[s] == EQUAL) {
+                i++;
+                j++;
+                index++;
+                s++;
+                continue;
+            }
+            int deleted = 0;
+            int inserted = 0;
+            for (; s < script.length && script[s] != EQUAL; s++) {
+                if (script[s] == DELETE)
+                    deleted++;
+                else
+                    inserted++;
+            }
+            int paired = Math.min(deleted, inserted);
+            for (int k = 0; k < paired; k++) {
+                diff(path + '/' + index++, x.get(i++), y.get(j++));
+            }
+            for (int k = paired; k < deleted; k++, i++) {
+                operations.add(PatchOperation.remove(path + '/' + index));
+            }
+            for (int k = paired; k < inserted; k++) {
+                operations.add(PatchOperation.add(path + '/' + index++, Structure.copy(y.get(j++))));
+            }
+        }
+    }
+
+    /**
+     * Computes the shortest edit script between two lists with Myers' algorithm.
+     *
+     * @return the script, or null if it is longer than {@link #MAX_EDIT_DISTANCE}
+     */
+    private byte[] editScript(List<JSONValue> x, List<JSONValue> y) {
+        int n = x.size();
+        int m = y.size();
+        if (n == 0 || m == 0) {
+            byte[] script = new byte[n + m];
+            Arrays.fill(script, n == 0 ? INSERT : DELETE);
+            return script;
+        }
+        int max = Math.min(n + m, MAX_EDIT_DISTANCE);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // the furthest reaching x of every diagonal before round d, covering diagonals -d-1..d+1
+        int[][] trace = new int[max + 1][];
+        for (int d = 0; d <= max; d++) {
+            trace[d] = Arrays.copyOfRange(v, offset - d - 1, offset + d + 2);
+            for (int k = -d; k <= d; k += 2) {
+                int px;
+                if (k == -d || k != d && v[offset + k - 1] < v[offset + k + 1])
+                    px = v[offset + k + 1];
+                else
+                    px = v[offset + k - 1] + 1;
+                int py = px - k;
+                while (px < n && py < m && structure.equal(x.get(px), y.get(py))) {
+                    px++;
+                    py++;
+                }
+                v[offset + k] = px;
+                if (px >= n && py >= m)
+                    return backtrack(trace, d, n, m);
+            }
+        }
+        return null;
+    }
+
+    private byte[] backtrack(int[][] trace, int distance, int n, int m) {
+        // every equal pair covers one element of each list, so the script has D edits and (n + m - D) / 2 pairs
+        byte[] script = new byte[distance + (n + m - distance) / 2];
+        int s = script.length;
+        int x = n;
+        int y = m;
+        for (int d = distance; d >= 0; d--) {
+            int[] v = trace[d];
+            int base = d + 1;
+            int k = x - y;
+            int prevK = k == -d || k != d && v[base + k - 1] < v[base + k + 1] ? k + 1 : k - 1;
+            int prevX = v[base + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                script[--s] = EQUAL;
+                x--;
+                y--;
+            }
+            if (d > 0)
+                script[--s] = x == prevX ? INSERT : DELETE;
+            x = prevX;
+            y = prevY;
+        }
+        return script;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.patch;
+
+import net.vpg.vjson.SerializableArray;
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONValue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A JSON Patch, as defined by RFC 6902: an ordered list of {@link PatchOperation}s.
+ * <p>
+ * Patches are computed with {@link #diff(JSONValue, JSONValue)} and applied in place with {@link #apply(JSONValue)}.
+ * Unchanged subtrees are recognised by memoized structural hashes, and arrays are compared with Myers' O(ND)
+ * difference algorithm after stripping their common prefix and suffix, so a small change to a large document
+ * costs about one pass over it and produces a small patch.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class JSONPatch implements SerializableArray {
+    private final List<PatchOperation> operations;
+
+    public JSONPatch() {
+        this(new ArrayList<>());
+    }
+
+    private JSONPatch(List<PatchOperation> operations) {
+        this.operations = operations;
+    }
+
+    public static JSONPatch of(JSONArray array) {
+        JSONPatch patch = new JSONPatch();
+        for (JSONValue value : array.toList()) {
+            if (value.getType() != JSONValue.Type.OBJECT)
+                throw new PatchException("Patch operations must be objects: " + value);
+            patch.add(PatchOperation.of(value.toObject()));
+        }
+        return patch;
+    }
+
+    /**
+     * Computes a patch which transforms {@code source} into {@code target}.
+     * Neither value is modified.
+     *
+     * @param source the original document
+     * @param target the modified document
+     * @return a patch which, applied to {@code source}, produces a document equal to {@code target}
+     */
+    public static JSONPatch diff(JSONValue source, JSONValue target) {
+        JSONPatch patch = new JSONPatch();
+        new Differ(patch.operations).diff("", source, target);
+        return patch;
+    }
+
+    public JSONPatch add(PatchOperation operation) {
+        operations.add(operation);
+        return this;
+    }
+
+    public List<PatchOperation> getOperations() {
+        return Collections.unmodifiableList(operations);
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Applies this patch to the given document, modifying its objects and arrays in place.
+     * Operations are applied in order; if one of them fails, the operations before it remain applied.
+     *
+     * @param document the document to patch
+     * @return the patched document, which is a different value only if the whole document was replaced
+     * @throws PatchException if an operation cannot be applied
+     */
+    public JSONValue apply(JSONValue document) throws PatchException {
+        for (PatchOperation operation : operations) {
+            document = operation.apply(document);
+        }
+        return document;
+    }
+
+    @Override
+    public JSONArray toArray() {
+        JSONArray array = new JSONArray();
+        operations.forEach(operation -> array.add(operation.toObject()));
+        return array;
+    }
+
+    @Override
+    public String toString() {
+        return deserialize();
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.patch;
+
+import net.vpg.vjson.SerializableObject;
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONObject;
+import net.vpg.vjson.value.JSONPointer;
+import net.vpg.vjson.value.JSONValue;
+
+/**
+ * A single operation of a {@link JSONPatch}, as defined by RFC 6902.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class PatchOperation implements SerializableObject {
+    private final Op op;
+    private final String path;
+    private final String from;
+    private final JSONValue value;
+    private final JSONPointer pointer;
+    private final JSONPointer fromPointer;
+
+    private PatchOperation(Op op, String path, String from, JSONValue value) {
+        this.op = op;
+        this.path = path;
+        this.from = from;
+        this.value = value;
+        this.pointer = compile(path);
+        this.fromPointer = from == null ? null : compile(from);
+    }
+
+    public static PatchOperation add(String path, Object value) {
+        return new PatchOperation(Op.ADD, path, null, JSONValue.of(value));
+    }
+
+    public static PatchOperation remove(String path) {
+        return new PatchOperation(Op.REMOVE, path, null, null);
+    }
+
+    public static PatchOperation replace(String path, Object value) {
+        return new PatchOperation(Op.REPLACE, path, null, JSONValue.of(value));
+    }
+
+    public static PatchOperation move(String from, String path) {
+        return new PatchOperation(Op.MOVE, path, from, null);
+    }
+
+    public static PatchOperation copy(String from, String path) {
+        return new PatchOperation(Op.COPY, path, from, null);
+    }
+
+    public static PatchOperation test(String path, Object value) {
+        return new PatchOperation(Op.TEST, path, null, JSONValue.of(value));
+    }
+
+    public static PatchOperation of(JSONObject object) {
+        JSONValue opName = object.get("op");
+        JSONValue path = object.get("path");
+        if (opName.getType() != JSONValue.Type.STRING || path.getType() != JSONValue.Type.STRING)
+            throw new PatchException("Operation must have string \"op\" and \"path\" members: " + object);
+        Op op = Op.of(opName.toString());
+        String from = null;
+        JSONValue value = null;
+        if (op == Op.MOVE || op == Op.COPY) {
+            JSONValue f = object.get("from");
+            if (f.getType() != JSONValue.Type.STRING)
+                throw new PatchException("Operation " + op.name + " must have a string \"from\" member");
+            from = f.toString();
+        } else if (op != Op.REMOVE) {
+            if (!object.toMap().containsKey("value"))
+                throw new PatchException("Operation " + op.name + " must have a \"value\" member");
+            value = object.get("value");
+        }
+        return new PatchOperation(op, path.toString(), from, value);
+    }
+
+    private static JSONPointer compile(String pointer) {
+        try {
+            return JSONPointer.compile(pointer);
+        } catch (IllegalArgumentException e) {
+            throw new PatchException(e.getMessage());
+        }
+    }
+
+    private static int index(JSONPointer pointer, int i, int size, boolean allowEnd) {
+        if (allowEnd && pointer.getToken(i).equals("-"))
+            return size;
+        int index = pointer.getIndex(i);
+        return index <= (allowEnd ? size : size - 1) ? index : -1;
+    }
+
+    public Op getOp() {
+        return op;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the source location of a {@code move} or {@code copy}, or null for other operations
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * @return the value of an {@code add}, {@code replace} or {@code test}, or null for other operations
+     */
+    public JSONValue getValue() {
+        return value;
+    }
+
+    JSONValue apply(JSONValue root) {
+        switch (op) {
+            case ADD:
+                return add(root, pointer, Structure.copy(value));
+            case REMOVE:
+                remove(root, pointer);
+                return root;
+            case REPLACE:
+                if (pointer.size() == 0)
+                    return Structure.copy(value);
+                remove(root, pointer);
+                return add(root, pointer, Structure.copy(value));
+            case MOVE:
+                if (path.startsWith(from) && path.length() > from.length() && path.charAt(from.length()) == '/')
+                    throw new PatchException("Cannot move " + from + " into one of its children");
+                if (path.equals(from))
+                    return root;
+                JSONValue moved = get(root, fromPointer);
+                remove(root, fromPointer);
+                return add(root, pointer, moved);
+            case COPY:
+                return add(root, pointer, Structure.copy(get(root, fromPointer)));
+            default:
+                // hashes are memoized per comparison only, since earlier operations modify the document in place
+                if (!new Structure().equal(get(root, pointer), value))
+                    throw new PatchException("Test failed for " + path);
+                return root;
+        }
+    }
+
+    private JSONValue get(JSONValue root, JSONPointer pointer) {
+        JSONValue value = pointer.resolve(root);
+        if (value == null)
+            throw new PatchException("No value at " + pointer);
+        return value;
+    }
+
+    private JSONValue parent(JSONValue root, JSONPointer pointer) {
+        JSONValue current = root;
+        for (int i = 0; i < pointer.size() - 1; i++) {
+            current = child(current, pointer, i);
+        }
+        return current;
+    }
+
+    private JSONValue child(JSONValue parent, JSONPointer pointer, int i) {
+        switch (parent.getType()) {
+            case OBJECT:
+                JSONValue member = parent.toObject().toMap().get(pointer.getToken(i));
+                if (member == null)
+                    break;
+                return member;
+            case ARRAY:
+                JSONArray array = parent.toArray();
+                int index = index(pointer, i, array.size(), false);
+                if (index == -1)
+                    break;
+                return array.get(index);
+        }
+        throw new PatchException("No value at " + pointer);
+    }
+
+    private JSONValue add(JSONValue root, JSONPointer pointer, JSONValue value) {
+        if (pointer.size() == 0)
+            return value;
+        JSONValue parent = parent(root, pointer);
+        int last = pointer.size() - 1;
+        switch (parent.getType()) {
+            case OBJECT:
+                parent.toObject().put(pointer.getToken(last), value);
+                return root;
+            case ARRAY:
+                JSONArray array = parent.toArray();
+                int index = index(pointer, last, array.size(), true);
+                if (index == -1)
+                    throw new PatchException("Invalid array index at " + pointer);
+                array.add(index, value);
+                return root;
+            default:
+                throw new PatchException("Cannot add a member to a " + parent.getType() + " at " + pointer);
+        }
+    }
+
+    private void remove(JSONValue root, JSONPointer pointer) {
+        if (pointer.size() == 0)
+            throw new PatchException("Cannot remove the root of a document");
+        JSONValue parent = parent(root, pointer);
+        int last = pointer.size() - 1;
+        switch (parent.getType()) {
+            case OBJECT:
+                JSONObject object = parent.toObject();
+                String key = pointer.getToken(last);
+                if (!object.toMap().containsKey(key))
+                    throw new PatchException("No value at " + pointer);
+                object.remove(key);
+                return;
+            case ARRAY:
+                JSONArray array = parent.toArray();
+                int index = index(pointer, last, array.size(), false);
+                if (index == -1)
+                    throw new PatchException("Invalid array index at " + pointer);
+                array.remove(index);
+                return;
+            default:
+                throw new PatchException("Cannot remove a member of a " + parent.getType());
+        }
+    }
+
+    @Override
+    public JSONObject toObject() {
+        JSONObject object = new JSONObject().put("op", op.name);
+        if (from != null)
+            object.put("from", from);
+        object.put("path", path);
+        if (value != null)
+            object.put("value", value);
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        return deserialize();
+    }
+
+    public enum Op {
+        ADD("add"),
+        REMOVE("remove"),
+        REPLACE("replace"),
+        MOVE("move"),
+        COPY("copy"),
+        TEST("test");
+        private final String name;
+
+        Op(String name) {
+            this.name = name;
+        }
+
+        public static Op of(String name) {
+            for (Op op : values()) {
+                if (op.name.equals(name))
+                    return op;
+            }
+            throw new PatchException("Unknown operation: " + name);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.patch;
+
+import net.vpg.vjson.value.*;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural hashing and equality of JSON trees.
+ * Numbers are compared exactly, so that distinct longs beyond the precision of a double stay distinct,
+ * and only compared as doubles when either of them is a double.
+ * Hashes are computed once per node and memoized, so that comparing two large trees costs a single pass over each,
+ * and unequal subtrees are rejected without being walked again.
+ */
+class Structure {
+    private final Map<JSONValue, Integer> hashes = new IdentityHashMap<>();
+
+    static JSONValue copy(JSONValue value) {
+        switch (value.getType()) {
+            case OBJECT:
+                JSONObject object = new JSONObject();
+                value.toObject().toMap().forEach((key, member) -> object.put(key, copy(member)));
+                return object;
+            case ARRAY:
+                JSONArray array = new JSONArray();
+                value.toArray().toList().forEach(element -> array.add(copy(element)));
+                return array;
+            default:
+                return value;
+        }
+    }
+
+    static boolean equal(Number a, Number b) {
+        if (isFloating(a) || isFloating(b))
+            return a.doubleValue() == b.doubleValue();
+        if (isIntegral(a) && isIntegral(b))
+            return a.longValue() == b.longValue();
+        return toBigDecimal(a).compareTo(toBigDecimal(b)) == 0;
+    }
+
+    private static boolean isFloating(Number number) {
+        return number instanceof Double || number instanceof Float;
+    }
+
+    private static boolean isIntegral(Number number) {
+        return number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte;
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof BigDecimal)
+            return (BigDecimal) number;
+        if (number instanceof BigInteger)
+            return new BigDecimal((BigInteger) number);
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    int hash(JSONValue value) {
+        Integer cached = hashes.get(value);
+        if (cached != null)
+            return cached;
+        int hash;
+        switch (value.getType()) {
+            case OBJECT:
+                hash = 1;
+                for (Map.Entry<String, JSONValue> entry : value.toObject().toMap().entrySet()) {
+                    // order independent, like the map itself
+                    hash += entry.getKey().hashCode() * 31 ^ hash(entry.getValue());
+                }
+                break;
+            case ARRAY:
+                hash = 2;
+                for (JSONValue element : value.toArray().toList()) {
+                    hash = hash * 31 + hash(element);
+                }
+                break;
+            case NUMBER:
+                // equal numbers have equal doubles, whichever way they are compared
+                double d = value.toDouble();
+                hash = Double.hashCode(d == 0 ? 0 : d);
+                break;
+            case STRING:
+                hash = value.toString().hashCode();
+                break;
+            case BOOLEAN:
+                hash = value.toBoolean() ? 3 : 4;
+                break;
+            default:
+                hash = 0;
+        }
+        // scalars are cheap to hash again, and are often shared instances
+        if (value.getType() == JSONValue.Type.OBJECT || value.getType() == JSONValue.Type.ARRAY)
+            hashes.put(value, hash);
+        return hash;
+    }
+
+    boolean equal(JSONValue a, JSONValue b) {
+        if (a == b)
+            return true;
+        if (a.getType() != b.getType() || hash(a) != hash(b))
+            return false;
+        switch (a.getType()) {
+            case OBJECT:
+                Map<String, JSONValue> x = a.toObject().toMap();
+                Map<String, JSONValue> y = b.toObject().toMap();
+                if (x.size() != y.size())
+                    return false;
+                for (Map.Entry<String, JSONValue> entry : x.entrySet()) {
+                    JSONValue other = y.get(entry.getKey());
+                    if (other == null || !equal(entry.getValue(), other))
+                        return false;
+                }
+                return true;
+            case ARRAY:
+                List<JSONValue> l = a.toArray().toList();
+                List<JSONValue> m = b.toArray().toList();
+                if (l.size() != m.size())
+                    return false;
+                for (int i = 0; i < l.size(); i++) {
+                    if (!equal(l.get(i), m.get(i)))
+                        return false;
+                }
+                return true;
+            case NUMBER:
+                return equal(a.toNumber(), b.toNumber());
+            case STRING:
+                return a.toString().equals(b.toString());
+            case BOOLEAN:
+                return a.toBoolean() == b.toBoolean();
+            default:
+                return true;
+        }
+    }
+}
@@ -6,6 +6,7 @@ import net.vpg.vjson.parser.TokenType;
 public abstract class AbstractJSONReader implements JSONReader {
     protected Object currentToken;
     protected TokenType currentTokenType;
+    protected long tokenCount;
 
     @Override
     public TokenType getCurrentTokenType() {
@@ -16,6 +17,7 @@ public abstract class AbstractJSONReader implements JSONReader {
     @Override
     public TokenType getNextTokenType() {
         checkOpen();
+        tokenCount++;
         return currentTokenType = getNextTokenType0();
     }
 
@@ -25,9 +27,14 @@ public abstract class AbstractJSONReader implements JSONReader {
         return currentToken;
     }
 
+    @Override
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
     public Object getNextToken() {
         getNextTokenType();
-        return currentToken;
+        return getCurrentToken();
     }
 
     protected abstract TokenType getNextTokenType0() throws ParseException;
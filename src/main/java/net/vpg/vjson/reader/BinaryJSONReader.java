@@ -0,0 +1,302 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.reader;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.writer.BinaryJSONWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.vpg.vjson.parser.TokenType.*;
+
+/**
+ * Reads one document written by {@link BinaryJSONWriter} and presents it as the same token stream
+ * a {@link DefaultJSONReader} would produce for the equivalent JSON text, so that it can be consumed
+ * by {@link net.vpg.vjson.parser.JSONParser#parse(JSONReader)} unchanged.
+ * The structural {@link TokenType#COLON COLON} and {@link TokenType#COMMA COMMA} tokens are synthesized.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class BinaryJSONReader extends AbstractJSONReader {
+    private static final byte BEFORE_VALUE = 0;
+    private static final byte AFTER_VALUE = 1;
+    private static final byte BEFORE_COLON = 2;
+    private static final byte AFTER_COLON = 3;
+    private final List<String> keys = new ArrayList<>();
+    private final boolean close;
+    private InputStream in;
+    private byte[] buffer;
+    private int offset;
+    private int limit;
+    private long consumed;
+    // one entry per open container
+    private boolean[] isObject = new boolean[16];
+    private byte[] states = new byte[16];
+    private long[] remaining = new long[16];
+    private int depth;
+    private boolean started;
+    private boolean done;
+
+    public BinaryJSONReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public BinaryJSONReader(byte[] bytes, int offset, int length) {
+        this.buffer = bytes;
+        this.offset = offset;
+        this.limit = offset + length;
+        this.consumed = -offset;
+        this.close = false;
+    }
+
+    public BinaryJSONReader(InputStream in) {
+        this(in, false);
+    }
+
+    public BinaryJSONReader(InputStream in, boolean close) {
+        this.in = in;
+        this.buffer = new byte[8192];
+        this.close = close;
+    }
+
+    @Override
+    public int getPosition() {
+        checkOpen();
+        return (int) (consumed + offset);
+    }
+
+    @Override
+    public long getCharCount() {
+        return consumed + offset;
+    }
+
+    @Override
+    protected TokenType getNextTokenType0() {
+        if (!started) {
+            started = true;
+            if (readByte() != BinaryJSONWriter.MAGIC || readByte() != BinaryJSONWriter.VERSION)
+                throw new ParseException(getPosition(), "binary header");
+        }
+        if (depth == 0) {
+            if (done) {
+                currentToken = null;
+                return EOF;
+            }
+            return readValue();
+        }
+        int top = depth - 1;
+        switch (states[top]) {
+            case AFTER_VALUE:
+                if (remaining[top] == 0) {
+                    depth--;
+                    done = depth == 0;
+                    if (isObject[top]) {
+                        currentToken = '}';
+                        return OBJECT_END;
+                    } else {
+                        currentToken = ']';
+                        return ARRAY_END;
+                    }
+                }
+                states[top] = BEFORE_VALUE;
+                currentToken = ',';
+                return COMMA;
+            case BEFORE_COLON:
+                states[top] = AFTER_COLON;
+                currentToken = ':';
+                return COLON;
+            case BEFORE_VALUE:
+                remaining[top]--;
+                if (isObject[top]) {
+                    states[top] = BEFORE_COLON;
+                    currentToken = readKey();
+                    return STRING;
+                }
+            default:
+                states[top] = AFTER_VALUE;
+                return readValue();
+        }
+    }
+
+    private TokenType readValue() {
+        byte tag = readByte();
+        switch (tag) {
+            case BinaryJSONWriter.NULL:
+                currentToken = null;
+                return endScalar(NULL);
+            case BinaryJSONWriter.FALSE:
+                currentToken = false;
+                return endScalar(FALSE);
+            case BinaryJSONWriter.TRUE:
+                currentToken = true;
+                return endScalar(TRUE);
+            case BinaryJSONWriter.LONG:
+                long l = readVarInt();
+                currentToken = (l >>> 1) ^ -(l & 1);
+                return endScalar(NUMBER);
+            case BinaryJSONWriter.DOUBLE:
+                currentToken = Double.longBitsToDouble(readLong());
+                return endScalar(NUMBER);
+            case BinaryJSONWriter.BIG_NUMBER:
+                try {
+                    currentToken = new BigDecimal(readString(readLength()));
+                } catch (NumberFormatException e) {
+                    throw new ParseException(getPosition(), e);
+                }
+                return endScalar(NUMBER);
+            case BinaryJSONWriter.STRING:
+                currentToken = readString(readLength());
+                return endScalar(STRING);
+            case BinaryJSONWriter.ARRAY:
+                currentToken = '[';
+                push(false, readVarInt());
+                return ARRAY_START;
+            case BinaryJSONWriter.OBJECT:
+                currentToken = '{';
+                push(true, readVarInt());
+                return OBJECT_START;
+            default:
+                throw new ParseException(getPosition(), "tag " + tag);
+        }
+    }
+
+    private TokenType endScalar(TokenType type) {
+        if (depth == 0)
+            done = true;
+        return type;
+    }
+
+    private void push(boolean object, long count) {
+        if (depth == states.length) {
+            isObject = Arrays.copyOf(isObject, depth * 2);
+            states = Arrays.copyOf(states, depth * 2);
+            remaining = Arrays.copyOf(remaining, depth * 2);
+        }
+        isObject[depth] = object;
+        // an empty container is closed by the very next token
+        states[depth] = count == 0 ? AFTER_VALUE : BEFORE_VALUE;
+        remaining[depth] = count;
+        depth++;
+    }
+
+    private String readKey() {
+        long header = readVarInt();
+        if ((header & 1) == 1) {
+            long index = header >>> 1;
+            if (index >= keys.size())
+                throw new ParseException(getPosition(), "key reference " + index);
+            return keys.get((int) index);
+        }
+        String key = readString(checkLength(header >>> 1));
+        if (keys.size() < BinaryJSONWriter.MAX_KEY_REFERENCES) {
+            keys.add(key);
+        }
+        return key;
+    }
+
+    private int readLength() {
+        return checkLength(readVarInt());
+    }
+
+    private int checkLength(long length) {
+        if (length > Integer.MAX_VALUE - 8)
+            throw new ParseException(getPosition(), "length " + length);
+        return (int) length;
+    }
+
+    private String readString(int length) {
+        if (limit - offset >= length) {
+            String s = new String(buffer, offset, length, StandardCharsets.UTF_8);
+            offset += length;
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            if (offset == limit && !fill())
+                throw new ParseException(getPosition(), "EOF");
+            int n = Math.min(length - read, limit - offset);
+            System.arraycopy(buffer, offset, bytes, read, n);
+            offset += n;
+            read += n;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private long readVarInt() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new ParseException(getPosition(), "varint");
+    }
+
+    private long readLong() {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (readByte() & 0xFF);
+        }
+        return value;
+    }
+
+    private byte readByte() {
+        if (offset == limit && !fill())
+            throw new ParseException(getPosition(), "EOF");
+        return buffer[offset++];
+    }
+
+    private boolean fill() {
+        if (in == null)
+            return false;
+        try {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read <= 0)
+                return false;
+            consumed += limit;
+            offset = 0;
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new ParseException(getPosition(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) return;
+        buffer = null;
+        currentTokenType = null;
+        currentToken = null;
+        keys.clear();
+        if (close) in.close();
+        in = null;
+    }
+
+    @Override
+    protected void checkOpen() {
+        if (buffer == null) throw new IllegalStateException("This JSONReader has already been closed!");
+    }
+}
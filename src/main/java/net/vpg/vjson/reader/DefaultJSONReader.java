@@ -20,39 +20,12 @@ import net.vpg.vjson.parser.TokenType;
 
 import java.io.*;
 import java.net.URL;
-import java.util.Map;
-import java.util.function.Function;
 
 import static net.vpg.vjson.parser.TokenType.*;
 
 public class DefaultJSONReader extends AbstractJSONReader {
-    private static final Map<Character, TokenType> typeMap = Map.of(
-        '{', OBJECT_START,
-        '}', OBJECT_END,
-        '[', ARRAY_START,
-        ']', ARRAY_END,
-        ',', COMMA,
-        ':', COLON,
-        '"', STRING,
-        't', TRUE,
-        'f', FALSE,
-        'n', NULL
-    );
-    private static final Map<Character, Function<DefaultJSONReader, Object>> tokenMap = Map.of(
-        '"', DefaultJSONReader::getString,
-        't', reader -> {
-            reader.checkToken("true");
-            return true;
-        },
-        'f', reader -> {
-            reader.checkToken("false");
-            return false;
-        },
-        'n', reader -> {
-            reader.checkToken("null");
-            return null;
-        }
-    );
+    private static final int UNBOXED_LONG = 1;
+    private static final int UNBOXED_DOUBLE = 2;
     private final boolean close;
     private final boolean isStringBased;
     private StringBuilder builder = new StringBuilder();
@@ -60,6 +33,16 @@ public class DefaultJSONReader extends AbstractJSONReader {
     private int position = -1;
     private int lastPos;
     private char[] buffer;
+    private long discarded;
+    private long stringChars;
+    private long numberChars;
+    private long maxCharCount = Long.MAX_VALUE;
+    private long longToken;
+    private double doubleToken;
+    /**
+     * Whether the current token is a number that has not been boxed yet, see {@link #getCurrentToken()}.
+     */
+    private int unboxed;
 
     public DefaultJSONReader(File f) throws FileNotFoundException {
         this(new FileReader(f));
@@ -101,7 +84,7 @@ public class DefaultJSONReader extends AbstractJSONReader {
             // fill the buffer with new input
             int numRead = reader.read(buffer, lastPos, buffer.length - lastPos);
             if (numRead > 0) {
-                lastPos = numRead;
+                lastPos += numRead;
                 return false;
             }
             // it is unlikely but not impossible that we read 0 characters, but not at the end of reader
@@ -115,7 +98,7 @@ public class DefaultJSONReader extends AbstractJSONReader {
                 }
             }
         } catch (IOException exc) {
-            throw new ParseException(position, exc);
+            throw new ParseException(getPosition(), exc);
         }
         // End of File
         return true;
@@ -131,114 +114,247 @@ public class DefaultJSONReader extends AbstractJSONReader {
     @Override
     public int getPosition() {
         checkOpen();
-        return position;
+        return (int) (discarded + position);
+    }
+
+    @Override
+    public long getCharCount() {
+        return discarded + position + 1;
+    }
+
+    @Override
+    public boolean limitCharCount(long maxCharCount) {
+        this.maxCharCount = maxCharCount;
+        return true;
+    }
+
+    /**
+     * Checked whenever the buffer is refilled and before a run of string characters is copied,
+     * so that a single huge token fails without being read into memory in full.
+     */
+    private void checkCharCount(long charCount) {
+        if (charCount > maxCharCount)
+            throw ParseException.limitExceeded(getPosition(), "Document exceeds " + maxCharCount + " characters");
+    }
+
+    @Override
+    public Object getCurrentToken() {
+        checkOpen();
+        if (unboxed != 0 && currentToken == null)
+            currentToken = unboxed == UNBOXED_LONG ? (Object) longToken : (Object) doubleToken;
+        return currentToken;
+    }
+
+    @Override
+    public boolean isCurrentLong() {
+        return unboxed == UNBOXED_LONG;
+    }
+
+    @Override
+    public boolean isCurrentDouble() {
+        return unboxed == UNBOXED_DOUBLE;
+    }
+
+    @Override
+    public long getCurrentLong() {
+        return unboxed == UNBOXED_LONG ? longToken : super.getCurrentLong();
+    }
+
+    @Override
+    public double getCurrentDouble() {
+        return unboxed == UNBOXED_DOUBLE ? doubleToken : super.getCurrentDouble();
+    }
+
+    @Override
+    public long getStringCharCount() {
+        return stringChars;
+    }
+
+    @Override
+    public long getNumberCharCount() {
+        return numberChars;
     }
 
     private boolean isEOF() {
-        if (lastPos - position == 1) {
-            if (isStringBased) {
-                return true;
-            } else {
-                buffer[0] = buffer[lastPos - 1];
-                position = -1;
-                lastPos = 1;
-                return buffer();
-            }
-        }
-        return false;
+        if (position + 1 < lastPos)
+            return false;
+        if (isStringBased || lastPos == 0)
+            return true;
+        // keep the last consumed character, so that it can still be pushed back
+        discarded += lastPos - 1;
+        checkCharCount(discarded + 1);
+        buffer[0] = buffer[lastPos - 1];
+        position = 0;
+        lastPos = 1;
+        return buffer();
     }
 
     protected TokenType getNextTokenType0() {
-        if (isEOF()) return EOF;
-        char c = nextChar();
-        TokenType type = typeMap.get(c);
-        currentToken = tokenMap.getOrDefault(c, r -> c).apply(this);
-        if (Character.isDigit(c) || c == '-') {
-            currentToken = getNumber();
-            return NUMBER;
+        unboxed = 0;
+        while (!isEOF()) {
+            char c = buffer[++position];
+            switch (c) {
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                case '\0':
+                    continue;
+                case '{':
+                    currentToken = c;
+                    return OBJECT_START;
+                case '}':
+                    currentToken = c;
+                    return OBJECT_END;
+                case '[':
+                    currentToken = c;
+                    return ARRAY_START;
+                case ']':
+                    currentToken = c;
+                    return ARRAY_END;
+                case ',':
+                    currentToken = c;
+                    return COMMA;
+                case ':':
+                    currentToken = c;
+                    return COLON;
+                case '"':
+                    currentToken = getString();
+                    return STRING;
+                case 't':
+                    checkToken("true");
+                    currentToken = true;
+                    return TRUE;
+                case 'f':
+                    checkToken("false");
+                    currentToken = false;
+                    return FALSE;
+                case 'n':
+                    checkToken("null");
+                    currentToken = null;
+                    return NULL;
+                default:
+                    if (c >= '0' && c <= '9' || c == '-') {
+                        readNumber();
+                        return NUMBER;
+                    }
+                    currentToken = c;
+                    error();
+            }
         }
-        if (c == ' ' || c == '\0' || c == '\t' || c == '\r' || c == '\n')
-            return getNextTokenType0();
-        if (type == null) error();
-        return type;
+        currentToken = null;
+        return EOF;
     }
 
     private String getString() {
-        boolean backslashMode = false;
         while (true) {
-            char c = nextChar();
-            if (backslashMode) {
-                switch (c) {
-                    case '"':
-                        append('\"');
-                        break;
-                    case '\\':
-                        append('\\');
-                        break;
-                    case '/':
-                        append('/');
-                        break;
-                    case 'b':
-                        append('\b');
-                        break;
-                    case 'f':
-                        append('\f');
-                        break;
-                    case 'n':
-                        append('\n');
-                        break;
-                    case 'r':
-                        append('\r');
-                        break;
-                    case 't':
-                        append('\t');
-                        break;
-                    case 'u':
-                        append((char) (nextHexChar() << 12 | nextHexChar() << 8 | nextHexChar() << 4 | nextHexChar()));
-                        break;
-                    default:
-                        error();
-                }
-                c = nextChar();
-                backslashMode = false;
+            // scan the run of characters that need no unescaping
+            int start = position + 1;
+            int end = start;
+            while (end < lastPos) {
+                char c = buffer[end];
+                if (c == '"' || c == '\\' || c < ' ')
+                    break;
+                end++;
             }
+            checkCharCount(discarded + end);
+            if (end < lastPos && buffer[end] == '"' && builder.length() == 0) {
+                // the whole string is in the buffer and has no escapes, copy it in one step
+                position = end;
+                stringChars += end - start;
+                return new String(buffer, start, end - start);
+            }
+            builder.append(buffer, start, end - start);
+            position = end - 1;
+            // a quote, a backslash or a control character follows, or the buffer has run out
+            char c = nextChar();
             switch (c) {
+                case '"':
+                    stringChars += builder.length();
+                    return getBuilderString();
+                case '\\':
+                    appendEscape();
+                    break;
                 case '\b':
                 case '\f':
                 case '\n':
                 case '\r':
                 case '\t':
                     error();
-                case '\\':
-                    backslashMode = true;
-                    continue;
-                case '"':
-                    return getBuilderString();
                 default:
                     append(c);
             }
         }
     }
 
+    private void appendEscape() {
+        char c = nextChar();
+        switch (c) {
+            case '"':
+                append('\"');
+                break;
+            case '\\':
+                append('\\');
+                break;
+            case '/':
+                append('/');
+                break;
+            case 'b':
+                append('\b');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 'r':
+                append('\r');
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'u':
+                append((char) (nextHexChar() << 12 | nextHexChar() << 8 | nextHexChar() << 4 | nextHexChar()));
+                break;
+            default:
+                error();
+        }
+    }
+
     private int nextHexChar() {
         int c = Character.digit(nextChar(), 16);
         if (c == -1) error();
         return c;
     }
 
-    private Number getNumber() {
+    /**
+     * Numbers are only boxed when {@link #getCurrentToken()} is called, so that the parser can store them in
+     * primitive arrays directly.
+     */
+    private void readNumber() {
         position--;
-        char c;
-        while (Character.isDigit(c = nextChar()) || c == '.' || c == '+' || c == '-' || c == 'e' || c == 'E') {
+        while (!isEOF()) {
+            char c = buffer[position + 1];
+            if (!(c >= '0' && c <= '9' || c == '.' || c == '+' || c == '-' || c == 'e' || c == 'E'))
+                break;
             append(c);
+            position++;
         }
-        position--;
+        numberChars += builder.length();
         String s = getBuilderString();
-        // Don't use ternary to avoid casting to Double sometimes
-        if (s.contains(".") || s.contains("e") || s.contains("E"))
-            return Double.parseDouble(s);
-        else
-            return Long.parseLong(s);
+        currentToken = null;
+        try {
+            if (s.contains(".") || s.contains("e") || s.contains("E")) {
+                doubleToken = Double.parseDouble(s);
+                unboxed = UNBOXED_DOUBLE;
+            } else {
+                longToken = Long.parseLong(s);
+                unboxed = UNBOXED_LONG;
+            }
+        } catch (NumberFormatException e) {
+            throw new ParseException(getPosition(), s);
+        }
     }
 
     private void append(char c) {
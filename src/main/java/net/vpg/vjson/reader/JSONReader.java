@@ -32,6 +32,71 @@ public interface JSONReader extends Closeable {
 
     Object getNextToken() throws IOException;
 
+    /**
+     * @return whether the current token is a number which fits a long, so that it can be read with {@link #getCurrentLong()}
+     */
+    default boolean isCurrentLong() {
+        return getCurrentToken() instanceof Long;
+    }
+
+    /**
+     * @return whether the current token is a floating point number, so that it can be read with {@link #getCurrentDouble()}
+     */
+    default boolean isCurrentDouble() {
+        return getCurrentToken() instanceof Double;
+    }
+
+    /**
+     * Returns the current number token without boxing it, if this reader supports that.
+     */
+    default long getCurrentLong() {
+        return ((Number) getCurrentToken()).longValue();
+    }
+
+    default double getCurrentDouble() {
+        return ((Number) getCurrentToken()).doubleValue();
+    }
+
+    /**
+     * @return the number of tokens read so far, or -1 if this reader does not count them
+     */
+    default long getTokenCount() {
+        return -1;
+    }
+
+    /**
+     * @return the number of characters, or bytes for binary input, consumed so far, or -1 if this reader does not count them
+     */
+    default long getCharCount() {
+        return -1;
+    }
+
+    /**
+     * @return the number of characters of all string tokens read so far, or -1 if this reader does not count them
+     */
+    default long getStringCharCount() {
+        return -1;
+    }
+
+    /**
+     * @return the number of characters of all number tokens read so far, or -1 if this reader does not count them
+     */
+    default long getNumberCharCount() {
+        return -1;
+    }
+
+    /**
+     * Makes this reader fail with a {@link ParseException#LIMIT_EXCEEDED} exception once its
+     * {@linkplain #getCharCount() character count} exceeds the given limit, while it is still reading a token,
+     * if this reader supports that.
+     *
+     * @param maxCharCount the maximum number of characters to consume, or {@link Long#MAX_VALUE} for no limit
+     * @return whether this reader enforces the limit
+     */
+    default boolean limitCharCount(long maxCharCount) {
+        return false;
+    }
+
     default void expectNextType(TokenType type) throws ParseException {
         if (getNextTokenType() != type)
             error();
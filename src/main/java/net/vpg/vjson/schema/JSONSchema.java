@@ -0,0 +1,351 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.schema;
+
+import net.vpg.vjson.parser.JSONParser;
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.*;
+
+import java.math.BigDecimal;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled JSON Schema, which validates either complete values or the tokens of a {@link JSONReader}
+ * while they are being parsed.
+ * <p>
+ * The validation keywords shared by drafts 4 through 2020-12 are supported: {@code type}, {@code enum}, {@code const},
+ * the string, number, object and array constraints, {@code allOf}, {@code anyOf}, {@code oneOf}, {@code not},
+ * and {@code $ref} to {@code #} or a JSON Pointer within the same document, such as {@code #/$defs/name}.
+ * Other keywords, including annotations and formats, are ignored.
+ * <p>
+ * While reading, most keywords are checked as soon as the relevant token is read, so invalid input is rejected
+ * without parsing the rest of it. Subschemas using {@code enum}, {@code const}, {@code uniqueItems}
+ * or combinators are checked once their value is complete.
+ * Compiled schemas are immutable and can be shared between threads.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONSchema {
+    private final SchemaNode root;
+
+    private JSONSchema(SchemaNode root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the given schema.
+     *
+     * @param schema the schema document
+     * @return the compiled schema
+     * @throws IllegalArgumentException if the schema is malformed or uses an unsupported {@code $ref}
+     */
+    public static JSONSchema compile(JSONObject schema) {
+        return new JSONSchema(new Compiler(schema).compile(schema, "#"));
+    }
+
+    public static JSONSchema compile(String schema) {
+        return compile(JSONObject.parse(schema));
+    }
+
+    /**
+     * Validates the given value.
+     *
+     * @param value the value to validate
+     * @throws ValidationException at the first violation
+     */
+    public void validate(JSONValue value) throws ValidationException {
+        ValidationException e = root.check(value, Path.ROOT, -1);
+        if (e != null)
+            throw e;
+    }
+
+    public boolean isValid(JSONValue value) {
+        return root.check(value, Path.ROOT, -1) == null;
+    }
+
+    /**
+     * Wraps the given reader so that its tokens are validated against this schema as they are read.
+     *
+     * @param reader the reader to validate
+     * @return the validating reader
+     */
+    public ValidatingJSONReader validating(JSONReader reader) {
+        return new ValidatingJSONReader(reader, root);
+    }
+
+    public JSONValue parse(String s) throws ParseException {
+        return parse(new DefaultJSONReader(s), true);
+    }
+
+    /**
+     * Parses and validates one value, failing with a {@link ValidationException} at the first violation.
+     *
+     * @param reader          the reader to parse from
+     * @param closeAfterParse whether to close the reader afterwards
+     * @return the parsed value
+     * @throws ParseException if the input is not valid JSON or does not conform to this schema
+     */
+    public JSONValue parse(JSONReader reader, boolean closeAfterParse) throws ParseException {
+        return new JSONParser().parse(validating(reader), closeAfterParse);
+    }
+
+    private static class Compiler {
+        private final JSONObject document;
+        private final Map<String, SchemaNode> compiled = new HashMap<>();
+
+        Compiler(JSONObject document) {
+            this.document = document;
+        }
+
+        SchemaNode compile(JSONValue schema, String pointer) {
+            switch (schema.getType()) {
+                case BOOLEAN:
+                    return schema.toBoolean() ? SchemaNode.TRUE : SchemaNode.FALSE;
+                case OBJECT:
+                    break;
+                default:
+                    throw new IllegalArgumentException("Schema at " + pointer + " must be an object or a boolean");
+            }
+            SchemaNode node = compiled.get(pointer);
+            if (node != null)
+                return node;
+            node = new SchemaNode();
+            // register first, so that recursive references resolve to this node
+            compiled.put(pointer, node);
+            JSONObject object = schema.toObject();
+            Map<String, JSONValue> keywords = object.toMap();
+            for (Map.Entry<String, JSONValue> entry : keywords.entrySet())
+                apply(node, entry.getKey(), entry.getValue(), keywords, pointer);
+            node.pureRef = node.ref != null && keywords.keySet().stream().allMatch(JSONSchema::isAnnotation);
+            return node;
+        }
+
+        private void apply(SchemaNode node, String keyword, JSONValue value, Map<String, JSONValue> keywords, String pointer) {
+            String at = pointer + '/' + Path.escape(keyword);
+            switch (keyword) {
+                case "$ref":
+                    node.ref = reference(value.toString());
+                    break;
+                case "type":
+                    if (value.getType() == JSONValue.Type.ARRAY) {
+                        for (JSONValue type : value.toArray().toList())
+                            node.types |= type(type.toString(), at);
+                    } else {
+                        node.types = type(value.toString(), at);
+                    }
+                    break;
+                case "enum":
+                    node.enumValues = value.toArray().toList().toArray(new JSONValue[0]);
+                    break;
+                case "const":
+                    node.constValue = value;
+                    break;
+                case "minLength":
+                    node.minLength = count(value, at);
+                    break;
+                case "maxLength":
+                    node.maxLength = count(value, at);
+                    break;
+                case "pattern":
+                    node.pattern = pattern(value.toString(), at);
+                    break;
+                case "minimum":
+                    if (isTrue(keywords.get("exclusiveMinimum")))
+                        node.exclusiveMinimum = value.toDouble();
+                    else
+                        node.minimum = value.toDouble();
+                    break;
+                case "maximum":
+                    if (isTrue(keywords.get("exclusiveMaximum")))
+                        node.exclusiveMaximum = value.toDouble();
+                    else
+                        node.maximum = value.toDouble();
+                    break;
+                case "exclusiveMinimum":
+                    // draft 4 uses a boolean modifier of minimum instead
+                    if (value.getType() == JSONValue.Type.NUMBER)
+                        node.exclusiveMinimum = value.toDouble();
+                    break;
+                case "exclusiveMaximum":
+                    if (value.getType() == JSONValue.Type.NUMBER)
+                        node.exclusiveMaximum = value.toDouble();
+                    break;
+                case "multipleOf":
+                    node.multipleOf = new BigDecimal(value.toNumber().toString());
+                    if (node.multipleOf.signum() <= 0)
+                        throw new IllegalArgumentException("multipleOf at " + at + " must be positive");
+                    try {
+                        node.longMultipleOf = node.multipleOf.longValueExact();
+                    } catch (ArithmeticException e) {
+                        // fractional or huge, checked with BigDecimal
+                    }
+                    break;
+                case "properties":
+                    node.properties = new HashMap<>();
+                    for (Map.Entry<String, JSONValue> entry : value.toObject().toMap().entrySet())
+                        node.properties.put(entry.getKey(), compile(entry.getValue(), at + '/' + Path.escape(entry.getKey())));
+                    break;
+                case "patternProperties":
+                    Map<String, JSONValue> patterns = value.toObject().toMap();
+                    node.patternKeys = new Pattern[patterns.size()];
+                    node.patternNodes = new SchemaNode[patterns.size()];
+                    int i = 0;
+                    for (Map.Entry<String, JSONValue> entry : patterns.entrySet()) {
+                        String patternAt = at + '/' + Path.escape(entry.getKey());
+                        node.patternKeys[i] = pattern(entry.getKey(), patternAt);
+                        node.patternNodes[i++] = compile(entry.getValue(), patternAt);
+                    }
+                    break;
+                case "additionalProperties":
+                    node.additionalProperties = compile(value, at);
+                    break;
+                case "required":
+                    node.required = value.toArray().toList(JSONValue::toString).toArray(new String[0]);
+                    node.requiredIndex = new HashMap<>();
+                    for (int j = 0; j < node.required.length; j++)
+                        node.requiredIndex.put(node.required[j], j);
+                    break;
+                case "minProperties":
+                    node.minProperties = count(value, at);
+                    break;
+                case "maxProperties":
+                    node.maxProperties = count(value, at);
+                    break;
+                case "prefixItems":
+                    node.prefixItems = compileAll(value, at);
+                    break;
+                case "items":
+                    if (value.getType() == JSONValue.Type.ARRAY)
+                        node.prefixItems = compileAll(value, at);
+                    else
+                        node.items = compile(value, at);
+                    break;
+                case "additionalItems":
+                    // only meaningful next to an array of items, which takes the place of prefixItems
+                    if (keywords.get("items") != null && keywords.get("items").getType() == JSONValue.Type.ARRAY)
+                        node.items = compile(value, at);
+                    break;
+                case "minItems":
+                    node.minItems = count(value, at);
+                    break;
+                case "maxItems":
+                    node.maxItems = count(value, at);
+                    break;
+                case "uniqueItems":
+                    node.uniqueItems = value.toBoolean();
+                    break;
+                case "allOf":
+                    node.allOf = compileAll(value, at);
+                    break;
+                case "anyOf":
+                    node.anyOf = compileAll(value, at);
+                    break;
+                case "oneOf":
+                    node.oneOf = compileAll(value, at);
+                    break;
+                case "not":
+                    node.not = compile(value, at);
+                    break;
+            }
+        }
+
+        private SchemaNode[] compileAll(JSONValue value, String pointer) {
+            List<JSONValue> schemas = value.toArray().toList();
+            SchemaNode[] nodes = new SchemaNode[schemas.size()];
+            for (int i = 0; i < nodes.length; i++)
+                nodes[i] = compile(schemas.get(i), pointer + '/' + i);
+            return nodes;
+        }
+
+        private SchemaNode reference(String ref) {
+            if (!ref.startsWith("#"))
+                throw new IllegalArgumentException("Unsupported $ref " + ref + ", only references within the schema are supported");
+            String pointer = URLDecoder.decode(ref.replace("+", "%2B"), StandardCharsets.UTF_8);
+            if (pointer.length() > 1 && pointer.charAt(1) != '/')
+                throw new IllegalArgumentException("Unsupported $ref " + ref + ", anchors are not supported");
+            SchemaNode node = compiled.get(pointer);
+            if (node != null)
+                return node;
+            JSONValue target = JSONPointer.compile(pointer.substring(1)).resolve(document);
+            if (target == null)
+                throw new IllegalArgumentException("Unresolvable $ref " + ref);
+            return compile(target, pointer);
+        }
+
+        private static boolean isTrue(JSONValue value) {
+            return value != null && value.getType() == JSONValue.Type.BOOLEAN && value.toBoolean();
+        }
+
+        private static int type(String name, String pointer) {
+            switch (name) {
+                case "null":
+                    return SchemaNode.NULL;
+                case "boolean":
+                    return SchemaNode.BOOLEAN;
+                case "object":
+                    return SchemaNode.OBJECT;
+                case "array":
+                    return SchemaNode.ARRAY;
+                case "number":
+                    return SchemaNode.NUMBER | SchemaNode.INTEGER;
+                case "string":
+                    return SchemaNode.STRING;
+                case "integer":
+                    return SchemaNode.INTEGER;
+                default:
+                    throw new IllegalArgumentException("Unknown type " + name + " at " + pointer);
+            }
+        }
+
+        private static int count(JSONValue value, String pointer) {
+            if (value.getType() != JSONValue.Type.NUMBER || value.toDouble() < 0)
+                throw new IllegalArgumentException("Expected a non-negative integer at " + pointer);
+            return (int) Math.min(value.toLong(), Integer.MAX_VALUE);
+        }
+
+        private static Pattern pattern(String regex, String pointer) {
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid pattern at " + pointer, e);
+            }
+        }
+    }
+
+    private static boolean isAnnotation(String keyword) {
+        switch (keyword) {
+            case "$ref":
+            case "$schema":
+            case "$id":
+            case "$comment":
+            case "$defs":
+            case "definitions":
+            case "title":
+            case "description":
+            case "default":
+            case "examples":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.schema;
+
+import net.vpg.vjson.value.JSONPointer;
+
+/**
+ * A lazily rendered JSON Pointer to the value being validated.
+ */
+final class Path {
+    static final Path ROOT = new Path(null, "", -1);
+    private final Path parent;
+    private final String key;
+    private final int index;
+
+    private Path(Path parent, String key, int index) {
+        this.parent = parent;
+        this.key = key;
+        this.index = index;
+    }
+
+    static Path of(String pointer) {
+        return pointer.isEmpty() ? ROOT : new Path(null, pointer, -1);
+    }
+
+    static String escape(String key) {
+        return JSONPointer.escape(key);
+    }
+
+    Path child(String key) {
+        return new Path(this, key, -1);
+    }
+
+    Path child(int index) {
+        return new Path(this, null, index);
+    }
+
+    @Override
+    public String toString() {
+        if (parent == null)
+            return key;
+        String prefix = parent.toString();
+        return key == null ? prefix + '/' + index : prefix + '/' + escape(key);
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.schema;
+
+import net.vpg.vjson.value.*;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * One compiled (sub)schema. Keywords are resolved into plain fields at compile time,
+ * so validating a value never looks at the schema document again.
+ */
+final class SchemaNode {
+    static final int NULL = 1;
+    static final int BOOLEAN = 1 << 1;
+    static final int OBJECT = 1 << 2;
+    static final int ARRAY = 1 << 3;
+    static final int NUMBER = 1 << 4;
+    static final int STRING = 1 << 5;
+    static final int INTEGER = 1 << 6;
+    static final SchemaNode TRUE = new SchemaNode();
+    static final SchemaNode FALSE = new SchemaNode();
+    private static final SchemaNode[] NO_NODES = new SchemaNode[0];
+    private static final String[] NO_KEYS = new String[0];
+
+    static {
+        FALSE.never = true;
+    }
+
+    boolean never;
+    SchemaNode ref;
+    /**
+     * Whether {@code $ref} is the only keyword, so that this node can be replaced by its target.
+     */
+    boolean pureRef;
+    int types;
+    JSONValue[] enumValues;
+    JSONValue constValue;
+    int minLength;
+    int maxLength = Integer.MAX_VALUE;
+    Pattern pattern;
+    double minimum = Double.NEGATIVE_INFINITY;
+    double maximum = Double.POSITIVE_INFINITY;
+    double exclusiveMinimum = Double.NEGATIVE_INFINITY;
+    double exclusiveMaximum = Double.POSITIVE_INFINITY;
+    BigDecimal multipleOf;
+    /**
+     * {@link #multipleOf} if it is an integer that fits a long, or 0.
+     */
+    long longMultipleOf;
+    Map<String, SchemaNode> properties = Collections.emptyMap();
+    Pattern[] patternKeys = new Pattern[0];
+    SchemaNode[] patternNodes = NO_NODES;
+    SchemaNode additionalProperties = TRUE;
+    String[] required = NO_KEYS;
+    Map<String, Integer> requiredIndex = Collections.emptyMap();
+    int minProperties;
+    int maxProperties = Integer.MAX_VALUE;
+    SchemaNode[] prefixItems = NO_NODES;
+    SchemaNode items = TRUE;
+    int minItems;
+    int maxItems = Integer.MAX_VALUE;
+    boolean uniqueItems;
+    SchemaNode[] allOf = NO_NODES;
+    SchemaNode[] anyOf = NO_NODES;
+    SchemaNode[] oneOf = NO_NODES;
+    SchemaNode not;
+
+    static int typeOf(JSONValue value) {
+        switch (value.getType()) {
+            case NULL:
+                return NULL;
+            case BOOLEAN:
+                return BOOLEAN;
+            case OBJECT:
+                return OBJECT;
+            case ARRAY:
+                return ARRAY;
+            case STRING:
+                return STRING;
+            default:
+                return isInteger(value.toNumber()) ? NUMBER | INTEGER : NUMBER;
+        }
+    }
+
+    static boolean isInteger(Number number) {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte)
+            return true;
+        if (number instanceof BigDecimal)
+            return ((BigDecimal) number).stripTrailingZeros().scale() <= 0;
+        double d = number.doubleValue();
+        return d == Math.rint(d) && !Double.isInfinite(d);
+    }
+
+    static boolean equal(JSONValue a, JSONValue b) {
+        if (a.getType() != b.getType())
+            return false;
+        switch (a.getType()) {
+            case OBJECT:
+                Map<String, JSONValue> left = a.toObject().toMap();
+                Map<String, JSONValue> right = b.toObject().toMap();
+                if (left.size() != right.size())
+                    return false;
+                for (Map.Entry<String, JSONValue> entry : left.entrySet()) {
+                    JSONValue other = right.get(entry.getKey());
+                    if (other == null || !equal(entry.getValue(), other))
+                        return false;
+                }
+                return true;
+            case ARRAY:
+                List<JSONValue> first = a.toArray().toList();
+                List<JSONValue> second = b.toArray().toList();
+                if (first.size() != second.size())
+                    return false;
+                for (int i = 0; i < first.size(); i++)
+                    if (!equal(first.get(i), second.get(i)))
+                        return false;
+                return true;
+            default:
+                return a.equals(b);
+        }
+    }
+
+    private static int hash(JSONValue value) {
+        switch (value.getType()) {
+            case OBJECT:
+                int hash = 1;
+                for (Map.Entry<String, JSONValue> entry : value.toObject().toMap().entrySet())
+                    hash += entry.getKey().hashCode() ^ hash(entry.getValue());
+                return hash;
+            case ARRAY:
+                hash = 2;
+                for (JSONValue element : value.toArray().toList())
+                    hash = hash * 31 + hash(element);
+                return hash;
+            case NUMBER:
+                return Double.hashCode(value.toDouble());
+            default:
+                return Objects.hashCode(value.getRaw());
+        }
+    }
+
+    /**
+     * Whether this node can only be checked against a complete value, rather than token by token.
+     */
+    boolean needsTree() {
+        return enumValues != null || constValue != null || uniqueItems || ref != null && !pureRef
+            || allOf.length != 0 || anyOf.length != 0 || oneOf.length != 0 || not != null;
+    }
+
+    /**
+     * Follows pure {@code $ref} nodes to the node that actually holds the keywords.
+     */
+    SchemaNode resolve() {
+        SchemaNode node = this;
+        // a cycle of pure references accepts everything, like an empty schema
+        for (int i = 0; node.pureRef && i < 64; i++)
+            node = node.ref;
+        return node.pureRef ? TRUE : node;
+    }
+
+    /**
+     * @return the schema of the object member with the given key
+     */
+    SchemaNode property(String key) {
+        SchemaNode named = properties.get(key);
+        List<SchemaNode> matches = null;
+        for (int i = 0; i < patternKeys.length; i++) {
+            if (patternKeys[i].matcher(key).find()) {
+                if (matches == null) {
+                    matches = new ArrayList<>(2);
+                    if (named != null)
+                        matches.add(named);
+                }
+                matches.add(patternNodes[i]);
+            }
+        }
+        if (matches == null)
+            return named == null ? additionalProperties : named;
+        if (matches.size() == 1)
+            return matches.get(0);
+        SchemaNode all = new SchemaNode();
+        all.allOf = matches.toArray(NO_NODES);
+        return all;
+    }
+
+    /**
+     * @return the schema of the array element at the given index
+     */
+    SchemaNode item(int index) {
+        return index < prefixItems.length ? prefixItems[index] : items;
+    }
+
+    ValidationException checkType(int type, Path path, int position) {
+        if (never)
+            return new ValidationException(position, path.toString(), "false", "no value is allowed");
+        if (types != 0 && (types & type) == 0)
+            return new ValidationException(position, path.toString(), "type", "expected " + typeNames(types) + " but found " + typeNames(type & ~INTEGER));
+        return null;
+    }
+
+    ValidationException checkString(String s, Path path, int position) {
+        if (minLength != 0 || maxLength != Integer.MAX_VALUE) {
+            int length = s.codePointCount(0, s.length());
+            if (length < minLength)
+                return new ValidationException(position, path.toString(), "minLength", "expected at least " + minLength + " characters but found " + length);
+            if (length > maxLength)
+                return new ValidationException(position, path.toString(), "maxLength", "expected at most " + maxLength + " characters but found " + length);
+        }
+        if (pattern != null && !pattern.matcher(s).find())
+            return new ValidationException(position, path.toString(), "pattern", "does not match " + pattern.pattern());
+        return null;
+    }
+
+    ValidationException checkNumber(Number number, Path path, int position) {
+        double d = number.doubleValue();
+        if (d < minimum)
+            return new ValidationException(position, path.toString(), "minimum", number + " is less than " + minimum);
+        if (d > maximum)
+            return new ValidationException(position, path.toString(), "maximum", number + " is greater than " + maximum);
+        if (d <= exclusiveMinimum)
+            return new ValidationException(position, path.toString(), "exclusiveMinimum", number + " is not greater than " + exclusiveMinimum);
+        if (d >= exclusiveMaximum)
+            return new ValidationException(position, path.toString(), "exclusiveMaximum", number + " is not less than " + exclusiveMaximum);
+        if (multipleOf != null) {
+            boolean multiple;
+            if (longMultipleOf != 0 && (number instanceof Long || number instanceof Integer))
+                multiple = number.longValue() % longMultipleOf == 0;
+            else
+                multiple = new BigDecimal(number.toString()).remainder(multipleOf).signum() == 0;
+            if (!multiple)
+                return new ValidationException(position, path.toString(), "multipleOf", number + " is not a multiple of " + multipleOf);
+        }
+        return null;
+    }
+
+    /**
+     * Checks the keywords which need the number of members, and which members are present, once an object is complete.
+     *
+     * @param seen which of the {@link #required} properties are present
+     */
+    ValidationException checkObject(int size, boolean[] seen, Path path, int position) {
+        for (int i = 0; i < required.length; i++)
+            if (!seen[i])
+                return new ValidationException(position, path.toString(), "required", "missing required property " + required[i]);
+        if (size < minProperties)
+            return new ValidationException(position, path.toString(), "minProperties", "expected at least " + minProperties + " properties but found " + size);
+        if (size > maxProperties)
+            return new ValidationException(position, path.toString(), "maxProperties", "expected at most " + maxProperties + " properties but found " + size);
+        return null;
+    }
+
+    ValidationException checkArray(int size, Path path, int position) {
+        if (size < minItems)
+            return new ValidationException(position, path.toString(), "minItems", "expected at least " + minItems + " items but found " + size);
+        if (size > maxItems)
+            return new ValidationException(position, path.toString(), "maxItems", "expected at most " + maxItems + " items but found " + size);
+        return null;
+    }
+
+    /**
+     * Validates a complete value.
+     *
+     * @return the first violation, or null if the value is valid
+     */
+    ValidationException check(JSONValue value, Path path, int position) {
+        if (pureRef)
+            return resolve().check(value, path, position);
+        ValidationException e = checkType(typeOf(value), path, position);
+        if (e != null)
+            return e;
+        if (ref != null && (e = ref.check(value, path, position)) != null)
+            return e;
+        if (constValue != null && !equal(constValue, value))
+            return new ValidationException(position, path.toString(), "const", "expected " + constValue);
+        if (enumValues != null && Arrays.stream(enumValues).noneMatch(candidate -> equal(candidate, value)))
+            return new ValidationException(position, path.toString(), "enum", value + " is not one of " + Arrays.toString(enumValues));
+        switch (value.getType()) {
+            case STRING:
+                e = checkString(value.toString(), path, position);
+                break;
+            case NUMBER:
+                e = checkNumber(value.toNumber(), path, position);
+                break;
+            case OBJECT:
+                e = checkMembers(value.toObject().toMap(), path, position);
+                break;
+            case ARRAY:
+                e = checkElements(value.toArray().toList(), path, position);
+                break;
+        }
+        if (e != null)
+            return e;
+        for (SchemaNode node : allOf)
+            if ((e = node.check(value, path, position)) != null)
+                return e;
+        if (anyOf.length != 0) {
+            boolean any = false;
+            for (SchemaNode node : anyOf) {
+                if (node.check(value, path, position) == null) {
+                    any = true;
+                    break;
+                }
+            }
+            if (!any)
+                return new ValidationException(position, path.toString(), "anyOf", "does not match any of the schemas");
+        }
+        if (oneOf.length != 0) {
+            int matches = 0;
+            for (SchemaNode node : oneOf)
+                if (node.check(value, path, position) == null && ++matches > 1)
+                    break;
+            if (matches != 1)
+                return new ValidationException(position, path.toString(), "oneOf", "matches " + (matches == 0 ? "none" : "more than one") + " of the schemas");
+        }
+        if (not != null && not.check(value, path, position) == null)
+            return new ValidationException(position, path.toString(), "not", "must not match the schema");
+        return null;
+    }
+
+    private ValidationException checkMembers(Map<String, JSONValue> members, Path path, int position) {
+        ValidationException e;
+        for (Map.Entry<String, JSONValue> entry : members.entrySet()) {
+            SchemaNode node = property(entry.getKey());
+            if (node.never)
+                return new ValidationException(position, path.toString(), "additionalProperties", "property " + entry.getKey() + " is not allowed");
+            if (node != TRUE && (e = node.check(entry.getValue(), path.child(entry.getKey()), position)) != null)
+                return e;
+        }
+        boolean[] seen = new boolean[required.length];
+        for (int i = 0; i < required.length; i++)
+            seen[i] = members.containsKey(required[i]);
+        return checkObject(members.size(), seen, path, position);
+    }
+
+    private ValidationException checkElements(List<JSONValue> elements, Path path, int position) {
+        ValidationException e;
+        for (int i = 0, size = elements.size(); i < size; i++) {
+            SchemaNode node = item(i);
+            if (node != TRUE && (e = node.check(elements.get(i), path.child(i), position)) != null)
+                return e;
+        }
+        if ((e = checkArray(elements.size(), path, position)) != null)
+            return e;
+        if (uniqueItems) {
+            Map<Integer, List<JSONValue>> buckets = new HashMap<>();
+            for (JSONValue element : elements) {
+                List<JSONValue> bucket = buckets.computeIfAbsent(hash(element), k -> new ArrayList<>(1));
+                for (JSONValue other : bucket)
+                    if (equal(element, other))
+                        return new ValidationException(position, path.toString(), "uniqueItems", "contains " + element + " more than once");
+                bucket.add(element);
+            }
+        }
+        return null;
+    }
+
+    private static String typeNames(int types) {
+        StringJoiner joiner = new StringJoiner(" or ");
+        String[] names = {"null", "boolean", "object", "array", "number", "string", "integer"};
+        if ((types & NUMBER) != 0)
+            types &= ~INTEGER;
+        for (int i = 0; i < names.length; i++)
+            if ((types & 1 << i) != 0)
+                joiner.add(names[i]);
+        return joiner.toString();
+    }
+}
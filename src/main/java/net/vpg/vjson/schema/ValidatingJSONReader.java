@@ -0,0 +1,386 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.schema;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONObject;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link JSONReader} which validates the tokens of another reader against a {@link JSONSchema} as they are read,
+ * and throws a {@link ValidationException} at the first violation.
+ * Subtrees whose schema has no constraints are only tracked for their nesting, and subtrees which can only be
+ * checked as a whole are collected and checked as soon as they end.
+ *
+ * @author Vaibhav Nargwani
+ * @see JSONSchema#validating(JSONReader)
+ */
+public class ValidatingJSONReader implements JSONReader {
+    private final JSONReader reader;
+    private final SchemaNode root;
+    private Frame[] frames = new Frame[16];
+    private int depth;
+    private int skipDepth;
+    private Collector collector;
+    private SchemaNode collectorNode;
+    private Path collectorPath;
+    private boolean done;
+
+    ValidatingJSONReader(JSONReader reader, SchemaNode root) {
+        this.reader = reader;
+        this.root = root;
+    }
+
+    private static int typeOf(TokenType type, Object token) {
+        switch (type) {
+            case NULL:
+                return SchemaNode.NULL;
+            case TRUE:
+            case FALSE:
+                return SchemaNode.BOOLEAN;
+            case STRING:
+                return SchemaNode.STRING;
+            case OBJECT_START:
+                return SchemaNode.OBJECT;
+            case ARRAY_START:
+                return SchemaNode.ARRAY;
+            default:
+                return SchemaNode.isInteger((Number) token) ? SchemaNode.NUMBER | SchemaNode.INTEGER : SchemaNode.NUMBER;
+        }
+    }
+
+    private static void fail(ValidationException e) {
+        if (e != null)
+            throw e;
+    }
+
+    @Override
+    public TokenType getNextTokenType() {
+        TokenType type = reader.getNextTokenType();
+        accept(type, reader.getCurrentToken());
+        return type;
+    }
+
+    @Override
+    public Object getNextToken() {
+        getNextTokenType();
+        return reader.getCurrentToken();
+    }
+
+    private void accept(TokenType type, Object token) {
+        if (skipDepth != 0) {
+            if (type == TokenType.OBJECT_START || type == TokenType.ARRAY_START)
+                skipDepth++;
+            else if ((type == TokenType.OBJECT_END || type == TokenType.ARRAY_END) && --skipDepth == 0)
+                completed();
+            return;
+        }
+        if (collector != null) {
+            if (collector.accept(type, token))
+                collected();
+            return;
+        }
+        switch (type) {
+            case COLON:
+            case COMMA:
+            case EOF:
+                return;
+            case OBJECT_END:
+            case ARRAY_END:
+                if (depth == 0)
+                    // malformed input, left for the parser to report
+                    return;
+                Frame frame = frames[depth - 1];
+                if (frame.object)
+                    fail(frame.node.checkObject(frame.count, frame.seen, path(depth - 1), reader.getPosition()));
+                else
+                    fail(frame.node.checkArray(frame.count, path(depth - 1), reader.getPosition()));
+                depth--;
+                completed();
+                return;
+            case STRING:
+                if (depth != 0 && frames[depth - 1].expectKey) {
+                    key(frames[depth - 1], (String) token);
+                    return;
+                }
+            default:
+                startValue(type, token);
+        }
+    }
+
+    private void key(Frame frame, String key) {
+        frame.key = key;
+        frame.expectKey = false;
+        SchemaNode node = frame.node;
+        if (frame.count >= node.maxProperties)
+            fail(new ValidationException(reader.getPosition(), path(depth - 1).toString(), "maxProperties", "expected at most " + node.maxProperties + " properties"));
+        frame.child = node.property(key).resolve();
+        if (frame.child.never)
+            fail(new ValidationException(reader.getPosition(), path(depth - 1).toString(), "additionalProperties", "property " + key + " is not allowed"));
+        if (!node.requiredIndex.isEmpty()) {
+            Integer index = node.requiredIndex.get(key);
+            if (index != null)
+                frame.seen[index] = true;
+        }
+    }
+
+    private void startValue(TokenType type, Object token) {
+        SchemaNode node;
+        if (depth == 0) {
+            if (done)
+                // trailing input, left for the caller to handle
+                return;
+            node = root.resolve();
+        } else {
+            Frame frame = frames[depth - 1];
+            if (frame.object) {
+                node = frame.child;
+            } else {
+                if (frame.count >= frame.node.maxItems)
+                    fail(new ValidationException(reader.getPosition(), path(depth - 1).toString(), "maxItems", "expected at most " + frame.node.maxItems + " items"));
+                node = frame.node.item(frame.count).resolve();
+            }
+        }
+        boolean container = type == TokenType.OBJECT_START || type == TokenType.ARRAY_START;
+        if (node == SchemaNode.TRUE) {
+            if (container)
+                skipDepth = 1;
+            else
+                completed();
+            return;
+        }
+        fail(node.checkType(typeOf(type, token), path(depth), reader.getPosition()));
+        if (node.needsTree()) {
+            collector = new Collector();
+            collectorNode = node;
+            collectorPath = path(depth);
+            if (collector.accept(type, token))
+                collected();
+            return;
+        }
+        switch (type) {
+            case OBJECT_START:
+            case ARRAY_START:
+                push(node, type == TokenType.OBJECT_START);
+                return;
+            case STRING:
+                fail(node.checkString((String) token, path(depth), reader.getPosition()));
+                break;
+            case NUMBER:
+                fail(node.checkNumber((Number) token, path(depth), reader.getPosition()));
+                break;
+        }
+        completed();
+    }
+
+    private void push(SchemaNode node, boolean object) {
+        if (depth == frames.length)
+            frames = Arrays.copyOf(frames, depth * 2);
+        Frame frame = frames[depth];
+        if (frame == null)
+            frame = frames[depth] = new Frame();
+        frame.node = node;
+        frame.object = object;
+        frame.expectKey = object;
+        frame.count = 0;
+        frame.key = null;
+        frame.child = null;
+        frame.seen = object && node.required.length != 0 ? new boolean[node.required.length] : null;
+        depth++;
+    }
+
+    private void collected() {
+        JSONValue value = collector.result;
+        collector = null;
+        fail(collectorNode.check(value, collectorPath, reader.getPosition()));
+        completed();
+    }
+
+    private void completed() {
+        if (depth == 0) {
+            done = true;
+            return;
+        }
+        Frame frame = frames[depth - 1];
+        frame.count++;
+        if (frame.object)
+            frame.expectKey = true;
+    }
+
+    /**
+     * @return the path of the value inside the innermost {@code n} open containers
+     */
+    private Path path(int n) {
+        Path path = Path.ROOT;
+        for (int i = 0; i < n; i++) {
+            Frame frame = frames[i];
+            path = frame.object ? path.child(frame.key) : path.child(frame.count);
+        }
+        return path;
+    }
+
+    @Override
+    public int getPosition() {
+        return reader.getPosition();
+    }
+
+    @Override
+    public TokenType getCurrentTokenType() {
+        return reader.getCurrentTokenType();
+    }
+
+    @Override
+    public Object getCurrentToken() {
+        return reader.getCurrentToken();
+    }
+
+    @Override
+    public boolean isCurrentLong() {
+        return reader.isCurrentLong();
+    }
+
+    @Override
+    public boolean isCurrentDouble() {
+        return reader.isCurrentDouble();
+    }
+
+    @Override
+    public long getCurrentLong() {
+        return reader.getCurrentLong();
+    }
+
+    @Override
+    public double getCurrentDouble() {
+        return reader.getCurrentDouble();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return reader.getTokenCount();
+    }
+
+    @Override
+    public long getCharCount() {
+        return reader.getCharCount();
+    }
+
+    @Override
+    public boolean limitCharCount(long maxCharCount) {
+        return reader.limitCharCount(maxCharCount);
+    }
+
+    @Override
+    public long getStringCharCount() {
+        return reader.getStringCharCount();
+    }
+
+    @Override
+    public long getNumberCharCount() {
+        return reader.getNumberCharCount();
+    }
+
+    @Override
+    public void error() throws ParseException {
+        reader.error();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static class Frame {
+        private SchemaNode node;
+        private boolean object;
+        private boolean expectKey;
+        private int count;
+        private String key;
+        private SchemaNode child;
+        private boolean[] seen;
+    }
+
+    /**
+     * Builds the value of a subtree from its tokens.
+     */
+    private static class Collector {
+        private JSONValue[] containers = new JSONValue[8];
+        private String[] keys = new String[8];
+        private int depth;
+        private JSONValue result;
+
+        /**
+         * @return whether the value is complete
+         */
+        boolean accept(TokenType type, Object token) {
+            switch (type) {
+                case OBJECT_START:
+                    push(new JSONObject());
+                    return false;
+                case ARRAY_START:
+                    push(new JSONArray());
+                    return false;
+                case OBJECT_END:
+                case ARRAY_END:
+                    if (depth == 0)
+                        return false;
+                    JSONValue container = containers[--depth];
+                    containers[depth] = null;
+                    return add(container);
+                case COLON:
+                case COMMA:
+                case EOF:
+                    return false;
+                case STRING:
+                    if (depth != 0 && containers[depth - 1] instanceof JSONObject && keys[depth - 1] == null) {
+                        keys[depth - 1] = (String) token;
+                        return false;
+                    }
+                default:
+                    return add(JSONValue.of(token));
+            }
+        }
+
+        private void push(JSONValue container) {
+            if (depth == containers.length) {
+                containers = Arrays.copyOf(containers, depth * 2);
+                keys = Arrays.copyOf(keys, depth * 2);
+            }
+            keys[depth] = null;
+            containers[depth++] = container;
+        }
+
+        private boolean add(JSONValue value) {
+            if (depth == 0) {
+                result = value;
+                return true;
+            }
+            JSONValue container = containers[depth - 1];
+            if (container instanceof JSONObject) {
+                ((JSONObject) container).put(keys[depth - 1], value);
+                keys[depth - 1] = null;
+            } else {
+                ((JSONArray) container).add(value);
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.schema;
+
+import net.vpg.vjson.parser.ParseException;
+
+/**
+ * Thrown when a value does not conform to a {@link JSONSchema}.
+ * When the value is validated while it is being read, the exception also carries the input position.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class ValidationException extends ParseException {
+    private final String path;
+    private final String keyword;
+
+    public ValidationException(int position, String path, String keyword, String message) {
+        super(SCHEMA_VIOLATION, position, (path.isEmpty() ? "Value" : path) + ": " + message);
+        this.path = path;
+        this.keyword = keyword;
+    }
+
+    /**
+     * @return the JSON Pointer to the invalid value, empty for the root
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return the schema keyword that failed, such as {@code "type"} or {@code "required"}
+     */
+    public String getKeyword() {
+        return keyword;
+    }
+}
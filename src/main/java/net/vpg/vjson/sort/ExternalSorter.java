@@ -0,0 +1,421 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.sort;
+
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.BinaryJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONValue;
+import net.vpg.vjson.writer.BinaryJSONWriter;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sorts sequences of JSON values which do not fit in memory, such as the elements of a huge array or the lines
+ * of an NDJSON stream.
+ * <p>
+ * Elements are read one at a time. Every {@link #setRunSize(int) run size} elements are sorted in memory and
+ * spilled to a temporary file in the compact binary encoding of {@link BinaryJSONWriter}, and the runs are then
+ * merged, at most {@link #MAX_FAN_IN} at a time. The sort is stable. Inputs which fit into a single run never
+ * touch the disk.
+ * <p>
+ * Sorted sequences can be combined with {@link #mergeJoin}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class ExternalSorter {
+    /**
+     * The maximum number of runs merged at once, so that a merge does not open too many files.
+     */
+    public static final int MAX_FAN_IN = 64;
+    private final Comparator<? super JSONValue> comparator;
+    private int runSize = 100_000;
+    private Path tempDirectory;
+
+    public ExternalSorter(Comparator<? super JSONValue> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Creates a sorter which orders values by the given key.
+     */
+    public static <K extends Comparable<? super K>> ExternalSorter by(Function<JSONValue, K> key) {
+        return new ExternalSorter(Comparator.comparing(key));
+    }
+
+    public int getRunSize() {
+        return runSize;
+    }
+
+    /**
+     * Sets the number of elements which are sorted in memory at once. 100000 by default.
+     *
+     * @param runSize the number of elements
+     * @return this sorter, for chaining
+     */
+    public ExternalSorter setRunSize(int runSize) {
+        if (runSize <= 0)
+            throw new IllegalArgumentException("Run size must be positive");
+        this.runSize = runSize;
+        return this;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * Sets the directory to spill runs to, the default temporary directory if null.
+     *
+     * @return this sorter, for chaining
+     */
+    public ExternalSorter setTempDirectory(Path tempDirectory) {
+        this.tempDirectory = tempDirectory;
+        return this;
+    }
+
+    /**
+     * Reads the elements of the array read from {@code in} and writes them to {@code out} as a sorted array.
+     *
+     * @throws IOException if a run cannot be spilled or {@code out} cannot be written to
+     */
+    public void sortArray(JSONReader in, Appendable out) throws IOException {
+        try (Stream<JSONValue> sorted = sort(arrayElements(in))) {
+            StringBuilder sb = new StringBuilder();
+            out.append('[');
+            Iterator<JSONValue> iterator = sorted.iterator();
+            while (iterator.hasNext()) {
+                sb.setLength(0);
+                iterator.next().deserialize(sb);
+                out.append(sb);
+                if (iterator.hasNext())
+                    out.append(',');
+            }
+            out.append(']');
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the values of the NDJSON stream read from {@code in} and writes them to {@code out}
+     * sorted, one per line.
+     *
+     * @throws IOException if a run cannot be spilled or {@code out} cannot be written to
+     */
+    public void sortLines(JSONReader in, Appendable out) throws IOException {
+        try (Stream<JSONValue> sorted = sort(lineElements(in))) {
+            StringBuilder sb = new StringBuilder();
+            Iterator<JSONValue> iterator = sorted.iterator();
+            while (iterator.hasNext()) {
+                sb.setLength(0);
+                iterator.next().deserialize(sb);
+                out.append(sb).append('\n');
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Sorts the given elements. The returned stream must be closed to delete the spilled runs,
+     * and throws an {@link UncheckedIOException} if a run cannot be read.
+     *
+     * @param elements the elements to sort
+     * @return the sorted elements
+     * @throws IOException if a run cannot be spilled
+     */
+    public Stream<JSONValue> sort(Iterator<JSONValue> elements) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<JSONValue> run = new ArrayList<>();
+        try {
+            while (elements.hasNext()) {
+                run.add(elements.next());
+                if (run.size() == runSize) {
+                    run.sort(comparator);
+                    runs.add(spill(run.iterator()));
+                    run.clear();
+                }
+            }
+            run.sort(comparator);
+            if (runs.isEmpty())
+                return run.stream();
+            if (!run.isEmpty())
+                runs.add(spill(run.iterator()));
+            run = null;
+            // reduce the number of runs until they can be merged at once
+            while (runs.size() > MAX_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+                    List<Path> group = runs.subList(i, Math.min(runs.size(), i + MAX_FAN_IN));
+                    try (Merger merger = new Merger(group, comparator)) {
+                        merged.add(spill(merger));
+                    }
+                    for (Path path : group)
+                        Files.deleteIfExists(path);
+                }
+                runs = merged;
+            }
+        } catch (IOException | RuntimeException e) {
+            delete(runs);
+            throw e;
+        }
+        Merger merger = new Merger(runs, comparator);
+        List<Path> spilled = runs;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(merger, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(() -> {
+                try {
+                    merger.close();
+                } catch (IOException ignore) {
+                    // the runs are deleted regardless
+                }
+                delete(spilled);
+            });
+    }
+
+    private Path spill(Iterator<JSONValue> elements) throws IOException {
+        Path path = tempDirectory == null ? Files.createTempFile("vjson-sort", ".run") : Files.createTempFile(tempDirectory, "vjson-sort", ".run");
+        ByteArrayOutputStream record = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 65536));
+             BinaryJSONWriter writer = new BinaryJSONWriter(record)) {
+            while (elements.hasNext()) {
+                record.reset();
+                writer.write(elements.next()).flush();
+                out.writeInt(record.size());
+                record.writeTo(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return path;
+    }
+
+    private static void delete(List<Path> paths) {
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ignore) {
+                // leave it to the temporary directory cleanup
+            }
+        }
+    }
+
+    /**
+     * Iterates over the elements of the array read from the reader, parsing one element at a time.
+     *
+     * @param reader a reader positioned before the array
+     * @return the elements
+     */
+    public static Iterator<JSONValue> arrayElements(JSONReader reader) {
+        return new Iterator<>() {
+            private boolean started;
+            // the first token of the next element, or null at the end of the array
+            private TokenType type;
+
+            @Override
+            public boolean hasNext() {
+                if (!started) {
+                    started = true;
+                    reader.expectNextType(TokenType.ARRAY_START);
+                    type = reader.getNextTokenType();
+                    if (type == TokenType.ARRAY_END)
+                        type = null;
+                }
+                return type != null;
+            }
+
+            @Override
+            public JSONValue next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                JSONValue value = JSONValue.parse(reader);
+                type = reader.getNextTokenType();
+                if (type == TokenType.COMMA)
+                    type = reader.getNextTokenType();
+                else if (type == TokenType.ARRAY_END)
+                    type = null;
+                else
+                    reader.error();
+                return value;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the values of an NDJSON stream or any other sequence of values, parsing one value at a time.
+     *
+     * @param reader a reader positioned before the first value
+     * @return the values
+     */
+    public static Iterator<JSONValue> lineElements(JSONReader reader) {
+        return new Iterator<>() {
+            // the first token of the next value, or null if it has not been read
+            private TokenType type;
+
+            @Override
+            public boolean hasNext() {
+                if (type == null)
+                    type = reader.getNextTokenType();
+                return type != TokenType.EOF;
+            }
+
+            @Override
+            public JSONValue next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                type = null;
+                return JSONValue.parse(reader);
+            }
+        };
+    }
+
+    /**
+     * Joins two sequences which are both sorted by the given key, and passes every pair of values with equal keys
+     * to {@code onMatch}. Values without a partner are skipped. All right values with the same key are held in
+     * memory at once, but only one left value.
+     *
+     * @param left    the left values, sorted by key
+     * @param right   the right values, sorted by key
+     * @param key     the key of a value
+     * @param onMatch receives the left and right value of each match
+     */
+    public static <K extends Comparable<? super K>> void mergeJoin(Iterator<JSONValue> left, Iterator<JSONValue> right,
+                                                                    Function<JSONValue, K> key,
+                                                                    BiConsumer<JSONValue, JSONValue> onMatch) {
+        JSONValue next = right.hasNext() ? right.next() : null;
+        K nextKey = next == null ? null : key.apply(next);
+        List<JSONValue> group = new ArrayList<>();
+        K groupKey = null;
+        while (left.hasNext()) {
+            JSONValue value = left.next();
+            K valueKey = key.apply(value);
+            if (groupKey == null || valueKey.compareTo(groupKey) != 0) {
+                // move to the group of right values with the key of this value, if there is one
+                group.clear();
+                groupKey = null;
+                while (next != null && nextKey.compareTo(valueKey) < 0) {
+                    next = right.hasNext() ? right.next() : null;
+                    nextKey = next == null ? null : key.apply(next);
+                }
+                if (next == null)
+                    return;
+                if (next != null && nextKey.compareTo(valueKey) == 0) {
+                    groupKey = nextKey;
+                    while (next != null && nextKey.compareTo(groupKey) == 0) {
+                        group.add(next);
+                        next = right.hasNext() ? right.next() : null;
+                        nextKey = next == null ? null : key.apply(next);
+                    }
+                }
+            }
+            for (JSONValue match : group)
+                onMatch.accept(value, match);
+        }
+    }
+
+    /**
+     * Merges sorted runs, preferring earlier runs on ties so that the sort stays stable.
+     */
+    private static class Merger implements Iterator<JSONValue>, Closeable {
+        private final List<DataInputStream> inputs = new ArrayList<>();
+        private final PriorityQueue<Head> heads;
+
+        Merger(List<Path> runs, Comparator<? super JSONValue> comparator) throws IOException {
+            heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int c = comparator.compare(a.value, b.value);
+                return c != 0 ? c : Integer.compare(a.run, b.run);
+            });
+            try {
+                for (Path run : runs)
+                    inputs.add(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 65536)));
+                for (int i = 0; i < inputs.size(); i++) {
+                    JSONValue value = read(i);
+                    if (value != null)
+                        heads.add(new Head(i, value));
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private JSONValue read(int run) throws IOException {
+            DataInputStream in = inputs.get(run);
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return JSONValue.parse(new BinaryJSONReader(bytes));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public JSONValue next() {
+            Head head = heads.poll();
+            if (head == null)
+                throw new NoSuchElementException();
+            JSONValue value = head.value;
+            try {
+                head.value = read(head.run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (head.value != null)
+                heads.add(head);
+            return value;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (DataInputStream in : inputs) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    private static class Head {
+        private final int run;
+        private JSONValue value;
+
+        private Head(int run, JSONValue value) {
+            this.run = run;
+            this.value = value;
+        }
+    }
+}
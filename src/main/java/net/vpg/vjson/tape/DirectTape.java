@@ -0,0 +1,114 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.value.JSONString;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+
+/**
+ * A tape whose entries and characters live in a region of a direct buffer owned by a {@link JSONStore}.
+ * The entries are followed by the characters, so the region is {@code 8 * tapeLength + 2 * charsLength} bytes long.
+ *
+ * @author Vaibhav Nargwani
+ */
+class DirectTape extends JSONTape {
+    /**
+     * The region of this tape, replaced as a whole when the store moves it.
+     * Regions are never reused, so a view keeps reading the same bytes however long it is held.
+     */
+    volatile ByteBuffer data;
+    /**
+     * The slab the region belongs to, only accessed by the store while holding its lock, and null once freed.
+     */
+    JSONStore.Slab slab;
+
+    DirectTape(int tapeLength, int charsLength) {
+        this.tapeLength = tapeLength;
+        this.charsLength = charsLength;
+    }
+
+    static long sizeOf(JSONTape tape) {
+        return ((long) tape.tapeLength << 3) + ((long) tape.charsLength << 1);
+    }
+
+    /**
+     * Writes the entries and characters of a heap tape to the start of the given buffer.
+     */
+    static void write(JSONTape tape, ByteBuffer target) {
+        ByteBuffer out = target.duplicate().order(ByteOrder.nativeOrder());
+        out.asLongBuffer().put(tape.tape, 0, tape.tapeLength);
+        out.position(tape.tapeLength << 3);
+        out.asCharBuffer().put(tape.chars, 0, tape.charsLength);
+    }
+
+    @Override
+    long entry(int index) {
+        return data.getLong(index << 3);
+    }
+
+    private CharBuffer chars(int index) {
+        ByteBuffer data = this.data.duplicate();
+        int offset = (tapeLength << 3) + (payload(index) << 1);
+        data.limit(offset + ((int) entry(index + 1) << 1)).position(offset);
+        return data.slice().order(ByteOrder.nativeOrder()).asCharBuffer();
+    }
+
+    @Override
+    String string(int index) {
+        return chars(index).toString();
+    }
+
+    @Override
+    void escapeString(int index, StringBuilder sb) {
+        JSONString.escape(chars(index), sb);
+    }
+
+    @Override
+    boolean stringEquals(int index, String s) {
+        int length = (int) entry(index + 1);
+        if (length != s.length())
+            return false;
+        ByteBuffer data = this.data;
+        for (int i = 0, offset = (tapeLength << 3) + (payload(index) << 1); i < length; i++, offset += 2) {
+            if (data.getChar(offset) != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    void appendChars(int index, StringBuilder sb) {
+        sb.append(chars(index));
+    }
+
+    /**
+     * @return a copy of this tape on the heap
+     */
+    @Override
+    public JSONTape copy() {
+        JSONTape copy = new JSONTape(tapeLength, charsLength);
+        ByteBuffer data = this.data.duplicate().order(ByteOrder.nativeOrder());
+        data.asLongBuffer().get(copy.tape, 0, tapeLength);
+        data.position(tapeLength << 3);
+        data.asCharBuffer().get(copy.chars, 0, charsLength);
+        copy.tapeLength = tapeLength;
+        copy.charsLength = charsLength;
+        return copy;
+    }
+}
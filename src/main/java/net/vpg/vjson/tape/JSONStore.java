@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.value.JSONValue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A store which keeps many documents off-heap, for caches that would otherwise hold large numbers of small trees.
+ * Documents are encoded as {@link JSONTape}s and packed into direct buffers, called slabs, so that the heap only
+ * holds a small handle per document and the garbage collector has nothing to trace inside them.
+ * {@link #get(Object)} returns read-only {@link TapeValue} views, which decode values as they are accessed.
+ * <p>
+ * Replacing or removing a document frees its space. Freed regions are never written again: a slab is released
+ * to the garbage collector once all of its documents are freed, and {@link #compact()} moves the documents of
+ * sparsely used slabs together, without disturbing their views. A view therefore stays readable, and keeps
+ * showing the document it was obtained for, even after that document is replaced or removed.
+ * Lookups do not lock, updates are serialized.
+ *
+ * @param <K> the type of the keys
+ * @author Vaibhav Nargwani
+ */
+public class JSONStore<K> {
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+    private final ConcurrentHashMap<K, DirectTape> documents = new ConcurrentHashMap<>();
+    private final int slabSize;
+    private Slab current;
+    private long allocatedBytes;
+    private long usedBytes;
+
+    public JSONStore() {
+        this(DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param slabSize the size of the direct buffers documents are packed into,
+     *                 larger documents get a buffer of their own
+     */
+    public JSONStore(int slabSize) {
+        if (slabSize <= 0)
+            throw new IllegalArgumentException("slabSize must be positive");
+        this.slabSize = slabSize;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    public TapeValue put(K key, String json) throws ParseException {
+        return put(key, JSONTape.parse(json));
+    }
+
+    public TapeValue put(K key, JSONValue value) {
+        return put(key, JSONTape.of(value));
+    }
+
+    /**
+     * Copies a document into the store, and frees the document previously stored under the same key.
+     *
+     * @param key  the key
+     * @param tape the document
+     * @return a view of the stored document
+     */
+    public TapeValue put(K key, JSONTape tape) {
+        Objects.requireNonNull(key);
+        if (tape instanceof DirectTape)
+            tape = tape.copy();
+        long size = DirectTape.sizeOf(tape);
+        if (size > Integer.MAX_VALUE - 7)
+            throw new IllegalArgumentException("Document of " + size + " bytes is too large to be stored");
+        DirectTape stored = new DirectTape(tape.tapeLength, tape.charsLength);
+        synchronized (this) {
+            Slab slab = slabFor(align((int) size));
+            ByteBuffer data = slab.take((int) size);
+            DirectTape.write(tape, data);
+            stored.slab = slab;
+            stored.data = data;
+            usedBytes += align((int) size);
+            free(documents.put(key, stored));
+        }
+        return stored.getRoot();
+    }
+
+    /**
+     * @return a view of the document stored under the given key, or null if there is none
+     */
+    public TapeValue get(K key) {
+        DirectTape tape = documents.get(key);
+        return tape == null ? null : tape.getRoot();
+    }
+
+    public boolean containsKey(K key) {
+        return documents.containsKey(key);
+    }
+
+    /**
+     * Removes and frees a document.
+     *
+     * @return whether there was a document stored under the given key
+     */
+    public synchronized boolean remove(K key) {
+        DirectTape tape = documents.remove(key);
+        free(tape);
+        return tape != null;
+    }
+
+    /**
+     * Removes all documents and releases all slabs.
+     */
+    public synchronized void clear() {
+        documents.clear();
+        current = null;
+        allocatedBytes = 0;
+        usedBytes = 0;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    /**
+     * @return a read-only view of the keys
+     */
+    public Set<K> keySet() {
+        return Collections.unmodifiableSet(documents.keySet());
+    }
+
+    /**
+     * @return the number of off-heap bytes held by the slabs of this store
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the number of off-heap bytes used by the stored documents
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Moves the documents of slabs which are less than half used into the slab being filled,
+     * and releases the slabs they leave empty. Views of the moved documents remain valid.
+     */
+    public synchronized void compact() {
+        for (DirectTape tape : documents.values()) {
+            Slab from = tape.slab;
+            if (from == current || from.buffer.capacity() > slabSize || from.used * 2L >= from.buffer.capacity())
+                continue;
+            ByteBuffer old = tape.data;
+            int size = old.capacity();
+            Slab to = slabFor(align(size));
+            ByteBuffer data = to.take(size);
+            data.duplicate().put(old.duplicate());
+            tape.slab = to;
+            tape.data = data;
+            from.used -= align(size);
+            // readers may still hold the old region, so the slab is left to the garbage collector instead of reused
+            if (--from.documents == 0)
+                allocatedBytes -= from.buffer.capacity();
+        }
+    }
+
+    /**
+     * @return a slab with room for the given number of bytes
+     */
+    private Slab slabFor(int size) {
+        if (size > slabSize) {
+            allocatedBytes += size;
+            return new Slab(size);
+        }
+        if (current == null || current.buffer.capacity() - current.position < size) {
+            if (current != null && current.documents == 0)
+                allocatedBytes -= slabSize;
+            allocatedBytes += slabSize;
+            current = new Slab(slabSize);
+        }
+        return current;
+    }
+
+    private void free(DirectTape tape) {
+        if (tape == null)
+            return;
+        Slab slab = tape.slab;
+        int size = align(tape.data.capacity());
+        tape.slab = null;
+        usedBytes -= size;
+        slab.used -= size;
+        // views may still read the region, so it is never handed out again and the slab is left to the garbage
+        // collector; the slab being filled is accounted for when it is replaced
+        if (--slab.documents == 0 && slab != current)
+            allocatedBytes -= slab.buffer.capacity();
+    }
+
+    static final class Slab {
+        private final ByteBuffer buffer;
+        private int position;
+        private int used;
+        private int documents;
+
+        private Slab(int capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+
+        /**
+         * @return the next region of the given size, in native byte order
+         */
+        private ByteBuffer take(int size) {
+            ByteBuffer region = buffer.duplicate();
+            region.limit(position + size).position(position);
+            position += align(size);
+            used += align(size);
+            documents++;
+            return region.slice().order(ByteOrder.nativeOrder());
+        }
+    }
+}
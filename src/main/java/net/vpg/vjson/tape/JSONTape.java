@@ -0,0 +1,247 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONString;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * A parsed JSON document stored as a flat tape instead of an object graph.
+ * <p>
+ * Every value occupies one or two {@code long} entries of the tape. The top byte of an entry is its tag
+ * and the remaining 56 bits are its payload:
+ * <ul>
+ *     <li>{@code n}, {@code t}, {@code f}: null, true and false, without payload.</li>
+ *     <li>{@code l}, {@code d}: a long or a double, whose raw bits are stored in the next entry.</li>
+ *     <li>{@code s}, {@code N}: a string or an arbitrary precision number; the payload is the offset
+ *     of its characters in the shared character buffer and the next entry holds their count.</li>
+ *     <li><code>{</code>, {@code [}: the start of a container; the payload is the index of the matching end entry,
+ *     so a whole container can be skipped in one step.</li>
+ *     <li><code>}</code>, {@code ]}: the end of a container; the payload is the number of members.</li>
+ * </ul>
+ * Object members are stored as a key string directly followed by its value.
+ * The document is navigated through lightweight {@link TapeValue} cursors.
+ * Tapes are kept on the heap, or off-heap in a {@link JSONStore}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class JSONTape {
+    static final long PAYLOAD_MASK = (1L << 56) - 1;
+    long[] tape;
+    int tapeLength;
+    char[] chars;
+    int charsLength;
+
+    JSONTape() {
+    }
+
+    JSONTape(int tapeCapacity, int charsCapacity) {
+        tape = new long[tapeCapacity];
+        chars = new char[charsCapacity];
+    }
+
+    private JSONTape(JSONTape other) {
+        tape = Arrays.copyOf(other.tape, other.tapeLength);
+        tapeLength = other.tapeLength;
+        chars = Arrays.copyOf(other.chars, other.charsLength);
+        charsLength = other.charsLength;
+    }
+
+    public static JSONTape parse(Reader in) throws ParseException {
+        return parse(new DefaultJSONReader(in), true);
+    }
+
+    public static JSONTape parse(URL url) throws ParseException, IOException {
+        return parse(new DefaultJSONReader(url), true);
+    }
+
+    public static JSONTape parse(InputStream in) throws ParseException {
+        return parse(new DefaultJSONReader(in), true);
+    }
+
+    public static JSONTape parse(String s) throws ParseException {
+        return parse(new DefaultJSONReader(s), true);
+    }
+
+    public static JSONTape parse(File f) throws ParseException, FileNotFoundException {
+        return parse(new DefaultJSONReader(f), true);
+    }
+
+    public static JSONTape parse(JSONReader reader) throws ParseException {
+        return parse(reader, false);
+    }
+
+    public static JSONTape parse(JSONReader reader, boolean closeAfterParse) throws ParseException {
+        try {
+            return new TapeBuilder(reader).build();
+        } finally {
+            if (closeAfterParse) {
+                try {
+                    reader.close();
+                } catch (IOException ignore) {
+                    // close silently
+                }
+            }
+        }
+    }
+
+    public static JSONTape parseFile(String path) throws ParseException, FileNotFoundException {
+        return parse(new File(path));
+    }
+
+    /**
+     * Encodes a tree as a tape, without serializing it first.
+     *
+     * @param value the tree to encode
+     * @return the tape
+     */
+    public static JSONTape of(JSONValue value) {
+        return new TapeBuilder(null).build(value);
+    }
+
+    public TapeValue getRoot() {
+        return cursor(0);
+    }
+
+    /**
+     * @return the number of {@code long} entries used by this tape
+     */
+    public int getTapeLength() {
+        return tapeLength;
+    }
+
+    /**
+     * @return the number of characters used by the shared character buffer
+     */
+    public int getCharsLength() {
+        return charsLength;
+    }
+
+    /**
+     * @return a compacted copy of this tape, sharing no storage with it
+     */
+    public JSONTape copy() {
+        return new JSONTape(this);
+    }
+
+    TapeValue cursor(int index) {
+        switch (tag(index)) {
+            case '{':
+                return new TapeObject(this, index);
+            case '[':
+                return new TapeArray(this, index);
+            default:
+                return new TapeValue(this, index);
+        }
+    }
+
+    long entry(int index) {
+        return tape[index];
+    }
+
+    char tag(int index) {
+        return (char) (entry(index) >>> 56);
+    }
+
+    int payload(int index) {
+        return (int) (entry(index) & PAYLOAD_MASK);
+    }
+
+    /**
+     * @return the index of the value following the value at the given index
+     */
+    int skip(int index) {
+        switch (tag(index)) {
+            case '{':
+            case '[':
+                return payload(index) + 1;
+            case 'l':
+            case 'd':
+            case 's':
+            case 'N':
+                return index + 2;
+            default:
+                return index + 1;
+        }
+    }
+
+    String string(int index) {
+        return new String(chars, payload(index), (int) tape[index + 1]);
+    }
+
+    /**
+     * Appends the escaped string at the given index without copying it out of the tape first.
+     */
+    void escapeString(int index, StringBuilder sb) {
+        int offset = payload(index);
+        JSONString.escape(CharBuffer.wrap(chars, offset, (int) tape[index + 1]), sb);
+    }
+
+    boolean stringEquals(int index, String s) {
+        int length = (int) tape[index + 1];
+        if (length != s.length())
+            return false;
+        for (int i = 0, offset = payload(index); i < length; i++) {
+            if (chars[offset + i] != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends the unescaped characters of the string or number at the given index.
+     */
+    void appendChars(int index, StringBuilder sb) {
+        sb.append(chars, payload(index), (int) tape[index + 1]);
+    }
+
+    void append(char tag, long payload) {
+        if (tapeLength == tape.length) {
+            tape = Arrays.copyOf(tape, tapeLength * 2);
+        }
+        tape[tapeLength++] = (long) tag << 56 | payload;
+    }
+
+    void appendRaw(long value) {
+        if (tapeLength == tape.length) {
+            tape = Arrays.copyOf(tape, tapeLength * 2);
+        }
+        tape[tapeLength++] = value;
+    }
+
+    void appendString(char tag, String s) {
+        int length = s.length();
+        if (chars.length - charsLength < length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, charsLength + length));
+        }
+        s.getChars(0, length, chars, charsLength);
+        append(tag, charsLength);
+        appendRaw(length);
+        charsLength += length;
+    }
+
+    void patch(int index, long payload) {
+        tape[index] = tape[index] & ~PAYLOAD_MASK | payload;
+    }
+}
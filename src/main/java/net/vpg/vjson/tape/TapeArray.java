@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.value.JSONContainer;
+
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A cursor pointing at an array of a {@link JSONTape}.
+ * Since elements have variable widths, indexed access walks the elements from the start,
+ * prefer {@link #forEach(Consumer)} or {@link #stream()} to visit all of them.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class TapeArray extends TapeValue implements JSONContainer<Integer> {
+    TapeArray(JSONTape tape, int index) {
+        super(tape, index);
+    }
+
+    public int size() {
+        return tape.payload(tape.payload(index));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public TapeValue get(Integer index) {
+        return get(index.intValue());
+    }
+
+    public TapeValue get(int index) {
+        int i = find(index);
+        if (i == -1)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size());
+        return tape.cursor(i);
+    }
+
+    @Override
+    public TapeValue lookup(Integer index) {
+        int i = find(index);
+        return i == -1 ? null : tape.cursor(i);
+    }
+
+    public void forEach(Consumer<TapeValue> action) {
+        for (int i = index + 1, end = tape.payload(index); i < end; i = tape.skip(i)) {
+            action.accept(tape.cursor(i));
+        }
+    }
+
+    public Stream<TapeValue> stream() {
+        int end = tape.payload(index);
+        return IntStream.iterate(index + 1, i -> i < end, tape::skip).mapToObj(tape::cursor);
+    }
+
+    /**
+     * @return the tape index of the element at the given index, or -1 if there is none
+     */
+    private int find(int index) {
+        if (index < 0)
+            return -1;
+        int i = this.index + 1;
+        int end = tape.payload(this.index);
+        for (int n = 0; n < index && i < end; n++) {
+            i = tape.skip(i);
+        }
+        return i < end ? i : -1;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONValue;
+
+import java.util.*;
+
+import static net.vpg.vjson.parser.TokenType.*;
+
+class TapeBuilder {
+    private final JSONReader reader;
+    private final JSONTape tape = new JSONTape(64, 256);
+    // index of the start entry and member count of every open container
+    private int[] starts = new int[16];
+    private int[] counts = new int[16];
+    private int depth;
+
+    TapeBuilder(JSONReader reader) {
+        this.reader = reader;
+    }
+
+    JSONTape build() {
+        TokenType type = reader.getCurrentTokenType();
+        if (type == null)
+            type = reader.getNextTokenType();
+        while (true) {
+            // type is the first token of a value
+            if (depth != 0)
+                counts[depth - 1]++;
+            switch (type) {
+                case OBJECT_START:
+                    open('{');
+                    type = reader.getNextTokenType();
+                    if (type == OBJECT_END) {
+                        close('}');
+                        break;
+                    }
+                    type = key(type);
+                    continue;
+                case ARRAY_START:
+                    open('[');
+                    type = reader.getNextTokenType();
+                    if (type == ARRAY_END) {
+                        close(']');
+                        break;
+                    }
+                    continue;
+                default:
+                    scalar(type);
+            }
+            // a value has just been completed, find the start of the next one
+            while (true) {
+                if (depth == 0)
+                    return tape;
+                boolean object = tape.tag(starts[depth - 1]) == '{';
+                type = reader.getNextTokenType();
+                if (type == COMMA) {
+                    type = reader.getNextTokenType();
+                    if (object)
+                        type = key(type);
+                    break;
+                } else if (type == (object ? OBJECT_END : ARRAY_END)) {
+                    close(object ? '}' : ']');
+                } else {
+                    reader.error();
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes a tree instead of the tokens of the reader, with the iterators of the open containers
+     * kept on an explicit stack.
+     */
+    JSONTape build(JSONValue root) {
+        Deque<Iterator<?>> iterators = new ArrayDeque<>();
+        value(root, iterators);
+        while (!iterators.isEmpty()) {
+            Iterator<?> iterator = iterators.peek();
+            if (!iterator.hasNext()) {
+                iterators.pop();
+                close(tape.tag(starts[depth - 1]) == '{' ? '}' : ']');
+                continue;
+            }
+            counts[depth - 1]++;
+            Object next = iterator.next();
+            if (next instanceof Map.Entry) {
+                Map.Entry<?, ?> member = (Map.Entry<?, ?>) next;
+                tape.appendString('s', (String) member.getKey());
+                value((JSONValue) member.getValue(), iterators);
+            } else {
+                value((JSONValue) next, iterators);
+            }
+        }
+        return tape;
+    }
+
+    private void value(JSONValue value, Deque<Iterator<?>> iterators) {
+        switch (value.getType()) {
+            case OBJECT:
+                open('{');
+                iterators.push(value.toObject().toMap().entrySet().iterator());
+                break;
+            case ARRAY:
+                open('[');
+                iterators.push(value.toArray().toList().iterator());
+                break;
+            case STRING:
+                tape.appendString('s', value.toString());
+                break;
+            case NUMBER:
+                Number number = value.toNumber();
+                if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+                    tape.append('l', 0);
+                    tape.appendRaw(number.longValue());
+                } else if (number instanceof Double) {
+                    tape.append('d', 0);
+                    tape.appendRaw(Double.doubleToRawLongBits((Double) number));
+                } else {
+                    tape.appendString('N', number.toString());
+                }
+                break;
+            case BOOLEAN:
+                tape.append(value.toBoolean() ? 't' : 'f', 0);
+                break;
+            default:
+                tape.append('n', 0);
+        }
+    }
+
+    private TokenType key(TokenType type) {
+        if (type != STRING)
+            reader.error();
+        tape.appendString('s', reader.getCurrentToken().toString());
+        reader.expectNextType(COLON);
+        return reader.getNextTokenType();
+    }
+
+    private void scalar(TokenType type) {
+        switch (type) {
+            case STRING:
+                tape.appendString('s', reader.getCurrentToken().toString());
+                break;
+            case NUMBER:
+                Object number = reader.getCurrentToken();
+                if (number instanceof Long) {
+                    tape.append('l', 0);
+                    tape.appendRaw((Long) number);
+                } else if (number instanceof Double) {
+                    tape.append('d', 0);
+                    tape.appendRaw(Double.doubleToRawLongBits((Double) number));
+                } else {
+                    tape.appendString('N', number.toString());
+                }
+                break;
+            case TRUE:
+                tape.append('t', 0);
+                break;
+            case FALSE:
+                tape.append('f', 0);
+                break;
+            case NULL:
+                tape.append('n', 0);
+                break;
+            default:
+                reader.error();
+        }
+    }
+
+    private void open(char tag) {
+        if (depth == starts.length) {
+            starts = Arrays.copyOf(starts, depth * 2);
+            counts = Arrays.copyOf(counts, depth * 2);
+        }
+        starts[depth] = tape.tapeLength;
+        counts[depth] = 0;
+        depth++;
+        tape.append(tag, 0);
+    }
+
+    private void close(char tag) {
+        depth--;
+        tape.patch(starts[depth], tape.tapeLength);
+        tape.append(tag, counts[depth]);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.value.JSONContainer;
+import net.vpg.vjson.value.JSONNull;
+import net.vpg.vjson.value.JSONValue;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A cursor pointing at an object of a {@link JSONTape}.
+ * Lookups scan the members linearly, skipping over nested containers in one step.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class TapeObject extends TapeValue implements JSONContainer<String> {
+    TapeObject(JSONTape tape, int index) {
+        super(tape, index);
+    }
+
+    public int size() {
+        return tape.payload(tape.payload(index));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public boolean containsKey(String key) {
+        return find(key) != -1;
+    }
+
+    /**
+     * @return a cursor to the value mapped to the given key, or {@link JSONNull} if there is none
+     */
+    @Override
+    public JSONValue get(String key) {
+        JSONValue value = lookup(key);
+        return value == null ? JSONNull.getInstance() : value;
+    }
+
+    @Override
+    public TapeValue lookup(String key) {
+        int i = find(key);
+        return i == -1 ? null : tape.cursor(i);
+    }
+
+    public TapeObject getTapeObject(String key) {
+        return ((TapeValue) get(key)).asObject();
+    }
+
+    public TapeArray getTapeArray(String key) {
+        return ((TapeValue) get(key)).asArray();
+    }
+
+    public Set<String> keySet() {
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = index + 1, end = tape.payload(index); i < end; i = tape.skip(i + 2)) {
+            keys.add(tape.string(i));
+        }
+        return keys;
+    }
+
+    public void forEach(BiConsumer<String, TapeValue> action) {
+        for (int i = index + 1, end = tape.payload(index); i < end; i = tape.skip(i + 2)) {
+            action.accept(tape.string(i), tape.cursor(i + 2));
+        }
+    }
+
+    /**
+     * @return the tape index of the value mapped to the given key, or -1 if there is none
+     */
+    private int find(String key) {
+        for (int i = index + 1, end = tape.payload(index); i < end; i = tape.skip(i + 2)) {
+            if (tape.stringEquals(i, key))
+                return i + 2;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.tape;
+
+import net.vpg.vjson.pretty.PrettyPrinter;
+import net.vpg.vjson.value.*;
+import net.vpg.vjson.writer.NumberWriter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cursor pointing at one value of a {@link JSONTape}.
+ * Cursors are cheap to create and hold no data of their own; containers are returned as
+ * {@link TapeObject} and {@link TapeArray} cursors.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class TapeValue extends JSONValue {
+    final JSONTape tape;
+    final int index;
+
+    TapeValue(JSONTape tape, int index) {
+        this.tape = tape;
+        this.index = index;
+    }
+
+    public JSONTape getTape() {
+        return tape;
+    }
+
+    @Override
+    public Type getType() {
+        switch (tape.tag(index)) {
+            case 'n':
+                return Type.NULL;
+            case 't':
+            case 'f':
+                return Type.BOOLEAN;
+            case 'l':
+            case 'd':
+            case 'N':
+                return Type.NUMBER;
+            case 's':
+                return Type.STRING;
+            case '{':
+                return Type.OBJECT;
+            default:
+                return Type.ARRAY;
+        }
+    }
+
+    @Override
+    public boolean isNull() {
+        return tape.tag(index) == 'n';
+    }
+
+    @Override
+    public boolean toBoolean() {
+        switch (tape.tag(index)) {
+            case 't':
+                return true;
+            case 'f':
+                return false;
+            default:
+                return super.toBoolean();
+        }
+    }
+
+    @Override
+    public Number toNumber() {
+        switch (tape.tag(index)) {
+            case 'l':
+                return toLong();
+            case 'd':
+                return toDouble();
+            case 'N':
+                return new BigDecimal(tape.string(index));
+            default:
+                return super.toNumber();
+        }
+    }
+
+    @Override
+    public long toLong() {
+        switch (tape.tag(index)) {
+            case 'l':
+                return tape.entry(index + 1);
+            case 'd':
+                return (long) toDouble();
+            default:
+                return super.toLong();
+        }
+    }
+
+    @Override
+    public double toDouble() {
+        switch (tape.tag(index)) {
+            case 'l':
+                return tape.entry(index + 1);
+            case 'd':
+                return Double.longBitsToDouble(tape.entry(index + 1));
+            default:
+                return super.toDouble();
+        }
+    }
+
+    @Override
+    public int toInt() {
+        return (int) toLong();
+    }
+
+    /**
+     * Materializes this value and everything below it into a regular {@link JSONObject}.
+     */
+    @Override
+    public JSONObject toObject() {
+        return asObject().toValue().toObject();
+    }
+
+    /**
+     * Materializes this value and everything below it into a regular {@link JSONArray}.
+     */
+    @Override
+    public JSONArray toArray() {
+        return asArray().toValue().toArray();
+    }
+
+    public TapeObject asObject() {
+        if (this instanceof TapeObject)
+            return (TapeObject) this;
+        throw new UnsupportedOperationException("Cannot cast value of type " + getType() + " to type " + Type.OBJECT);
+    }
+
+    public TapeArray asArray() {
+        if (this instanceof TapeArray)
+            return (TapeArray) this;
+        throw new UnsupportedOperationException("Cannot cast value of type " + getType() + " to type " + Type.ARRAY);
+    }
+
+    /**
+     * Materializes this value and everything below it into a regular {@link JSONValue} tree.
+     *
+     * @return the materialized value, which is independent of the tape
+     */
+    public JSONValue toValue() {
+        switch (tape.tag(index)) {
+            case 'n':
+                return JSONNull.getInstance();
+            case 't':
+            case 'f':
+                return JSONBoolean.of(toBoolean());
+            case 's':
+                return JSONString.of(tape.string(index));
+            case '{':
+            case '[':
+                return (JSONValue) materialize(false);
+            default:
+                return JSONNumber.of(toNumber());
+        }
+    }
+
+    @Override
+    public Object getRaw() {
+        switch (tape.tag(index)) {
+            case 'n':
+                return null;
+            case 't':
+            case 'f':
+                return toBoolean();
+            case 's':
+                return tape.string(index);
+            case '{':
+            case '[':
+                return materialize(true);
+            default:
+                return toNumber();
+        }
+    }
+
+    /**
+     * Builds the container this cursor points at by walking the tape linearly, keeping the open containers
+     * in arrays instead of on the call stack, so the depth of a document is only bounded by the heap.
+     *
+     * @param raw whether to build maps, lists and plain scalars like {@link #getRaw()}, or {@link JSONValue}s
+     */
+    private Object materialize(boolean raw) {
+        Object[] containers = new Object[16];
+        boolean[] objects = new boolean[16];
+        String[] keys = new String[16];
+        int depth = 0;
+        Object result = null;
+        int i = index;
+        int end = tape.skip(index);
+        while (i < end) {
+            char tag = tape.tag(i);
+            Object value;
+            if (tag == '}' || tag == ']') {
+                value = containers[--depth];
+                containers[depth] = null;
+                i++;
+            } else if (depth != 0 && objects[depth - 1] && keys[depth - 1] == null) {
+                keys[depth - 1] = tape.string(i);
+                i += 2;
+                continue;
+            } else if (tag == '{' || tag == '[') {
+                if (depth == containers.length) {
+                    containers = Arrays.copyOf(containers, depth * 2);
+                    objects = Arrays.copyOf(objects, depth * 2);
+                    keys = Arrays.copyOf(keys, depth * 2);
+                }
+                objects[depth] = tag == '{';
+                if (raw)
+                    containers[depth++] = tag == '{' ? new HashMap<String, Object>() : new ArrayList<>();
+                else
+                    containers[depth++] = tag == '{' ? new JSONObject() : new JSONArray();
+                i++;
+                continue;
+            } else {
+                TapeValue scalar = new TapeValue(tape, i);
+                value = raw ? scalar.getRaw() : scalar.toValue();
+                i = tape.skip(i);
+            }
+            if (depth == 0) {
+                result = value;
+            } else {
+                add(containers[depth - 1], objects[depth - 1] ? keys[depth - 1] : null, value, raw);
+                keys[depth - 1] = null;
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void add(Object container, String key, Object value, boolean raw) {
+        if (raw) {
+            if (key != null)
+                ((Map<String, Object>) container).put(key, value);
+            else
+                ((List<Object>) container).add(value);
+        } else if (key != null) {
+            ((JSONObject) container).put(key, value);
+        } else {
+            ((JSONArray) container).add(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return tape.tag(index) == 's' ? tape.string(index) : deserialize();
+    }
+
+    @Override
+    public String deserialize() {
+        StringBuilder sb = new StringBuilder();
+        // walk the tape linearly, tracking only whether a separator is due in each open container
+        boolean[] first = new boolean[16];
+        boolean[] inObject = new boolean[16];
+        int depth = 0;
+        boolean afterKey = false;
+        int i = index;
+        int end = tape.skip(index);
+        while (i < end) {
+            char tag = tape.tag(i);
+            if (tag == '}' || tag == ']') {
+                sb.append(tag);
+                depth--;
+                i++;
+                continue;
+            }
+            if (depth != 0 && !afterKey) {
+                if (!first[depth - 1])
+                    sb.append(',');
+                first[depth - 1] = false;
+                if (inObject[depth - 1]) {
+                    sb.append('"');
+                    tape.escapeString(i, sb);
+                    sb.append("\":");
+                    afterKey = true;
+                    i += 2;
+                    continue;
+                }
+            }
+            afterKey = false;
+            switch (tag) {
+                case '{':
+                case '[':
+                    if (depth == first.length) {
+                        first = Arrays.copyOf(first, depth * 2);
+                        inObject = Arrays.copyOf(inObject, depth * 2);
+                    }
+                    first[depth] = true;
+                    inObject[depth] = tag == '{';
+                    depth++;
+                    sb.append(tag);
+                    i++;
+                    continue;
+                case 's':
+                    sb.append('"');
+                    tape.escapeString(i, sb);
+                    sb.append('"');
+                    break;
+                case 'l':
+                    sb.append(tape.entry(i + 1));
+                    break;
+                case 'd':
+                    NumberWriter.append(sb, Double.longBitsToDouble(tape.entry(i + 1)));
+                    break;
+                case 'N':
+                    tape.appendChars(i, sb);
+                    break;
+                case 't':
+                    sb.append("true");
+                    break;
+                case 'f':
+                    sb.append("false");
+                    break;
+                default:
+                    sb.append("null");
+            }
+            i = tape.skip(i);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void toPrettyString(PrettyPrinter printer) {
+        toValue().toPrettyString(printer);
+    }
+}
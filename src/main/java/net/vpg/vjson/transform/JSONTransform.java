@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.transform;
+
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONPointer;
+import net.vpg.vjson.value.JSONValue;
+import net.vpg.vjson.writer.JSONTranscoder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A pipeline of {@link TransformStage}s which rewrites documents in a single streaming pass, such as
+ * <pre>{@code
+ * JSONTransform scrub = new JSONTransform()
+ *     .drop("/user/password")
+ *     .rename("/user/mail", "email")
+ *     .redact("/payments/*&#47;card", "***");
+ * scrub.transform(new DefaultJSONReader(in), out);
+ * }</pre>
+ * Locations are JSON Pointers in which a {@code *} token matches any member name or array index,
+ * and refer to the document as it is seen by the stage, that is after the stages before it.
+ * A transform can be applied any number of times, also concurrently, once it is set up.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONTransform {
+    private final List<Function<JSONReader, ? extends JSONReader>> stages = new ArrayList<>();
+
+    /**
+     * Renames the members at the given location.
+     */
+    public JSONTransform rename(String path, String name) {
+        JSONPointer pattern = JSONPointer.compile(path);
+        return then(reader -> new TransformStage(reader) {
+            @Override
+            protected String key(String key) {
+                return matches(pattern) ? name : key;
+            }
+        });
+    }
+
+    /**
+     * Drops the members or array elements at the given location.
+     */
+    public JSONTransform drop(String path) {
+        JSONPointer pattern = JSONPointer.compile(path);
+        return then(reader -> new TransformStage(reader) {
+            @Override
+            protected String key(String key) {
+                return matches(pattern) ? null : key;
+            }
+
+            @Override
+            protected boolean element(int index) {
+                return !matches(pattern);
+            }
+        });
+    }
+
+    /**
+     * Replaces the values at the given location, whatever their type, with the given value.
+     */
+    public JSONTransform redact(String path, Object replacement) {
+        JSONPointer pattern = JSONPointer.compile(path);
+        JSONValue value = JSONValue.of(replacement);
+        return then(reader -> new TransformStage(reader) {
+            @Override
+            protected JSONValue replace(TokenType type, JSONReader reader) {
+                return matches(pattern) ? value : null;
+            }
+        });
+    }
+
+    /**
+     * Replaces every string value which matches the predicate with the given value. Member names are not changed.
+     */
+    public JSONTransform redact(Predicate<String> predicate, Object replacement) {
+        JSONValue value = JSONValue.of(replacement);
+        return then(reader -> new TransformStage(reader) {
+            @Override
+            protected JSONValue replace(TokenType type, JSONReader reader) {
+                return type == TokenType.STRING && predicate.test((String) reader.getCurrentToken()) ? value : null;
+            }
+        });
+    }
+
+    /**
+     * Adds a member to the objects at the given location. The value should not be modified afterwards.
+     */
+    public JSONTransform inject(String path, String key, Object value) {
+        JSONPointer pattern = JSONPointer.compile(path);
+        JSONValue val = JSONValue.of(value);
+        return then(reader -> new TransformStage(reader) {
+            @Override
+            protected void endObject() {
+                if (matches(pattern))
+                    addMember(key, val);
+            }
+        });
+    }
+
+    /**
+     * Adds a custom stage, which is created for every document.
+     */
+    public JSONTransform then(Function<JSONReader, ? extends JSONReader> stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * @return a reader of the transformed tokens of the given reader
+     */
+    public JSONReader apply(JSONReader reader) {
+        for (Function<JSONReader, ? extends JSONReader> stage : stages)
+            reader = stage.apply(reader);
+        return reader;
+    }
+
+    /**
+     * Writes the transformed document read from {@code in} to {@code out}, minified.
+     *
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public void transform(JSONReader in, Appendable out) throws IOException {
+        JSONTranscoder.minify(apply(in), out);
+    }
+
+    public String transform(String json) {
+        StringBuilder sb = new StringBuilder(json.length());
+        try {
+            transform(new DefaultJSONReader(json), sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.transform;
+
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONPointer;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A {@link JSONReader} which changes the tokens of another reader as they are read, without building a tree.
+ * <p>
+ * Subclasses override the hooks to rename or drop members, drop elements, replace values or add members,
+ * and can use {@link #matches(JSONPointer)} to check where in the document the hook was called.
+ * Commas are checked and dropped from the input, and inserted again between the values which are kept,
+ * so the output is well-formed exactly when the input is.
+ *
+ * @author Vaibhav Nargwani
+ * @see JSONTransform
+ */
+public abstract class TransformStage implements JSONReader {
+    private static final int BOXED = 0;
+    private static final int LONG = 1;
+    private static final int DOUBLE = 2;
+    private final JSONReader reader;
+    // the tokens which are ready to be read
+    private TokenType[] types = new TokenType[16];
+    private Object[] tokens = new Object[16];
+    private long[] numbers = new long[16];
+    private byte[] kinds = new byte[16];
+    private int head;
+    private int tail;
+    private TokenType currentType;
+    private Object currentToken;
+    private long currentNumber;
+    private int currentKind;
+    private long tokenCount;
+    // the containers which are open in the input
+    private boolean[] objects = new boolean[16];
+    private int[] counts = new int[16];
+    private int[] indices = new int[16];
+    private int depth;
+    // whether the innermost container in the input has just had a value or a comma, neither after it is opened
+    private boolean afterValue;
+    private boolean afterComma;
+    // the location of the value the current hook was called for
+    private String[] keys = new String[16];
+    private int pathLength;
+
+    protected TransformStage(JSONReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Called for every member, before its value is read.
+     *
+     * @param key the name of the member
+     * @return the name to write the member with, or null to drop the member
+     */
+    protected String key(String key) {
+        return key;
+    }
+
+    /**
+     * Called for every array element, before it is read.
+     *
+     * @param index the index of the element in the input
+     * @return whether to keep the element
+     */
+    protected boolean element(int index) {
+        return true;
+    }
+
+    /**
+     * Called for every value which is kept, when its first token has been read from {@code reader}.
+     * The reader must not be advanced.
+     *
+     * @param type   the type of the first token of the value
+     * @param reader the input
+     * @return the value to write instead, which skips the value in the input, or null to keep it
+     */
+    protected JSONValue replace(TokenType type, JSONReader reader) {
+        return null;
+    }
+
+    /**
+     * Called at the end of every object, where members can be added with {@link #addMember(String, JSONValue)}.
+     */
+    protected void endObject() {
+    }
+
+    /**
+     * Adds a member to the object which is ending, only valid in {@link #endObject()}.
+     */
+    protected final void addMember(String key, JSONValue value) {
+        int d = depth - 1;
+        if (counts[d]++ != 0)
+            enqueue(TokenType.COMMA, ',');
+        enqueue(TokenType.STRING, key);
+        enqueue(TokenType.COLON, ':');
+        enqueue(value);
+    }
+
+    /**
+     * Checks the location of the value the current hook was called for.
+     * A token {@code *} of the pattern matches any member name or array index.
+     *
+     * @param pattern the location, with {@code *} as a wildcard
+     * @return whether the location matches
+     */
+    protected final boolean matches(JSONPointer pattern) {
+        if (pattern.size() != pathLength)
+            return false;
+        for (int i = 0; i < pathLength; i++) {
+            String token = pattern.getToken(i);
+            if (token.equals("*"))
+                continue;
+            if (keys[i] != null ? !token.equals(keys[i]) : pattern.getIndex(i) != indices[i] - 1)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public TokenType getNextTokenType() {
+        while (head == tail) {
+            head = tail = 0;
+            fill();
+        }
+        currentType = types[head];
+        currentToken = tokens[head];
+        currentNumber = numbers[head];
+        currentKind = kinds[head];
+        tokens[head++] = null;
+        tokenCount++;
+        return currentType;
+    }
+
+    @Override
+    public Object getNextToken() {
+        getNextTokenType();
+        return getCurrentToken();
+    }
+
+    private void fill() {
+        TokenType type = reader.getNextTokenType();
+        if (depth == 0) {
+            if (type == TokenType.EOF) {
+                enqueue(type, null);
+                return;
+            }
+            pathLength = 0;
+            value(type);
+            return;
+        }
+        int d = depth - 1;
+        switch (type) {
+            case COMMA:
+                if (!afterValue)
+                    reader.error();
+                afterValue = false;
+                afterComma = true;
+                return;
+            case OBJECT_END:
+            case ARRAY_END:
+                if (objects[d] != (type == TokenType.OBJECT_END) || afterComma)
+                    reader.error();
+                afterValue = true;
+                if (objects[d]) {
+                    pathLength = d;
+                    endObject();
+                }
+                depth--;
+                enqueue(type, reader.getCurrentToken());
+                return;
+        }
+        if (afterValue)
+            reader.error();
+        // a container which is opened by the value resets these
+        afterValue = true;
+        afterComma = false;
+        if (objects[d]) {
+            if (type != TokenType.STRING)
+                reader.error();
+            String key = (String) reader.getCurrentToken();
+            keys[d] = key;
+            pathLength = d + 1;
+            String name = key(key);
+            reader.expectNextType(TokenType.COLON);
+            TokenType valueType = reader.getNextTokenType();
+            if (name == null) {
+                skip(valueType);
+                return;
+            }
+            if (counts[d]++ != 0)
+                enqueue(TokenType.COMMA, ',');
+            enqueue(TokenType.STRING, name);
+            enqueue(TokenType.COLON, ':');
+            pathLength = d + 1;
+            value(valueType);
+        } else {
+            keys[d] = null;
+            int index = indices[d]++;
+            pathLength = d + 1;
+            if (!element(index)) {
+                skip(type);
+                return;
+            }
+            if (counts[d]++ != 0)
+                enqueue(TokenType.COMMA, ',');
+            value(type);
+        }
+    }
+
+    private void value(TokenType type) {
+        JSONValue replacement = replace(type, reader);
+        if (replacement != null) {
+            skip(type);
+            enqueue(replacement);
+            return;
+        }
+        switch (type) {
+            case OBJECT_START:
+            case ARRAY_START:
+                if (depth == objects.length) {
+                    objects = Arrays.copyOf(objects, depth * 2);
+                    counts = Arrays.copyOf(counts, depth * 2);
+                    indices = Arrays.copyOf(indices, depth * 2);
+                    keys = Arrays.copyOf(keys, depth * 2);
+                }
+                objects[depth] = type == TokenType.OBJECT_START;
+                counts[depth] = 0;
+                indices[depth] = 0;
+                depth++;
+                afterValue = false;
+                afterComma = false;
+                enqueue(type, reader.getCurrentToken());
+                return;
+            case NUMBER:
+                int i = reserve();
+                types[i] = type;
+                if (reader.isCurrentLong()) {
+                    kinds[i] = LONG;
+                    numbers[i] = reader.getCurrentLong();
+                } else if (reader.isCurrentDouble()) {
+                    kinds[i] = DOUBLE;
+                    numbers[i] = Double.doubleToRawLongBits(reader.getCurrentDouble());
+                } else {
+                    tokens[i] = reader.getCurrentToken();
+                }
+                return;
+            case STRING:
+            case TRUE:
+            case FALSE:
+            case NULL:
+                enqueue(type, reader.getCurrentToken());
+                return;
+            default:
+                reader.error();
+        }
+    }
+
+    /**
+     * Skips the value which starts with the current token of the input, checking it as thoroughly as a kept one.
+     */
+    private void skip(TokenType type) {
+        if (type != TokenType.OBJECT_START && type != TokenType.ARRAY_START) {
+            if (!isScalar(type))
+                reader.error();
+            return;
+        }
+        boolean[] levels = new boolean[8];
+        levels[0] = type == TokenType.OBJECT_START;
+        int level = 1;
+        boolean value = false;
+        boolean comma = false;
+        while (level != 0) {
+            TokenType next = reader.getNextTokenType();
+            if (next == TokenType.COMMA) {
+                if (!value)
+                    reader.error();
+                value = false;
+                comma = true;
+                continue;
+            }
+            if (next == TokenType.OBJECT_END || next == TokenType.ARRAY_END) {
+                if (levels[--level] != (next == TokenType.OBJECT_END) || comma)
+                    reader.error();
+                value = true;
+                continue;
+            }
+            if (value)
+                reader.error();
+            if (levels[level - 1]) {
+                if (next != TokenType.STRING)
+                    reader.error();
+                reader.expectNextType(TokenType.COLON);
+                next = reader.getNextTokenType();
+            }
+            comma = false;
+            if (next == TokenType.OBJECT_START || next == TokenType.ARRAY_START) {
+                if (level == levels.length)
+                    levels = Arrays.copyOf(levels, level * 2);
+                levels[level++] = next == TokenType.OBJECT_START;
+            } else if (isScalar(next)) {
+                value = true;
+            } else {
+                reader.error();
+            }
+        }
+    }
+
+    private static boolean isScalar(TokenType type) {
+        switch (type) {
+            case STRING:
+            case NUMBER:
+            case TRUE:
+            case FALSE:
+            case NULL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void enqueue(JSONValue value) {
+        switch (value.getType()) {
+            case OBJECT:
+                enqueue(TokenType.OBJECT_START, '{');
+                boolean first = true;
+                for (Map.Entry<String, JSONValue> entry : value.toObject().toMap().entrySet()) {
+                    if (!first)
+                        enqueue(TokenType.COMMA, ',');
+                    first = false;
+                    enqueue(TokenType.STRING, entry.getKey());
+                    enqueue(TokenType.COLON, ':');
+                    enqueue(entry.getValue());
+                }
+                enqueue(TokenType.OBJECT_END, '}');
+                break;
+            case ARRAY:
+                enqueue(TokenType.ARRAY_START, '[');
+                for (int i = 0, size = value.toArray().size(); i < size; i++) {
+                    if (i != 0)
+                        enqueue(TokenType.COMMA, ',');
+                    enqueue(value.toArray().get(i));
+                }
+                enqueue(TokenType.ARRAY_END, ']');
+                break;
+            case STRING:
+                enqueue(TokenType.STRING, value.toString());
+                break;
+            case NUMBER:
+                enqueue(TokenType.NUMBER, value.toNumber());
+                break;
+            case BOOLEAN:
+                enqueue(value.toBoolean() ? TokenType.TRUE : TokenType.FALSE, value.toBoolean());
+                break;
+            default:
+                enqueue(TokenType.NULL, null);
+        }
+    }
+
+    private void enqueue(TokenType type, Object token) {
+        int i = reserve();
+        types[i] = type;
+        tokens[i] = token;
+    }
+
+    private int reserve() {
+        if (tail == types.length) {
+            int capacity = tail * 2;
+            types = Arrays.copyOf(types, capacity);
+            tokens = Arrays.copyOf(tokens, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+        }
+        kinds[tail] = BOXED;
+        return tail++;
+    }
+
+    @Override
+    public int getPosition() {
+        return reader.getPosition();
+    }
+
+    @Override
+    public TokenType getCurrentTokenType() {
+        return currentType;
+    }
+
+    @Override
+    public Object getCurrentToken() {
+        if (currentKind == LONG)
+            return currentNumber;
+        if (currentKind == DOUBLE)
+            return Double.longBitsToDouble(currentNumber);
+        return currentToken;
+    }
+
+    @Override
+    public boolean isCurrentLong() {
+        return currentKind == LONG || currentKind == BOXED && currentToken instanceof Long;
+    }
+
+    @Override
+    public boolean isCurrentDouble() {
+        return currentKind == DOUBLE || currentKind == BOXED && currentToken instanceof Double;
+    }
+
+    @Override
+    public long getCurrentLong() {
+        return currentKind == LONG ? currentNumber : JSONReader.super.getCurrentLong();
+    }
+
+    @Override
+    public double getCurrentDouble() {
+        return currentKind == DOUBLE ? Double.longBitsToDouble(currentNumber) : JSONReader.super.getCurrentDouble();
+    }
+
+    @Override
+    public long getTokenCount() {
+        return tokenCount;
+    }
+
+    @Override
+    public long getCharCount() {
+        return reader.getCharCount();
+    }
+
+    @Override
+    public void error() throws ParseException {
+        reader.error();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
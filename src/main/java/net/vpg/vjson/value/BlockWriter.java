@@ -0,0 +1,139 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.value;
+
+import net.vpg.vjson.io.Compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Streams the JSON text of a tree to an {@link OutputStream} as UTF-8, in blocks of about
+ * {@link Compression#BLOCK_SIZE} characters.
+ * <p>
+ * Plain objects and arrays are walked with an explicit stack and serialized a member or element at a time,
+ * so only the current block and the largest scalar are held in memory, never the whole text.
+ * Other containers, such as the concurrent ones, are serialized as a whole to keep their snapshot consistent.
+ */
+final class BlockWriter {
+    private final OutputStream out;
+    private final StringBuilder sb = new StringBuilder(Compression.BLOCK_SIZE + 256);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(Compression.BLOCK_SIZE);
+    private long chars;
+
+    BlockWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return the number of characters written
+     */
+    long write(JSONValue value) throws IOException {
+        Deque<Frame> stack = new ArrayDeque<>();
+        open(value, stack);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (!frame.hasNext()) {
+                stack.pop();
+                sb.append(frame.members == null ? ']' : '}');
+            } else if (frame.members != null) {
+                Map.Entry<String, JSONValue> member = frame.members.next();
+                if (frame.index++ != 0)
+                    sb.append(',');
+                sb.append('"');
+                JSONString.escape(member.getKey(), sb);
+                sb.append("\":");
+                open(member.getValue(), stack);
+            } else if (frame.array.isPrimitive()) {
+                // numbers need no walking, append a block worth of them at once
+                int from = frame.index;
+                frame.index = Math.min(frame.array.size(), from + 1024);
+                if (from != 0)
+                    sb.append(',');
+                frame.array.deserialize(sb, from, frame.index);
+            } else {
+                if (frame.index != 0)
+                    sb.append(',');
+                open(frame.array.get(frame.index++), stack);
+            }
+            if (sb.length() >= Compression.BLOCK_SIZE)
+                encode(false);
+        }
+        encode(true);
+        return chars;
+    }
+
+    private void open(JSONValue value, Deque<Frame> stack) {
+        Class<?> type = value.getClass();
+        if (type == JSONObject.class) {
+            sb.append('{');
+            stack.push(new Frame(value.toObject().toMap().entrySet().iterator(), null));
+        } else if (type == JSONArray.class) {
+            sb.append('[');
+            stack.push(new Frame(null, value.toArray()));
+        } else {
+            value.deserialize(sb);
+        }
+    }
+
+    /**
+     * Encodes and writes the builder, keeping a trailing high surrogate until its pair has been appended.
+     */
+    private void encode(boolean endOfInput) throws IOException {
+        CharBuffer in = CharBuffer.wrap(sb);
+        while (encoder.encode(in, bytes, endOfInput).isOverflow())
+            drain();
+        if (endOfInput) {
+            while (encoder.flush(bytes).isOverflow())
+                drain();
+        }
+        drain();
+        chars += in.position();
+        sb.delete(0, in.position());
+    }
+
+    private void drain() throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+
+    private static class Frame {
+        private final Iterator<Map.Entry<String, JSONValue>> members;
+        private final JSONArray array;
+        private int index;
+
+        private Frame(Iterator<Map.Entry<String, JSONValue>> members, JSONArray array) {
+            this.members = members;
+            this.array = array;
+        }
+
+        private boolean hasNext() {
+            return members != null ? members.hasNext() : index < array.size();
+        }
+    }
+}
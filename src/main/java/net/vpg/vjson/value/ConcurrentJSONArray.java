@@ -0,0 +1,359 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.value;
+
+import net.vpg.vjson.pretty.PrettyPrinter;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * A {@link JSONArray} that many threads can read and update at once.
+ * <p>
+ * Every update is atomic and reads do not block each other. {@link #toList()}, the streams,
+ * serialization and {@link #snapshot()} work on a copy of the elements taken at a single point in time,
+ * so writers are only held back while the elements are copied.
+ * Unlike the members of a {@link ConcurrentJSONObject}, the elements share one backing array,
+ * so updates of different elements exclude each other.
+ * Nested values are treated like in {@link ConcurrentJSONObject}.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class ConcurrentJSONArray extends JSONArray {
+    private final StampedLock lock = new StampedLock();
+    /**
+     * Incremented by every update under the write lock, so that {@link #update} can tell whether it raced another one.
+     */
+    private long version;
+
+    public static ConcurrentJSONArray of(List<?> list) {
+        ConcurrentJSONArray array = new ConcurrentJSONArray();
+        array.addAll(list);
+        return array;
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return super.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isPrimitive() {
+        long stamp = lock.readLock();
+        try {
+            return super.isPrimitive();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public JSONValue get(int index) {
+        long stamp = lock.readLock();
+        try {
+            return super.get(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public JSONValue lookup(Integer index) {
+        long stamp = lock.readLock();
+        try {
+            return super.lookup(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long getLong(int index) {
+        long stamp = lock.readLock();
+        try {
+            return super.getLong(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public double getDouble(int index) {
+        long stamp = lock.readLock();
+        try {
+            return super.getDouble(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public ConcurrentJSONArray add(int index, Object value) {
+        JSONValue val = JSONValue.of(value);
+        long stamp = lock.writeLock();
+        try {
+            super.add(index, val);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONArray add(Object value) {
+        JSONValue val = JSONValue.of(value);
+        long stamp = lock.writeLock();
+        try {
+            super.add(val);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONArray addLong(long value) {
+        long stamp = lock.writeLock();
+        try {
+            super.addLong(value);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONArray addDouble(double value) {
+        long stamp = lock.writeLock();
+        try {
+            super.addDouble(value);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONArray set(int index, Object value) {
+        JSONValue val = JSONValue.of(value);
+        long stamp = lock.writeLock();
+        try {
+            super.set(index, val);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    /**
+     * Atomically replaces an element with the result of the given function.
+     * The function runs without holding the lock, so it may read or serialize this array.
+     * It is called again with the new element if the array is updated in the meantime,
+     * so it should have no side effects, and must not update this array itself.
+     *
+     * @return the new value
+     */
+    public JSONValue update(int index, Function<JSONValue, ?> function) {
+        while (true) {
+            JSONValue present;
+            long seen;
+            long stamp = lock.readLock();
+            try {
+                present = super.get(index);
+                seen = version;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            JSONValue value = JSONValue.of(function.apply(present));
+            stamp = lock.writeLock();
+            try {
+                if (version == seen) {
+                    super.set(index, value);
+                    version++;
+                    return value;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Adds all values as one atomic update.
+     */
+    @Override
+    public ConcurrentJSONArray addAll(Collection<?> values) {
+        Object[] array = values.toArray();
+        for (int i = 0; i < array.length; i++)
+            array[i] = JSONValue.of(array[i]);
+        long stamp = lock.writeLock();
+        try {
+            for (Object value : array)
+                super.add(value);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONArray addAll(JSONArray array) {
+        return addAll(array.toList());
+    }
+
+    @Override
+    public ConcurrentJSONArray remove(int index) {
+        long stamp = lock.writeLock();
+        try {
+            super.remove(index);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    /**
+     * Copies the elements as they are at a single point in time.
+     */
+    @Override
+    JSONArray copy() {
+        long stamp = lock.readLock();
+        try {
+            return super.copy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return an immutable copy of this array as it is at a single point in time
+     */
+    public JSONArray snapshot() {
+        return copy().toImmutable();
+    }
+
+    /**
+     * @return a mutable copy of the elements, as this array cannot be updated through a list view
+     */
+    @Override
+    public List<JSONValue> toList() {
+        return copy().toList();
+    }
+
+    @Override
+    public <T> List<T> toList(Function<JSONValue, T> converter) {
+        return copy().toList(converter);
+    }
+
+    /**
+     * @return a view of a copy of the elements, see {@link #toList()}
+     */
+    @Override
+    public List<Object> asRawList() {
+        return copy().asRawList();
+    }
+
+    @Override
+    public Stream<JSONValue> stream() {
+        return copy().stream();
+    }
+
+    @Override
+    public long[] toLongArray() {
+        return copy().toLongArray();
+    }
+
+    @Override
+    public double[] toDoubleArray() {
+        return copy().toDoubleArray();
+    }
+
+    @Override
+    public LongStream longStream() {
+        return copy().longStream();
+    }
+
+    @Override
+    public DoubleStream doubleStream() {
+        return copy().doubleStream();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        copy().deserialize(sb);
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb, int from, int to) {
+        long stamp = lock.readLock();
+        try {
+            super.deserialize(sb, from, to);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Object getRaw() {
+        return copy().getRaw();
+    }
+
+    /**
+     * A view of a copy of the elements, so that {@link #equals(Object)} and {@link #hashCode()} see a single point in time.
+     */
+    @Override
+    Object rawView() {
+        return copy().rawView();
+    }
+
+    @Override
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        return copy().shallowRetainedBytes(children);
+    }
+
+    @Override
+    public JSONArray toImmutable() {
+        return snapshot();
+    }
+
+    @Override
+    public void toPrettyString(PrettyPrinter printer) {
+        copy().toPrettyString(printer);
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.value;
+
+import net.vpg.vjson.pretty.PrettyPrinter;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link JSONObject} that many threads can read and update at once, such as a live status document.
+ * <p>
+ * The members are kept in a {@link ConcurrentHashMap}, so writers to different members do not block each other,
+ * and {@link #compute}, {@link #merge} and the other compound operations are atomic per member.
+ * Serialization and {@link #snapshot()} see the members of this object as they were at a single point in time.
+ * To get that point, a snapshot takes every lock stripe, so it is a global lock for the time the members are copied:
+ * it holds back all writers, and waits for the ones in progress, though not while the copy is serialized.
+ * Striping only keeps writers of different members from contending with each other, not with snapshots,
+ * so objects which are snapshot often while being updated heavily should be kept small.
+ * Nested {@code ConcurrentJSONObject}s and {@link ConcurrentJSONArray}s take their own snapshot when they are reached,
+ * any other nested container must not be modified concurrently.
+ * <p>
+ * The functions passed to the compound operations run without holding any lock, so they may read or serialize
+ * this object and update its other members. Like those of {@link ConcurrentMap}'s default methods, they are
+ * called again when the same member is updated in the meantime, so they should have no side effects
+ * and must not update that member themselves.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class ConcurrentJSONObject extends JSONObject {
+    /**
+     * The number of snapshot locks of each object, the smallest power of two at least the number of processors.
+     */
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    private final ConcurrentHashMap<String, JSONValue> map;
+    /**
+     * Writers hold the stripe of their key in read mode, so that they only exclude snapshots and not each other,
+     * and writers of different stripes do not even touch the same lock. Snapshots hold every stripe in write mode.
+     */
+    private final StampedLock[] stripes = new StampedLock[STRIPES];
+
+    public ConcurrentJSONObject() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    private ConcurrentJSONObject(ConcurrentHashMap<String, JSONValue> map) {
+        super(map, false);
+        this.map = map;
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new StampedLock();
+    }
+
+    public static ConcurrentJSONObject of(Map<?, ?> map) {
+        ConcurrentJSONObject object = new ConcurrentJSONObject();
+        object.putAll(map);
+        return object;
+    }
+
+    private StampedLock stripe(String key) {
+        int h = key.hashCode();
+        return stripes[(h ^ h >>> 16) & STRIPES - 1];
+    }
+
+    @Override
+    public ConcurrentJSONObject put(String key, Object val) {
+        JSONValue value = JSONValue.of(val);
+        StampedLock stripe = stripe(key);
+        long stamp = stripe.readLock();
+        try {
+            map.put(key, value);
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONObject putAll(Map<?, ?> map) {
+        super.putAll(map);
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONObject putAll(JSONObject object) {
+        object.toMap().forEach(this::put);
+        return this;
+    }
+
+    @Override
+    public ConcurrentJSONObject remove(String key) {
+        StampedLock stripe = stripe(key);
+        long stamp = stripe.readLock();
+        try {
+            map.remove(key);
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+        return this;
+    }
+
+    /**
+     * Puts the value unless the key is already present.
+     *
+     * @return the present value, or null if the value was put
+     */
+    public JSONValue putIfAbsent(String key, Object val) {
+        JSONValue value = JSONValue.of(val);
+        StampedLock stripe = stripe(key);
+        long stamp = stripe.readLock();
+        try {
+            return map.putIfAbsent(key, value);
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Replaces the value of a member if it is still the given instance.
+     *
+     * @param expected the value read before, or null if the member was absent
+     * @param value    the new value, or null to remove the member
+     * @return whether the member still had the expected value
+     */
+    private boolean replace(String key, JSONValue expected, JSONValue value) {
+        StampedLock stripe = stripe(key);
+        long stamp = stripe.readLock();
+        try {
+            if (expected == null)
+                return value == null || map.putIfAbsent(key, value) == null;
+            boolean[] replaced = new boolean[1];
+            map.computeIfPresent(key, (k, present) -> {
+                if (present != expected)
+                    return present;
+                replaced[0] = true;
+                return value;
+            });
+            return replaced[0];
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Atomically replaces the value of a member, like {@link Map#compute}.
+     * The function receives null if the member is absent, and the member is removed if it returns null.
+     *
+     * @return the new value, or null if there is none
+     */
+    public JSONValue compute(String key, BiFunction<String, JSONValue, ?> function) {
+        while (true) {
+            JSONValue present = map.get(key);
+            JSONValue value = wrap(function.apply(key, present));
+            if (replace(key, present, value))
+                return value;
+        }
+    }
+
+    /**
+     * Atomically adds a member if it is absent, like {@link Map#computeIfAbsent}.
+     *
+     * @return the present or added value, or null if there is none
+     */
+    public JSONValue computeIfAbsent(String key, Function<String, ?> function) {
+        while (true) {
+            JSONValue present = map.get(key);
+            if (present != null)
+                return present;
+            JSONValue value = wrap(function.apply(key));
+            if (value == null || replace(key, null, value))
+                return value;
+        }
+    }
+
+    /**
+     * Atomically puts the value, or combines it with the present value, like {@link Map#merge}.
+     *
+     * @return the new value, or null if the function removed the member
+     */
+    public JSONValue merge(String key, Object val, BiFunction<JSONValue, JSONValue, ?> function) {
+        JSONValue given = JSONValue.of(val);
+        while (true) {
+            JSONValue present = map.get(key);
+            JSONValue value = present == null ? given : wrap(function.apply(present, given));
+            if (replace(key, present, value))
+                return value;
+        }
+    }
+
+    /**
+     * Atomically adds to a numeric member, which is treated as 0 if it is absent or not a number.
+     *
+     * @return the new value
+     */
+    public long increment(String key, long delta) {
+        return compute(key, (k, v) -> v != null && v.getType() == Type.NUMBER ? v.toLong() + delta : delta).toLong();
+    }
+
+    private static JSONValue wrap(Object value) {
+        return value == null ? null : JSONValue.of(value);
+    }
+
+    /**
+     * @return a read-only view of the members, which reflects concurrent updates
+     */
+    @Override
+    public Map<String, JSONValue> toMap() {
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Copies the members as they are at a single point in time.
+     */
+    private JSONObject copy() {
+        Map<String, JSONValue> copy;
+        long[] stamps = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stamps[i] = stripes[i].writeLock();
+        try {
+            copy = new HashMap<>(map);
+        } finally {
+            for (int i = STRIPES - 1; i >= 0; i--)
+                stripes[i].unlockWrite(stamps[i]);
+        }
+        return new JSONObject(copy, false);
+    }
+
+    /**
+     * @return an immutable copy of this object as it is at a single point in time
+     */
+    public JSONObject snapshot() {
+        return copy().toImmutable();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        copy().deserialize(sb);
+    }
+
+    @Override
+    public Object getRaw() {
+        return copy().getRaw();
+    }
+
+    @Override
+    public JSONObject toImmutable() {
+        return snapshot();
+    }
+
+    @Override
+    public void toPrettyString(PrettyPrinter printer) {
+        copy().toPrettyString(printer);
+    }
+}
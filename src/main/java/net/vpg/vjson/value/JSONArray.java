@@ -20,31 +20,55 @@ import net.vpg.vjson.parser.ParseException;
 import net.vpg.vjson.pretty.PrettyPrintConfig;
 import net.vpg.vjson.pretty.PrettyPrinter;
 import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.writer.NumberWriter;
 
 import java.io.*;
 import java.net.URL;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
+import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 public class JSONArray extends JSONValue implements SerializableArray, JSONContainer<Integer> {
+    private final ValueList storage;
     private final List<JSONValue> list;
+    private final boolean immutable;
 
     public JSONArray() {
-        this.list = new ArrayList<>();
+        this(new ValueList(), false);
     }
 
-    private JSONArray(List<?> list) {
-        this.list = list.stream().map(JSONValue::of).collect(Collectors.toList());
+    private JSONArray(ValueList storage, boolean immutable) {
+        this.storage = storage;
+        this.list = immutable ? Collections.unmodifiableList(storage) : storage;
+        this.immutable = immutable;
     }
 
     public static JSONArray of(List<?> list) {
-        return new JSONArray(list);
+        return new JSONArray().addAll(list);
+    }
+
+    /**
+     * Creates an array of the given numbers, which is stored as a {@code long[]}.
+     */
+    public static JSONArray ofLongs(long... values) {
+        JSONArray array = new JSONArray();
+        for (long value : values)
+            array.storage.addLong(value);
+        return array;
+    }
+
+    /**
+     * Creates an array of the given numbers, which is stored as a {@code double[]}.
+     */
+    public static JSONArray ofDoubles(double... values) {
+        JSONArray array = new JSONArray();
+        for (double value : values)
+            array.storage.addDouble(value);
+        return array;
     }
 
     public static JSONArray parse(Reader in) throws ParseException {
@@ -88,7 +112,16 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
     }
 
     public JSONValue get(Integer index) {
-        return JSONValue.of(list.get(index));
+        return get(index.intValue());
+    }
+
+    public JSONValue get(int index) {
+        return JSONValue.of(storage.get(index));
+    }
+
+    @Override
+    public JSONValue lookup(Integer index) {
+        return index >= 0 && index < storage.size() ? storage.get(index) : null;
     }
 
     public JSONArray add(int index, Object value) {
@@ -101,13 +134,36 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
         return this;
     }
 
+    /**
+     * Adds a number without boxing it, as long as this array holds only longs.
+     */
+    public JSONArray addLong(long value) {
+        checkMutable();
+        storage.addLong(value);
+        return this;
+    }
+
+    /**
+     * Adds a number without boxing it, as long as this array holds only doubles.
+     */
+    public JSONArray addDouble(double value) {
+        checkMutable();
+        storage.addDouble(value);
+        return this;
+    }
+
+    public JSONArray set(int index, Object value) {
+        list.set(index, JSONValue.of(value));
+        return this;
+    }
+
     public JSONArray addAll(Collection<?> values) {
         values.forEach(this::add);
         return this;
     }
 
     public JSONArray addAll(JSONArray array) {
-        list.addAll(array.list);
+        list.addAll(array.toList());
         return this;
     }
 
@@ -120,6 +176,79 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
         return list;
     }
 
+    /**
+     * Returns whether the elements are stored as a primitive {@code long[]} or {@code double[]},
+     * which is the case while every element is a long, or every element is a double.
+     */
+    public boolean isPrimitive() {
+        return storage.mode == ValueList.LONGS || storage.mode == ValueList.DOUBLES;
+    }
+
+    public long getLong(int index) {
+        return storage.getLong(index);
+    }
+
+    public double getDouble(int index) {
+        return storage.getDouble(index);
+    }
+
+    /**
+     * @return a copy of the elements as longs
+     * @throws UnsupportedOperationException if an element is not a number
+     */
+    public long[] toLongArray() {
+        return storage.toLongArray();
+    }
+
+    /**
+     * @return a copy of the elements as doubles
+     * @throws UnsupportedOperationException if an element is not a number
+     */
+    public double[] toDoubleArray() {
+        return storage.toDoubleArray();
+    }
+
+    public LongStream longStream() {
+        return storage.longStream();
+    }
+
+    public DoubleStream doubleStream() {
+        return storage.doubleStream();
+    }
+
+    /**
+     * Returns a read-only view of this array as a plain list, which unwraps elements when they are read:
+     * objects and arrays become views themselves, and other values become what {@link JSONValue#getRaw()} returns.
+     * Nothing is copied, and later changes to this array are visible through the view.
+     * Use {@link #getRaw()} for a copy.
+     *
+     * @return the view
+     */
+    public List<Object> asRawList() {
+        return new RawList(storage);
+    }
+
+    /**
+     * Returns a read-only view of this array which converts elements when they are read.
+     * The converter is called on every read, use {@link #toList(Function)} to convert every element once.
+     *
+     * @param converter the conversion of an element
+     * @return the view
+     */
+    public <T> List<T> asList(Function<JSONValue, T> converter) {
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                return converter.apply(JSONArray.this.get(index));
+            }
+
+            @Override
+            public int size() {
+                return JSONArray.this.size();
+            }
+        };
+    }
+
     public <T> List<T> toList(Function<JSONValue, T> converter) {
         return list.stream()
             .map(converter)
@@ -132,7 +261,39 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
 
     @Override
     public String deserialize() {
-        return list.stream().map(JSONValue::deserialize).collect(Collectors.joining(",", "[", "]"));
+        return deserializeContainer();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        sb.append('[');
+        deserialize(sb, 0, storage.size());
+        sb.append(']');
+    }
+
+    /**
+     * Appends the elements from {@code from} (inclusive) to {@code to} (exclusive), separated by commas
+     * but without the enclosing brackets, so that parts of a large array can be serialized independently.
+     *
+     * @param sb   the builder to append to
+     * @param from the index of the first element
+     * @param to   the index after the last element
+     */
+    public void deserialize(StringBuilder sb, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (i != from)
+                sb.append(',');
+            switch (storage.mode) {
+                case ValueList.LONGS:
+                    sb.append(storage.longs[i]);
+                    break;
+                case ValueList.DOUBLES:
+                    NumberWriter.append(sb, storage.doubles[i]);
+                    break;
+                default:
+                    storage.values[i].deserialize(sb);
+            }
+        }
     }
 
     @Override
@@ -140,9 +301,64 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
         return Type.ARRAY;
     }
 
+    /**
+     * @return a deep copy of this array as an {@link ArrayList}
+     */
     @Override
     public Object getRaw() {
-        return list.stream().map(JSONValue::getRaw).collect(Collectors.toList());
+        List<Object> raw = new ArrayList<>(storage.size());
+        for (JSONValue value : storage)
+            raw.add(value.getRaw());
+        return raw;
+    }
+
+    @Override
+    Object rawView() {
+        return asRawList();
+    }
+
+    @Override
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        // the array and its list, then the backing array at its full capacity
+        long bytes = 56;
+        switch (storage.mode) {
+            case ValueList.LONGS:
+                return bytes + 16 + 8L * storage.longs.length;
+            case ValueList.DOUBLES:
+                return bytes + 16 + 8L * storage.doubles.length;
+            case ValueList.VALUES:
+                bytes += 16 + 4L * storage.values.length;
+                for (int i = 0; i < storage.size(); i++)
+                    children.push(storage.values[i]);
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    @Override
+    public JSONArray toImmutable() {
+        if (immutable)
+            return this;
+        ValueList copy = new ValueList(storage);
+        if (copy.mode == ValueList.VALUES)
+            copy.replaceAll(JSONValue::toImmutable);
+        return new JSONArray(copy, true);
+    }
+
+    /**
+     * @return a mutable copy which shares the elements with this array
+     */
+    JSONArray copy() {
+        return new JSONArray(new ValueList(storage), false);
+    }
+
+    private void checkMutable() {
+        if (immutable)
+            throw new UnsupportedOperationException("This JSONArray is immutable");
     }
 
     @Override
@@ -182,6 +398,32 @@ public class JSONArray extends JSONValue implements SerializableArray, JSONConta
             printer.decrementIndentLevel();
             printer.newLineAndIndent();
         }
-        printer.print("}");
+        printer.print("]");
+    }
+
+    private static class RawList extends AbstractList<Object> implements RandomAccess {
+        private final ValueList storage;
+
+        private RawList(ValueList storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public Object get(int index) {
+            // primitive elements are boxed without wrapping them in a JSONNumber first
+            switch (storage.mode) {
+                case ValueList.LONGS:
+                    return storage.getLong(index);
+                case ValueList.DOUBLES:
+                    return storage.getDouble(index);
+                default:
+                    return storage.get(index).rawView();
+            }
+        }
+
+        @Override
+        public int size() {
+            return storage.size();
+        }
     }
 }
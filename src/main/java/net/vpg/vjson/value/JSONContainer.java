@@ -9,6 +9,14 @@ import java.util.function.Function;
 public interface JSONContainer<T> {
     JSONValue get(T t);
 
+    /**
+     * Looks up a child without copying or materializing anything, and unlike {@link #get(Object)}
+     * tells a missing child apart from a null one.
+     *
+     * @return the child at the given key or index, or null if there is none
+     */
+    JSONValue lookup(T t);
+
     default boolean isNull(T index) {
         return get(index).isNull();
     }
@@ -18,7 +26,8 @@ public interface JSONContainer<T> {
     }
 
     default Optional<JSONValue> opt(T t) {
-        return Optional.of(get(t)).filter(o -> !o.isNull());
+        JSONValue val = get(t);
+        return val.isNull() ? Optional.empty() : Optional.of(val);
     }
 
     default <V> V get(T t, V def, Function<JSONValue, V> convertor) {
@@ -55,11 +64,13 @@ public interface JSONContainer<T> {
     }
 
     default int getInt(T t, int def) {
-        return getNumber(t, def).intValue();
+        JSONValue val = get(t);
+        return val.isNull() ? def : val.toInt();
     }
 
     default OptionalInt optInt(T t) {
-        return opt(t).stream().mapToInt(JSONValue::toInt).findFirst();
+        JSONValue val = get(t);
+        return val.isNull() ? OptionalInt.empty() : OptionalInt.of(val.toInt());
     }
 
     default long getLong(T t) {
@@ -67,23 +78,27 @@ public interface JSONContainer<T> {
     }
 
     default long getLong(T t, long def) {
-        return getNumber(t, def).longValue();
+        JSONValue val = get(t);
+        return val.isNull() ? def : val.toLong();
     }
 
     default OptionalLong optLong(T t) {
-        return opt(t).stream().mapToLong(JSONValue::toLong).findFirst();
+        JSONValue val = get(t);
+        return val.isNull() ? OptionalLong.empty() : OptionalLong.of(val.toLong());
     }
 
     default double getDouble(T t) {
-        return get(t).toLong();
+        return get(t).toDouble();
     }
 
-    default double getDouble(T t, long def) {
-        return getNumber(t, def).doubleValue();
+    default double getDouble(T t, double def) {
+        JSONValue val = get(t);
+        return val.isNull() ? def : val.toDouble();
     }
 
     default OptionalDouble optDouble(T t) {
-        return opt(t).stream().mapToDouble(JSONValue::toDouble).findFirst();
+        JSONValue val = get(t);
+        return val.isNull() ? OptionalDouble.empty() : OptionalDouble.of(val.toDouble());
     }
 
     default String getString(T t) {
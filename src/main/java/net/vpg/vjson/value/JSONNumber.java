@@ -1,5 +1,9 @@
 package net.vpg.vjson.value;
 
+import net.vpg.vjson.writer.NumberWriter;
+
+import java.util.Deque;
+
 public final class JSONNumber extends JSONValue {
     private final Number value;
 
@@ -31,8 +35,21 @@ public final class JSONNumber extends JSONValue {
         return value;
     }
 
+    @Override
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        // the wrapper and the boxed number
+        return 32;
+    }
+
     @Override
     public String deserialize() {
-        return value.toString();
+        StringBuilder sb = new StringBuilder(24);
+        deserialize(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        NumberWriter.append(sb, value);
     }
 }
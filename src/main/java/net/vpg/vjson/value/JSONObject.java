@@ -23,27 +23,25 @@ import net.vpg.vjson.reader.JSONReader;
 
 import java.io.*;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collector;
-import java.util.stream.Collectors;
 
 public class JSONObject extends JSONValue implements SerializableObject, JSONContainer<String> {
     private final Map<String, JSONValue> map;
+    private final boolean immutable;
 
     public JSONObject() {
-        map = new HashMap<>();
+        this(new HashMap<>(), false);
     }
 
-    private JSONObject(Map<?, ?> map) {
-        this();
-        putAll(map);
+    JSONObject(Map<String, JSONValue> map, boolean immutable) {
+        this.map = map;
+        this.immutable = immutable;
     }
 
     public static JSONObject of(Map<?, ?> map) {
-        return new JSONObject(map);
+        return new JSONObject().putAll(map);
     }
 
     public static JSONObject parse(Reader in) throws ParseException {
@@ -92,6 +90,11 @@ public class JSONObject extends JSONValue implements SerializableObject, JSONCon
         return JSONValue.of(map.get(key));
     }
 
+    @Override
+    public JSONValue lookup(String key) {
+        return map.get(key);
+    }
+
     public JSONObject put(String key, Object val) {
         map.put(key, JSONValue.of(val));
         return this;
@@ -116,16 +119,41 @@ public class JSONObject extends JSONValue implements SerializableObject, JSONCon
         return map;
     }
 
+    /**
+     * Returns a read-only view of this object as a plain map, which unwraps values when they are read:
+     * objects and arrays become views themselves, and other values become what {@link JSONValue#getRaw()} returns.
+     * Nothing is copied, and later changes to this object are visible through the view.
+     * Use {@link #getRaw()} for a copy.
+     *
+     * @return the view
+     */
+    public Map<String, Object> asRawMap() {
+        return new RawMap(map);
+    }
+
     public <T> T map(Function<JSONObject, T> converter) {
         return converter.apply(this);
     }
 
     @Override
     public String deserialize() {
-        return map.entrySet()
-            .stream()
-            .map(e -> "\"" + JSONString.escape(e.getKey()) + "\":" + e.getValue().deserialize())
-            .collect(Collectors.joining(",", "{", "}"));
+        return deserializeContainer();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        sb.append('{');
+        boolean first = true;
+        for (Map.Entry<String, JSONValue> entry : map.entrySet()) {
+            if (!first)
+                sb.append(',');
+            first = false;
+            sb.append('"');
+            JSONString.escape(entry.getKey(), sb);
+            sb.append("\":");
+            entry.getValue().deserialize(sb);
+        }
+        sb.append('}');
     }
 
     @Override
@@ -133,9 +161,44 @@ public class JSONObject extends JSONValue implements SerializableObject, JSONCon
         return Type.OBJECT;
     }
 
+    /**
+     * @return a deep copy of this object as a {@link HashMap}
+     */
     @Override
     public Object getRaw() {
-        return map.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getRaw()));
+        Map<String, Object> raw = new HashMap<>(Math.max((int) (map.size() / .75f) + 1, 16));
+        map.forEach((key, value) -> raw.put(key, value.getRaw()));
+        return raw;
+    }
+
+    @Override
+    Object rawView() {
+        return asRawMap();
+    }
+
+    @Override
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        // the object, its map and table, and for every member a map entry and the key
+        long bytes = 64;
+        for (Map.Entry<String, JSONValue> e : toMap().entrySet()) {
+            bytes += 40 + 40 + e.getKey().length();
+            children.push(e.getValue());
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    @Override
+    public JSONObject toImmutable() {
+        if (immutable)
+            return this;
+        Map<String, JSONValue> copy = new HashMap<>(Math.max((int) (map.size() / .75f) + 1, 16));
+        map.forEach((key, value) -> copy.put(key, value.toImmutable()));
+        return new JSONObject(Collections.unmodifiableMap(copy), true);
     }
 
     @Override
@@ -155,7 +218,7 @@ public class JSONObject extends JSONValue implements SerializableObject, JSONCon
         Iterator<Map.Entry<String, JSONValue>> iterator = map.entrySet().iterator();
         while (iterator.hasNext()) {
             Map.Entry<String, JSONValue> next = iterator.next();
-            printer.print("\"" + next.getKey() + "\"");
+            printer.print("\"" + JSONString.escape(next.getKey()) + "\"");
             if (config.isSpaceBeforeColon())
                 printer.space();
             printer.print(":");
@@ -179,4 +242,55 @@ public class JSONObject extends JSONValue implements SerializableObject, JSONCon
             printer.space();
         printer.print("}");
     }
+
+    private static class RawMap extends AbstractMap<String, Object> {
+        private final Map<String, JSONValue> map;
+
+        private RawMap(Map<String, JSONValue> map) {
+            this.map = map;
+        }
+
+        @Override
+        public Object get(Object key) {
+            JSONValue value = map.get(key);
+            return value == null ? null : value.rawView();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    Iterator<Entry<String, JSONValue>> iterator = map.entrySet().iterator();
+                    return new Iterator<>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            Entry<String, JSONValue> next = iterator.next();
+                            return new SimpleImmutableEntry<>(next.getKey(), next.getValue().rawView());
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+            };
+        }
+    }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled JSON Pointer (RFC 6901), such as {@code /a/b/3/c}.
+ * The pointer is split and unescaped once, and array indices are parsed up front, so resolving it only walks
+ * the document. The typed getters return their default instead of throwing when the value is absent,
+ * {@code null} or of another type, and do not allocate.
+ * Compiled pointers are immutable and can be shared between threads.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONPointer {
+    private static final JSONPointer ROOT = new JSONPointer("", new String[0], new int[0]);
+    private final String pointer;
+    private final String[] tokens;
+    /**
+     * The array index of each token, or -1 if the token is not a valid index.
+     */
+    private final int[] indices;
+
+    private JSONPointer(String pointer, String[] tokens, int[] indices) {
+        this.pointer = pointer;
+        this.tokens = tokens;
+        this.indices = indices;
+    }
+
+    /**
+     * Compiles the given pointer.
+     *
+     * @param pointer the pointer, which is either empty or starts with {@code /}
+     * @return the compiled pointer
+     * @throws IllegalArgumentException if the pointer is malformed
+     */
+    public static JSONPointer compile(String pointer) {
+        if (pointer.isEmpty())
+            return ROOT;
+        if (pointer.charAt(0) != '/')
+            throw new IllegalArgumentException("JSON pointer must start with '/': " + pointer);
+        List<String> tokens = new ArrayList<>();
+        int start = 1;
+        while (true) {
+            int end = pointer.indexOf('/', start);
+            String token = pointer.substring(start, end == -1 ? pointer.length() : end);
+            tokens.add(token.indexOf('~') == -1 ? token : unescape(token, pointer));
+            if (end == -1)
+                break;
+            start = end + 1;
+        }
+        String[] array = tokens.toArray(new String[0]);
+        int[] indices = new int[array.length];
+        for (int i = 0; i < array.length; i++)
+            indices[i] = parseIndex(array[i]);
+        return new JSONPointer(pointer, array, indices);
+    }
+
+    /**
+     * Escapes a member name or index for use as one token of a pointer.
+     */
+    public static String escape(String token) {
+        return token.indexOf('~') == -1 && token.indexOf('/') == -1 ? token : token.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(String token, String pointer) {
+        StringBuilder sb = new StringBuilder(token.length());
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c == '~') {
+                char next = ++i < token.length() ? token.charAt(i) : 0;
+                if (next == '0')
+                    c = '~';
+                else if (next == '1')
+                    c = '/';
+                else
+                    throw new IllegalArgumentException("Invalid escape in JSON pointer: " + pointer);
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static int parseIndex(String token) {
+        int length = token.length();
+        // no sign, no leading zeros and at most Integer.MAX_VALUE
+        if (length == 0 || length > 10 || length > 1 && token.charAt(0) == '0')
+            return -1;
+        long index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index <= Integer.MAX_VALUE ? (int) index : -1;
+    }
+
+    /**
+     * @return a pointer to the member or element with the given unescaped token of the value this pointer refers to
+     */
+    public JSONPointer append(String token) {
+        String[] tokens = Arrays.copyOf(this.tokens, this.tokens.length + 1);
+        int[] indices = Arrays.copyOf(this.indices, this.indices.length + 1);
+        tokens[this.tokens.length] = token;
+        indices[this.indices.length] = parseIndex(token);
+        return new JSONPointer(pointer + '/' + escape(token), tokens, indices);
+    }
+
+    public JSONPointer append(int index) {
+        return append(Integer.toString(index));
+    }
+
+    /**
+     * @return the number of tokens, 0 for the whole document
+     */
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * @return the unescaped token at the given position
+     */
+    public String getToken(int i) {
+        return tokens[i];
+    }
+
+    /**
+     * @return the array index denoted by the token at the given position, or -1 if it is not a valid index
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    /**
+     * Resolves this pointer against the given document.
+     *
+     * @param root the document
+     * @return the value, or null if there is none
+     */
+    public JSONValue resolve(JSONValue root) {
+        return tokens.length == 0 ? root : child(resolveParent(root), tokens.length - 1);
+    }
+
+    /**
+     * Like {@link #resolve(JSONValue)}, but returns {@link JSONNull} instead of null, like {@link JSONObject#get(String)}.
+     */
+    public JSONValue get(JSONValue root) {
+        JSONValue value = resolve(root);
+        return value == null ? JSONNull.getInstance() : value;
+    }
+
+    public boolean contains(JSONValue root) {
+        return resolve(root) != null;
+    }
+
+    public String getString(JSONValue root, String def) {
+        JSONValue value = resolve(root);
+        return value != null && value.getType() == JSONValue.Type.STRING ? value.toString() : def;
+    }
+
+    public boolean getBoolean(JSONValue root, boolean def) {
+        JSONValue value = resolve(root);
+        return value != null && value.getType() == JSONValue.Type.BOOLEAN ? value.toBoolean() : def;
+    }
+
+    public int getInt(JSONValue root, int def) {
+        return (int) getLong(root, def);
+    }
+
+    public long getLong(JSONValue root, long def) {
+        JSONValue parent = tokens.length == 0 ? null : resolveParent(root);
+        int last = tokens.length - 1;
+        if (parent instanceof JSONArray && ((JSONArray) parent).isPrimitive()) {
+            // read without wrapping the element
+            JSONArray array = (JSONArray) parent;
+            return indices[last] != -1 && indices[last] < array.size() ? array.getLong(indices[last]) : def;
+        }
+        JSONValue value = tokens.length == 0 ? root : child(parent, last);
+        return value != null && value.getType() == JSONValue.Type.NUMBER ? value.toLong() : def;
+    }
+
+    public double getDouble(JSONValue root, double def) {
+        JSONValue parent = tokens.length == 0 ? null : resolveParent(root);
+        int last = tokens.length - 1;
+        if (parent instanceof JSONArray && ((JSONArray) parent).isPrimitive()) {
+            JSONArray array = (JSONArray) parent;
+            return indices[last] != -1 && indices[last] < array.size() ? array.getDouble(indices[last]) : def;
+        }
+        JSONValue value = tokens.length == 0 ? root : child(parent, last);
+        return value != null && value.getType() == JSONValue.Type.NUMBER ? value.toDouble() : def;
+    }
+
+    /**
+     * @return the object at this pointer, or null if there is none
+     */
+    public JSONObject getObject(JSONValue root) {
+        JSONValue value = resolve(root);
+        return value != null && value.getType() == JSONValue.Type.OBJECT ? value.toObject() : null;
+    }
+
+    /**
+     * @return the array at this pointer, or null if there is none
+     */
+    public JSONArray getArray(JSONValue root) {
+        JSONValue value = resolve(root);
+        return value != null && value.getType() == JSONValue.Type.ARRAY ? value.toArray() : null;
+    }
+
+    /**
+     * @return the value holding the last token, or null if there is none
+     */
+    private JSONValue resolveParent(JSONValue root) {
+        JSONValue current = root;
+        for (int i = 0, last = tokens.length - 1; i < last && current != null; i++)
+            current = child(current, i);
+        return current;
+    }
+
+    /**
+     * Looks up one token in place, so that views such as tape values are not materialized at every step.
+     * Containers are keyed by member name when they are objects, and by index when they are arrays.
+     */
+    @SuppressWarnings("unchecked")
+    private JSONValue child(JSONValue parent, int i) {
+        if (!(parent instanceof JSONContainer))
+            return null;
+        switch (parent.getType()) {
+            case OBJECT:
+                return ((JSONContainer<String>) parent).lookup(tokens[i]);
+            case ARRAY:
+                return indices[i] == -1 ? null : ((JSONContainer<Integer>) parent).lookup(indices[i]);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof JSONPointer && ((JSONPointer) o).pointer.equals(pointer);
+    }
+
+    @Override
+    public int hashCode() {
+        return pointer.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return pointer;
+    }
+}
@@ -1,8 +1,26 @@
 package net.vpg.vjson.value;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Deque;
+
 public final class JSONString extends JSONValue {
+    private static final String[] ESCAPES = new String[128];
     private final String value;
 
+    static {
+        for (char c = 0; c < ' '; c++)
+            ESCAPES[c] = String.format("\\u%04x", (int) c);
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['/'] = "\\/";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\t'] = "\\t";
+    }
+
     private JSONString(String value) {
         this.value = value;
     }
@@ -14,44 +32,111 @@ public final class JSONString extends JSONValue {
     }
 
     public static String escape(String s) {
-        if (s == null) return null;
-        StringBuilder builder = new StringBuilder(s.length());
-        for (int i = 0, len = s.length(); i < len; i++) {
-            builder.append(escape(s.charAt(i)));
-        }
+        if (s == null || !needsEscaping(s)) return s;
+        StringBuilder builder = new StringBuilder(s.length() + 16);
+        escape(s, builder);
         return builder.toString();
     }
 
     public static String escape(char c) {
-        switch (c) {
-            case '\\':
-                return "\\\\";
-            case '\b':
-                return "\\b";
-            case '\f':
-                return "\\f";
-            case '\n':
-                return "\\n";
-            case '\r':
-                return "\\r";
-            case '\t':
-                return "\\t";
-            case '/':
-                return "\\/";
-            default:
-                return Character.toString(c);
+        String escaped = c < ESCAPES.length ? ESCAPES[c] : null;
+        return escaped == null ? Character.toString(c) : escaped;
+    }
+
+    /**
+     * Returns whether {@link #escape(String)} would change the given string.
+     */
+    public static boolean needsEscaping(CharSequence s) {
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            if (c < ESCAPES.length && ESCAPES[c] != null)
+                return true;
+        }
+        return false;
+    }
+
+    public static void escape(CharSequence s, StringBuilder sb) {
+        try {
+            escape(s, (Appendable) sb);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Appends the escaped form of the given string, without surrounding quotes.
+     * Runs of characters that need no escaping are appended in one call.
+     */
+    public static void escape(CharSequence s, Appendable out) throws IOException {
+        int start = 0;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            char c = s.charAt(i);
+            String escaped;
+            if (c < ESCAPES.length && (escaped = ESCAPES[c]) != null) {
+                if (start < i)
+                    out.append(s, start, i);
+                out.append(escaped);
+                start = i + 1;
+            }
+        }
+        if (start < s.length())
+            out.append(s, start, s.length());
+    }
+
     public static String unescape(String s) {
-        return s == null || !s.contains("\\") ? s : s.replaceAll("\\\\b", "\b")
-            .replaceAll("\\\\\\\\", "\\")
-            .replaceAll("\\\\/", "\\/")
-            .replaceAll("\\\\\"", "\"")
-            .replaceAll("\\\\f", "\f")
-            .replaceAll("\\\\n", "\n")
-            .replaceAll("\\\\r", "\r")
-            .replaceAll("\\\\t", "\t");
+        if (s == null) return null;
+        int i = s.indexOf('\\');
+        if (i == -1) return s;
+        int len = s.length();
+        StringBuilder builder = new StringBuilder(len);
+        int start = 0;
+        do {
+            builder.append(s, start, i);
+            if (i + 1 == len)
+                throw new IllegalArgumentException("Unterminated escape sequence at index " + i);
+            char c = s.charAt(i + 1);
+            start = i + 2;
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(c);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (start + 4 > len)
+                        throw new IllegalArgumentException("Unterminated escape sequence at index " + i);
+                    int code = 0;
+                    for (int j = start; j < start + 4; j++) {
+                        int digit = Character.digit(s.charAt(j), 16);
+                        if (digit == -1)
+                            throw new IllegalArgumentException("Invalid unicode escape at index " + i);
+                        code = code << 4 | digit;
+                    }
+                    builder.append((char) code);
+                    start += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid escape sequence at index " + i);
+            }
+            i = s.indexOf('\\', start);
+        } while (i != -1);
+        return builder.append(s, start, len).toString();
     }
 
     @Override
@@ -69,8 +154,23 @@ public final class JSONString extends JSONValue {
         return value;
     }
 
+    @Override
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        // the wrapper, the string and its byte array, assuming Latin-1 contents
+        return 56 + value.length();
+    }
+
     @Override
     public String deserialize() {
-        return "\"" + escape(value) + "\"";
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        deserialize(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public void deserialize(StringBuilder sb) {
+        sb.append('"');
+        escape(value, sb);
+        sb.append('"');
     }
 }
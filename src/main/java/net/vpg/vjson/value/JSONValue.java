@@ -18,12 +18,17 @@ package net.vpg.vjson.value;
 import net.vpg.vjson.DeserializableValue;
 import net.vpg.vjson.SerializableArray;
 import net.vpg.vjson.SerializableObject;
+import net.vpg.vjson.io.Compression;
+import net.vpg.vjson.metrics.JSONMetrics;
+import net.vpg.vjson.metrics.SerializeProbe;
 import net.vpg.vjson.parser.JSONParser;
 import net.vpg.vjson.parser.ParseException;
 import net.vpg.vjson.reader.JSONReader;
 
 import java.io.*;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -47,6 +52,10 @@ public abstract class JSONValue implements DeserializableValue {
         return getParser().parse(in);
     }
 
+    public static JSONValue parse(InputStream in, Compression compression) throws ParseException {
+        return getParser().parse(in, compression);
+    }
+
     public static JSONValue parse(String s) throws ParseException {
         return getParser().parse(s);
     }
@@ -91,16 +100,91 @@ public abstract class JSONValue implements DeserializableValue {
 
     public abstract Type getType();
 
+    /**
+     * Appends the JSON text of this value to the given builder.
+     *
+     * @param sb the builder to append to
+     */
+    public void deserialize(StringBuilder sb) {
+        sb.append(deserialize());
+    }
+
+    /**
+     * Serializes this container through {@link #deserialize(StringBuilder)}, so that nested values
+     * share a single builder and only the outermost call is reported to {@link JSONMetrics}.
+     */
+    String deserializeContainer() {
+        SerializeProbe probe = JSONMetrics.startSerialize();
+        StringBuilder sb = new StringBuilder();
+        deserialize(sb);
+        if (probe != null)
+            probe.finish(getType(), "text", sb.length());
+        return sb.toString();
+    }
+
+    public void write(OutputStream out) throws IOException {
+        write(out, Compression.NONE);
+    }
+
+    /**
+     * Writes the JSON text of this value to the given stream as UTF-8, compressed with the given compression.
+     * The text is serialized, encoded and compressed in blocks of about {@link Compression#BLOCK_SIZE} characters,
+     * so the whole text is never held in memory. The stream is flushed but not closed.
+     *
+     * @param out         the stream to write to
+     * @param compression the compression to apply
+     * @throws IOException if the stream cannot be written to
+     */
+    public void write(OutputStream out, Compression compression) throws IOException {
+        SerializeProbe probe = JSONMetrics.startSerialize();
+        long chars;
+        try (OutputStream target = compression.wrap(out, false)) {
+            chars = new BlockWriter(target).write(this);
+        }
+        if (probe != null)
+            probe.finish(getType(), "text", chars);
+    }
+
     public abstract Object getRaw();
 
+    /**
+     * @return the raw value without copying, which is a read-only view for containers
+     */
+    Object rawView() {
+        return getRaw();
+    }
+
+    /**
+     * Estimates the heap retained by this value and everything it contains,
+     * on a 64-bit VM with compressed oops. Shared instances such as {@code null} and the booleans count as 0.
+     * Nested values are walked without recursion, so deep documents can be estimated as well.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateRetainedBytes() {
+        Deque<JSONValue> pending = new ArrayDeque<>();
+        long bytes = shallowRetainedBytes(pending);
+        while (!pending.isEmpty())
+            bytes += pending.pop().shallowRetainedBytes(pending);
+        return bytes;
+    }
+
+    /**
+     * @param children where to add the values contained in this one, which are estimated separately
+     * @return the estimated size of this value alone
+     */
+    long shallowRetainedBytes(Deque<JSONValue> children) {
+        return 0;
+    }
+
     @Override
     public boolean equals(Object o) {
-        return o instanceof JSONValue && Objects.equals(((JSONValue) o).getRaw(), getRaw());
+        return o instanceof JSONValue && Objects.equals(((JSONValue) o).rawView(), rawView());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(getRaw());
+        return Objects.hashCode(rawView());
     }
 
     public boolean toBoolean() {
@@ -139,6 +223,23 @@ public abstract class JSONValue implements DeserializableValue {
         return false;
     }
 
+    /**
+     * @return whether this value, and every value below it, can never be modified
+     */
+    public boolean isImmutable() {
+        return true;
+    }
+
+    /**
+     * Returns a deeply immutable version of this value, which may be safely shared between threads and callers.
+     * Every mutating method of the returned containers throws an {@link UnsupportedOperationException}.
+     *
+     * @return this value if it is already immutable, otherwise an immutable deep copy of it
+     */
+    public JSONValue toImmutable() {
+        return this;
+    }
+
     @Override
     public String toString() {
         return deserialize();
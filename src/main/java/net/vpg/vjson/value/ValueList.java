@@ -0,0 +1,294 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.value;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * The element storage of a {@link JSONArray}. As long as every element is a long, or every element is a double,
+ * the elements are kept in a primitive array and wrapped in a {@link JSONNumber} only when they are read.
+ * The first element of any other kind switches the storage to plain values for good.
+ */
+final class ValueList extends AbstractList<JSONValue> implements RandomAccess {
+    static final int EMPTY = 0;
+    static final int LONGS = 1;
+    static final int DOUBLES = 2;
+    static final int VALUES = 3;
+    private static final int DEFAULT_CAPACITY = 10;
+    int mode;
+    long[] longs;
+    double[] doubles;
+    JSONValue[] values;
+    private int size;
+
+    ValueList() {
+    }
+
+    ValueList(ValueList other) {
+        mode = other.mode;
+        size = other.size;
+        switch (mode) {
+            case LONGS:
+                longs = Arrays.copyOf(other.longs, size);
+                break;
+            case DOUBLES:
+                doubles = Arrays.copyOf(other.doubles, size);
+                break;
+            case VALUES:
+                values = Arrays.copyOf(other.values, size);
+                break;
+        }
+    }
+
+    private static int modeOf(JSONValue value) {
+        if (value instanceof JSONNumber) {
+            Number number = value.toNumber();
+            if (number instanceof Long)
+                return LONGS;
+            if (number instanceof Double)
+                return DOUBLES;
+        }
+        return VALUES;
+    }
+
+    private static int grow(int capacity, int minimum) {
+        return Math.max(minimum, capacity + (capacity >> 1));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public JSONValue get(int index) {
+        checkIndex(index, size);
+        switch (mode) {
+            case LONGS:
+                return JSONNumber.of(longs[index]);
+            case DOUBLES:
+                return JSONNumber.of(doubles[index]);
+            default:
+                return values[index];
+        }
+    }
+
+    long getLong(int index) {
+        checkIndex(index, size);
+        switch (mode) {
+            case LONGS:
+                return longs[index];
+            case DOUBLES:
+                return (long) doubles[index];
+            default:
+                return values[index].toLong();
+        }
+    }
+
+    double getDouble(int index) {
+        checkIndex(index, size);
+        switch (mode) {
+            case LONGS:
+                return longs[index];
+            case DOUBLES:
+                return doubles[index];
+            default:
+                return values[index].toDouble();
+        }
+    }
+
+    @Override
+    public JSONValue set(int index, JSONValue value) {
+        JSONValue old = get(index);
+        if (modeOf(value) != mode)
+            inflate(size);
+        switch (mode) {
+            case LONGS:
+                longs[index] = value.toLong();
+                break;
+            case DOUBLES:
+                doubles[index] = value.toDouble();
+                break;
+            default:
+                values[index] = value;
+        }
+        return old;
+    }
+
+    @Override
+    public boolean add(JSONValue value) {
+        add(size, value);
+        return true;
+    }
+
+    @Override
+    public void add(int index, JSONValue value) {
+        checkIndex(index, size + 1);
+        int valueMode = modeOf(value);
+        if (mode == EMPTY)
+            mode = valueMode;
+        else if (valueMode != mode)
+            inflate(size + 1);
+        switch (mode) {
+            case LONGS:
+                makeRoom(index);
+                longs[index] = value.toLong();
+                break;
+            case DOUBLES:
+                makeRoom(index);
+                doubles[index] = value.toDouble();
+                break;
+            default:
+                makeRoom(index);
+                values[index] = value;
+        }
+    }
+
+    void addLong(long value) {
+        if (mode == EMPTY)
+            mode = LONGS;
+        if (mode != LONGS) {
+            add(size, JSONNumber.of(value));
+            return;
+        }
+        makeRoom(size);
+        longs[size - 1] = value;
+    }
+
+    void addDouble(double value) {
+        if (mode == EMPTY)
+            mode = DOUBLES;
+        if (mode != DOUBLES) {
+            add(size, JSONNumber.of(value));
+            return;
+        }
+        makeRoom(size);
+        doubles[size - 1] = value;
+    }
+
+    @Override
+    public JSONValue remove(int index) {
+        JSONValue old = get(index);
+        int moved = size - index - 1;
+        switch (mode) {
+            case LONGS:
+                System.arraycopy(longs, index + 1, longs, index, moved);
+                break;
+            case DOUBLES:
+                System.arraycopy(doubles, index + 1, doubles, index, moved);
+                break;
+            default:
+                System.arraycopy(values, index + 1, values, index, moved);
+                values[size - 1] = null;
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        mode = EMPTY;
+        longs = null;
+        doubles = null;
+        values = null;
+        size = 0;
+        modCount++;
+    }
+
+    long[] toLongArray() {
+        if (mode == LONGS)
+            return Arrays.copyOf(longs, size);
+        long[] array = new long[size];
+        for (int i = 0; i < size; i++)
+            array[i] = getLong(i);
+        return array;
+    }
+
+    double[] toDoubleArray() {
+        if (mode == DOUBLES)
+            return Arrays.copyOf(doubles, size);
+        double[] array = new double[size];
+        for (int i = 0; i < size; i++)
+            array[i] = getDouble(i);
+        return array;
+    }
+
+    LongStream longStream() {
+        if (mode == LONGS)
+            return Arrays.stream(longs, 0, size);
+        return IntStream.range(0, size).mapToLong(this::getLong);
+    }
+
+    DoubleStream doubleStream() {
+        if (mode == DOUBLES)
+            return Arrays.stream(doubles, 0, size);
+        return IntStream.range(0, size).mapToDouble(this::getDouble);
+    }
+
+    /**
+     * Opens a slot at the given index of the current primitive or value array.
+     */
+    private void makeRoom(int index) {
+        int length = mode == LONGS ? longs == null ? 0 : longs.length
+            : mode == DOUBLES ? doubles == null ? 0 : doubles.length
+            : values == null ? 0 : values.length;
+        if (size == length) {
+            int capacity = length == 0 ? DEFAULT_CAPACITY : grow(length, size + 1);
+            if (mode == LONGS)
+                longs = longs == null ? new long[capacity] : Arrays.copyOf(longs, capacity);
+            else if (mode == DOUBLES)
+                doubles = doubles == null ? new double[capacity] : Arrays.copyOf(doubles, capacity);
+            else
+                values = values == null ? new JSONValue[capacity] : Arrays.copyOf(values, capacity);
+        }
+        if (index < size) {
+            if (mode == LONGS)
+                System.arraycopy(longs, index, longs, index + 1, size - index);
+            else if (mode == DOUBLES)
+                System.arraycopy(doubles, index, doubles, index + 1, size - index);
+            else
+                System.arraycopy(values, index, values, index + 1, size - index);
+        }
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Switches to plain value storage.
+     */
+    private void inflate(int capacity) {
+        if (mode == VALUES)
+            return;
+        JSONValue[] inflated = new JSONValue[Math.max(capacity, DEFAULT_CAPACITY)];
+        for (int i = 0; i < size; i++)
+            inflated[i] = get(i);
+        values = inflated;
+        longs = null;
+        doubles = null;
+        mode = VALUES;
+    }
+
+    private static void checkIndex(int index, int length) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + (length));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.writer;
+
+import net.vpg.vjson.metrics.JSONMetrics;
+import net.vpg.vjson.metrics.SerializeProbe;
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONObject;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes {@link JSONValue} trees in the compact VJSON binary encoding, which can be read back
+ * through a {@link net.vpg.vjson.reader.BinaryJSONReader}.
+ * <p>
+ * Every document starts with the two header bytes {@code 'V', VERSION} followed by one tagged value.
+ * Lengths and counts are unsigned varints, integral numbers are zigzag varints, doubles are stored as
+ * their 8 raw IEEE 754 bytes and repeated object keys are written as back-references to their first
+ * occurrence in the same document.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class BinaryJSONWriter implements Closeable, Flushable {
+    public static final byte MAGIC = 'V';
+    public static final byte VERSION = 1;
+    public static final byte NULL = 0;
+    public static final byte FALSE = 1;
+    public static final byte TRUE = 2;
+    public static final byte LONG = 3;
+    public static final byte DOUBLE = 4;
+    public static final byte STRING = 5;
+    public static final byte ARRAY = 6;
+    public static final byte OBJECT = 7;
+    public static final byte BIG_NUMBER = 8;
+    /**
+     * The maximum number of distinct keys remembered for back-references in a single document.
+     */
+    public static final int MAX_KEY_REFERENCES = 1 << 16;
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int count;
+    private long flushed;
+
+    public BinaryJSONWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static byte[] toBytes(JSONValue value) {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (BinaryJSONWriter writer = new BinaryJSONWriter(stream)) {
+            writer.write(value);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new UncheckedIOException(e);
+        }
+        return stream.toByteArray();
+    }
+
+    /**
+     * Writes the given value as one complete document.
+     *
+     * @param value the value to write
+     * @return this writer, for chaining
+     * @throws IOException if the underlying stream throws
+     */
+    public BinaryJSONWriter write(JSONValue value) throws IOException {
+        SerializeProbe probe = JSONMetrics.startSerialize();
+        long start = flushed + count;
+        keys.clear();
+        writeByte(MAGIC);
+        writeByte(VERSION);
+        writeValue(value);
+        if (probe != null)
+            probe.finish(value.getType(), "binary", flushed + count - start);
+        return this;
+    }
+
+    private void writeValue(JSONValue value) throws IOException {
+        switch (value.getType()) {
+            case NULL:
+                writeByte(NULL);
+                break;
+            case BOOLEAN:
+                writeByte(value.toBoolean() ? TRUE : FALSE);
+                break;
+            case NUMBER:
+                writeNumber(value.toNumber());
+                break;
+            case STRING:
+                writeByte(STRING);
+                writeString(value.toString());
+                break;
+            case ARRAY:
+                JSONArray array = value.toArray();
+                writeByte(ARRAY);
+                writeVarInt(array.size());
+                for (JSONValue element : array.toList()) {
+                    writeValue(element);
+                }
+                break;
+            case OBJECT:
+                JSONObject object = value.toObject();
+                writeByte(OBJECT);
+                writeVarInt(object.size());
+                for (Map.Entry<String, JSONValue> entry : object.toMap().entrySet()) {
+                    writeKey(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+                break;
+        }
+    }
+
+    private void writeNumber(Number number) throws IOException {
+        if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            writeByte(LONG);
+            long l = number.longValue();
+            writeVarInt((l << 1) ^ (l >> 63));
+        } else if (number instanceof Double) {
+            writeByte(DOUBLE);
+            writeLong(Double.doubleToRawLongBits(number.doubleValue()));
+        } else if (number instanceof Float) {
+            // go through the decimal form so that the value reads back the way it prints
+            writeByte(DOUBLE);
+            writeLong(Double.doubleToRawLongBits(Double.parseDouble(number.toString())));
+        } else {
+            writeByte(BIG_NUMBER);
+            writeString(number.toString());
+        }
+    }
+
+    private void writeKey(String key) throws IOException {
+        Integer index = keys.get(key);
+        if (index != null) {
+            writeVarInt((long) index << 1 | 1);
+            return;
+        }
+        if (keys.size() < MAX_KEY_REFERENCES) {
+            keys.put(key, keys.size());
+        }
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        writeVarInt((long) bytes.length << 1);
+        writeBytes(bytes);
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        writeBytes(bytes);
+    }
+
+    private void writeVarInt(long value) throws IOException {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[count++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+    }
+
+    private void writeLong(long value) throws IOException {
+        ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[count++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeByte(byte b) throws IOException {
+        ensure(1);
+        buffer[count++] = b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                flushed += bytes.length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensure(int space) throws IOException {
+        if (buffer.length - count < space) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            flushed += count;
+            count = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.writer;
+
+import net.vpg.vjson.parser.TokenType;
+import net.vpg.vjson.pretty.PrettyPrintConfig;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.reader.JSONReader;
+import net.vpg.vjson.value.JSONString;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * Reformats JSON text token by token, without building a {@link JSONValue} tree.
+ * <p>
+ * The output is either minified, or laid out exactly like {@link JSONValue#toPrettyString()} with the same
+ * {@link PrettyPrintConfig}, and members keep the order of the input. Memory use does not depend on the
+ * size of the document, only on its nesting depth and the length of its longest string.
+ * The input is checked to be a single well-formed value, and a {@link net.vpg.vjson.parser.ParseException}
+ * is thrown otherwise, after the output written so far.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class JSONTranscoder {
+    private static final int VALUE = 0;
+    private static final int FIRST_VALUE = 1;
+    private static final int FIRST_KEY = 2;
+    private static final int KEY = 3;
+    private static final int COLON = 4;
+    private static final int AFTER_VALUE = 5;
+    private static final int DONE = 6;
+    private final JSONReader in;
+    private final Appendable out;
+    /**
+     * The layout, or null to minify.
+     */
+    private final PrettyPrintConfig config;
+    private final StringBuilder number = new StringBuilder();
+    private boolean[] objects = new boolean[16];
+    private int depth;
+    private int indentLevel;
+
+    private JSONTranscoder(JSONReader in, Appendable out, PrettyPrintConfig config) {
+        this.in = in;
+        this.out = out;
+        this.config = config;
+    }
+
+    /**
+     * Writes the value read from {@code in} to {@code out} without any whitespace.
+     *
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public static void minify(JSONReader in, Appendable out) throws IOException {
+        new JSONTranscoder(in, out, null).run();
+    }
+
+    /**
+     * Writes the value read from {@code in} to {@code out} laid out according to the given config.
+     *
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public static void prettyPrint(JSONReader in, Appendable out, PrettyPrintConfig config) throws IOException {
+        new JSONTranscoder(in, out, config).run();
+    }
+
+    /**
+     * Reformats the text read from {@code in} and writes it to {@code out} through a buffer, which is flushed
+     * at the end. Neither stream is closed.
+     *
+     * @param config the layout, or null to minify
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public static void transcode(Reader in, Writer out, PrettyPrintConfig config) throws IOException {
+        BufferedWriter writer = new BufferedWriter(out, 65536);
+        new JSONTranscoder(new DefaultJSONReader(in), writer, config).run();
+        writer.flush();
+    }
+
+    private void run() throws IOException {
+        int state = VALUE;
+        while (true) {
+            TokenType type = in.getNextTokenType();
+            switch (state) {
+                case DONE:
+                    if (type != TokenType.EOF)
+                        in.error();
+                    return;
+                case COLON:
+                    if (type != TokenType.COLON)
+                        in.error();
+                    colon();
+                    state = VALUE;
+                    break;
+                case FIRST_KEY:
+                case KEY:
+                    if (state == FIRST_KEY && type == TokenType.OBJECT_END) {
+                        end();
+                        state = depth == 0 ? DONE : AFTER_VALUE;
+                        break;
+                    }
+                    if (type != TokenType.STRING)
+                        in.error();
+                    string();
+                    state = COLON;
+                    break;
+                case AFTER_VALUE:
+                    boolean object = objects[depth - 1];
+                    if (type == TokenType.COMMA) {
+                        comma(object);
+                        state = object ? KEY : VALUE;
+                        break;
+                    }
+                    if (type != (object ? TokenType.OBJECT_END : TokenType.ARRAY_END))
+                        in.error();
+                    end();
+                    state = depth == 0 ? DONE : AFTER_VALUE;
+                    break;
+                default:
+                    if (state == FIRST_VALUE && type == TokenType.ARRAY_END) {
+                        end();
+                        state = depth == 0 ? DONE : AFTER_VALUE;
+                    } else if (type == TokenType.OBJECT_START) {
+                        start(true);
+                        state = FIRST_KEY;
+                    } else if (type == TokenType.ARRAY_START) {
+                        start(false);
+                        state = FIRST_VALUE;
+                    } else {
+                        scalar(type);
+                        state = depth == 0 ? DONE : AFTER_VALUE;
+                    }
+            }
+        }
+    }
+
+    private void scalar(TokenType type) throws IOException {
+        switch (type) {
+            case STRING:
+                string();
+                return;
+            case NUMBER:
+                number.setLength(0);
+                if (in.isCurrentLong())
+                    number.append(in.getCurrentLong());
+                else if (in.isCurrentDouble())
+                    NumberWriter.append(number, in.getCurrentDouble());
+                else
+                    JSONValue.of(in.getCurrentToken()).deserialize(number);
+                out.append(number);
+                return;
+            case TRUE:
+                out.append("true");
+                return;
+            case FALSE:
+                out.append("false");
+                return;
+            case NULL:
+                out.append("null");
+                return;
+            default:
+                in.error();
+        }
+    }
+
+    private void string() throws IOException {
+        out.append('"');
+        JSONString.escape((String) in.getCurrentToken(), out);
+        out.append('"');
+    }
+
+    private void start(boolean object) throws IOException {
+        if (depth == objects.length)
+            objects = Arrays.copyOf(objects, depth * 2);
+        objects[depth++] = object;
+        out.append(object ? '{' : '[');
+        if (config == null)
+            return;
+        if (!isSameLine(object)) {
+            indentLevel++;
+            newLineAndIndent();
+        } else if (object ? config.isSpaceWithinBraces() : config.isSpaceWithinBrackets())
+            out.append(' ');
+    }
+
+    private void end() throws IOException {
+        boolean object = objects[--depth];
+        if (config != null) {
+            if (!isSameLine(object)) {
+                indentLevel--;
+                newLineAndIndent();
+            } else if (object ? config.isSpaceWithinBraces() : config.isSpaceWithinBrackets())
+                out.append(' ');
+        }
+        out.append(object ? '}' : ']');
+    }
+
+    private void comma(boolean object) throws IOException {
+        if (config == null) {
+            out.append(',');
+            return;
+        }
+        if (config.isSpaceBeforeComma())
+            out.append(' ');
+        out.append(',');
+        if (!isSameLine(object))
+            newLineAndIndent();
+        else if (config.isSpaceAfterComma())
+            out.append(' ');
+    }
+
+    private void colon() throws IOException {
+        if (config == null) {
+            out.append(':');
+            return;
+        }
+        if (config.isSpaceBeforeColon())
+            out.append(' ');
+        out.append(':');
+        if (config.isSpaceAfterColon())
+            out.append(' ');
+    }
+
+    private boolean isSameLine(boolean object) {
+        return object ? config.isObjectContentsOnSameLine() : config.isArrayContentsOnSameLine();
+    }
+
+    private void newLineAndIndent() throws IOException {
+        out.append('\n');
+        for (int i = 0; i < indentLevel; i++)
+            out.append(config.getIndent());
+    }
+}
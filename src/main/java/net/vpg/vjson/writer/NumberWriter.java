@@ -0,0 +1,273 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.writer;
+
+import java.math.BigInteger;
+
+/**
+ * Appends numbers to a {@link StringBuilder} without creating intermediate strings.
+ * <p>
+ * Doubles are formatted with Raffaello Giulietti's Schubfach algorithm, which always picks the shortest
+ * decimal that rounds back to the same double, choosing the closest one when there are several.
+ * The layout is the same as {@link Double#toString(double)}: plain notation for magnitudes in [10<sup>-3</sup>, 10<sup>7</sup>)
+ * and computerized scientific notation otherwise.
+ *
+ * @author Vaibhav Nargwani
+ */
+public final class NumberWriter {
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << P - 1;
+    private static final long C_TINY = 3;
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final int H = 17;
+    private static final long MASK_63 = (1L << 63) - 1;
+    private static final long[] POW10 = new long[H + 1];
+    /**
+     * For each k, the 126-bit value floor(10<sup>-k</sup> 2<sup>125 - r</sup>) + 1 where r = floor(log2(10<sup>-k</sup>)),
+     * split into its upper 63 bits followed by its lower 63 bits.
+     */
+    private static final long[] G = new long[(K_MAX - K_MIN + 1) * 2];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+        for (int k = K_MIN; k <= K_MAX; k++) {
+            int shift = 125 - flog2pow10(-k);
+            BigInteger g = k <= 0
+                ? BigInteger.TEN.pow(-k).shiftLeft(shift)
+                : BigInteger.ONE.shiftLeft(shift).divide(BigInteger.TEN.pow(k));
+            g = g.add(BigInteger.ONE);
+            G[k - K_MIN << 1] = g.shiftRight(63).longValue();
+            G[k - K_MIN << 1 | 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private NumberWriter() {
+    }
+
+    public static void append(StringBuilder sb, Number number) {
+        if (number instanceof Double)
+            append(sb, number.doubleValue());
+        else if (number instanceof Long || number instanceof Integer || number instanceof Short || number instanceof Byte)
+            sb.append(number.longValue());
+        else
+            // floats keep their own shortest form, big numbers keep their exact digits
+            sb.append(number);
+    }
+
+    public static void append(StringBuilder sb, long value) {
+        sb.append(value);
+    }
+
+    public static void append(StringBuilder sb, double value) {
+        append(sb, value, false);
+    }
+
+    /**
+     * Appends a double exactly as ECMAScript's {@code Number.prototype.toString} does, as required by
+     * the JSON Canonicalization Scheme (RFC 8785): the digits are the shortest that round-trip, even if that is
+     * a single digit for subnormal values, integral values have no fraction, plain notation is used
+     * for magnitudes in [10<sup>-6</sup>, 10<sup>21</sup>) and the exponent is written as {@code e+n} or {@code e-n}.
+     *
+     * @throws IllegalArgumentException if the value is NaN or infinite
+     */
+    public static void appendCanonical(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new IllegalArgumentException(value + " has no JSON representation");
+        // -0 is written as 0
+        append(sb, value == 0 ? 0 : value, true);
+    }
+
+    private static void append(StringBuilder sb, double value, boolean ecma) {
+        long bits = Double.doubleToRawLongBits(value);
+        long t = bits & C_MIN - 1;
+        int bq = (int) (bits >>> P - 1) & 0x7ff;
+        if (bq == 0x7ff) {
+            sb.append(value);
+            return;
+        }
+        if (bits < 0)
+            sb.append('-');
+        if (bq != 0) {
+            // normal value, value = c 2^q with q = -mq
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // small integer
+                    appendDecimal(sb, f, 0, ecma);
+                    return;
+                }
+            }
+            toDecimal(sb, -mq, c, 0, ecma);
+        } else if (t != 0) {
+            // subnormal value, which Double.toString writes with at least 2 digits
+            if (t < C_TINY && !ecma)
+                toDecimal(sb, Q_MIN, 10 * t, -1, ecma);
+            else
+                toDecimal(sb, Q_MIN, t, 0, ecma);
+        } else {
+            sb.append(ecma ? "0" : "0.0");
+        }
+    }
+
+    private static void toDecimal(StringBuilder sb, int q, long c, int dk, boolean ecma) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // the lower neighbour is closer when c is a power of two
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[k - K_MIN << 1];
+        long g0 = G[k - K_MIN << 1 | 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+        long s = vb >> 2;
+        // Double.toString never writes fewer than 2 digits, ECMAScript writes a single digit where it round-trips
+        if (s >= (ecma ? 10 : 100)) {
+            // try a decimal with one digit less first
+            long sp10 = 10 * Math.multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                appendDecimal(sb, upin ? sp10 : tp10, k, ecma);
+                return;
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            appendDecimal(sb, uin ? s : t, k + dk, ecma);
+            return;
+        }
+        // both candidates round-trip, take the closest one or the even one on a tie
+        long cmp = vb - (s + t << 1);
+        appendDecimal(sb, cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t, k + dk, ecma);
+    }
+
+    /**
+     * Computes the rounded-to-odd value of g cp 2<sup>-127</sup>.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = Math.multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = Math.multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * Appends f 10<sup>e</sup>, where f is a positive integer, in the layout of {@link Double#toString(double)}
+     * or of ECMAScript.
+     */
+    private static void appendDecimal(StringBuilder sb, long f, int e, boolean ecma) {
+        // normalize f to exactly H digits, so that the value is 0.f 10^e
+        int len = flog10pow2(Long.SIZE - Long.numberOfLeadingZeros(f));
+        if (f >= POW10[len])
+            len++;
+        f *= POW10[H - len];
+        e += len;
+        // drop trailing zeros, but keep the first digit
+        int digits = H;
+        while (digits > 1 && f % 10 == 0) {
+            f /= 10;
+            digits--;
+        }
+        if (ecma) {
+            if (digits <= e && e <= 21) {
+                appendDigits(sb, f, digits, 0);
+                appendZeros(sb, e - digits);
+            } else if (0 < e && e <= 21) {
+                appendDigits(sb, f, digits, e);
+            } else if (-6 < e && e <= 0) {
+                sb.append("0.");
+                appendZeros(sb, -e);
+                appendDigits(sb, f, digits, 0);
+            } else {
+                appendDigits(sb, f, digits, 1);
+                sb.append('e').append(e > 0 ? "+" : "").append(e - 1);
+            }
+            return;
+        }
+        if (0 < e && e <= 7) {
+            appendDigits(sb, f, digits, e);
+            if (digits <= e) {
+                appendZeros(sb, e - digits);
+                sb.append(".0");
+            }
+        } else if (-3 < e && e <= 0) {
+            sb.append("0.");
+            appendZeros(sb, -e);
+            appendDigits(sb, f, digits, 0);
+        } else {
+            appendDigits(sb, f, digits, 1);
+            if (digits == 1)
+                sb.append(".0");
+            sb.append('E').append(e - 1);
+        }
+    }
+
+    /**
+     * Appends the given number of digits of f, with a decimal point after the first {@code point} digits
+     * if some digits remain after it.
+     */
+    private static void appendDigits(StringBuilder sb, long f, int digits, int point) {
+        boolean dot = point != 0 && point < digits;
+        // reserve the characters and fill them in from the last digit, without an intermediate buffer
+        int i = sb.length() + digits + (dot ? 1 : 0);
+        sb.setLength(i);
+        for (int n = digits; n > 0; n--) {
+            if (dot && n == point)
+                sb.setCharAt(--i, '.');
+            long q = f / 10;
+            sb.setCharAt(--i, (char) ('0' + (f - q * 10)));
+            f = q;
+        }
+    }
+
+    private static void appendZeros(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++)
+            sb.append('0');
+    }
+
+    private static int flog10pow2(int q) {
+        return (int) (q * 661_971_961_083L >> 41);
+    }
+
+    private static int flog10threeQuartersPow2(int q) {
+        return (int) (q * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    private static int flog2pow10(int q) {
+        return (int) (q * 913_124_641_741L >> 38);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2021 Vaibhav Nargwani
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.vpg.vjson.writer;
+
+import net.vpg.vjson.metrics.JSONMetrics;
+import net.vpg.vjson.metrics.SerializeProbe;
+import net.vpg.vjson.value.JSONArray;
+import net.vpg.vjson.value.JSONString;
+import net.vpg.vjson.value.JSONValue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Writes the JSON text of large containers on several threads.
+ * <p>
+ * The elements or members of the outermost container are split into chunks, every chunk is serialized and
+ * encoded to UTF-8 on a {@link ForkJoinPool}, and the encoded chunks are written in order with a single
+ * gathering write wherever possible. Only a bounded number of chunks is held in memory at once, so the
+ * output may be much larger than the heap.
+ * <p>
+ * Nested containers are serialized as a whole by the chunk that contains them, so a document with a
+ * single large value below the root is written on one thread. The tree must not be modified while it is
+ * being written.
+ *
+ * @author Vaibhav Nargwani
+ */
+public class ParallelJSONWriter {
+    /**
+     * The default number of elements or members in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxPendingChunks;
+
+    public ParallelJSONWriter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param pool      the pool to serialize chunks on
+     * @param chunkSize the number of elements or members in a chunk
+     */
+    public ParallelJSONWriter(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxPendingChunks = Math.max(2, pool.getParallelism() * 2);
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Writes the given value to a file, replacing its contents.
+     *
+     * @param value the value to write
+     * @param file  the file to write to
+     * @return the number of bytes written
+     * @throws IOException if the file cannot be written to
+     */
+    public long write(JSONValue value, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return write(value, channel);
+        }
+    }
+
+    /**
+     * Writes the JSON text of the given value to the channel as UTF-8. The channel is not closed.
+     *
+     * @param value   the value to write
+     * @param channel the channel to write to
+     * @return the number of bytes written
+     * @throws IOException if the channel cannot be written to
+     */
+    public long write(JSONValue value, GatheringByteChannel channel) throws IOException {
+        SerializeProbe probe = JSONMetrics.startSerialize();
+        long written;
+        switch (value.getType()) {
+            case ARRAY:
+                written = writeArray(value.toArray(), channel);
+                break;
+            case OBJECT:
+                written = writeObject(value.toObject().toMap(), channel);
+                break;
+            default:
+                StringBuilder sb = new StringBuilder();
+                value.deserialize(sb);
+                written = drain(channel, new ByteBuffer[]{encode(sb)}, 1);
+        }
+        if (probe != null)
+            probe.finish(value.getType(), "text", written);
+        return written;
+    }
+
+    private long writeArray(JSONArray array, GatheringByteChannel channel) throws IOException {
+        int size = array.size();
+        int chunks = Math.max(1, (size + chunkSize - 1) / chunkSize);
+        return write(chunks, channel, chunk -> {
+            int from = chunk * chunkSize;
+            int to = Math.min(size, from + chunkSize);
+            StringBuilder sb = new StringBuilder();
+            sb.append(chunk == 0 ? "[" : ",");
+            array.deserialize(sb, from, to);
+            if (chunk == chunks - 1)
+                sb.append(']');
+            return sb;
+        });
+    }
+
+    private long writeObject(Map<String, JSONValue> map, GatheringByteChannel channel) throws IOException {
+        List<Map.Entry<String, JSONValue>> entries = new ArrayList<>(map.entrySet());
+        int chunks = Math.max(1, (entries.size() + chunkSize - 1) / chunkSize);
+        return write(chunks, channel, chunk -> {
+            int from = chunk * chunkSize;
+            int to = Math.min(entries.size(), from + chunkSize);
+            StringBuilder sb = new StringBuilder();
+            sb.append(chunk == 0 ? "{" : ",");
+            for (int i = from; i < to; i++) {
+                if (i != from)
+                    sb.append(',');
+                Map.Entry<String, JSONValue> entry = entries.get(i);
+                sb.append('"');
+                JSONString.escape(entry.getKey(), sb);
+                sb.append("\":");
+                entry.getValue().deserialize(sb);
+            }
+            if (chunk == chunks - 1)
+                sb.append('}');
+            return sb;
+        });
+    }
+
+    /**
+     * Serializes the chunks on the pool, keeping at most {@link #maxPendingChunks} in flight,
+     * and writes them in order as they complete.
+     */
+    private long write(int chunks, GatheringByteChannel channel, Chunker chunker) throws IOException {
+        ArrayDeque<ForkJoinTask<ByteBuffer>> pending = new ArrayDeque<>();
+        ByteBuffer[] batch = new ByteBuffer[maxPendingChunks];
+        int submitted = 0;
+        long written = 0;
+        try {
+            while (submitted < chunks || !pending.isEmpty()) {
+                while (submitted < chunks && pending.size() < maxPendingChunks) {
+                    int chunk = submitted++;
+                    pending.add(pool.submit(() -> encode(chunker.serialize(chunk))));
+                }
+                // wait for the next chunk, then take every chunk after it that is already done
+                int count = 0;
+                batch[count++] = pending.remove().join();
+                while (!pending.isEmpty() && pending.peek().isDone())
+                    batch[count++] = pending.remove().join();
+                written += drain(channel, batch, count);
+            }
+        } finally {
+            for (ForkJoinTask<ByteBuffer> task : pending)
+                task.cancel(false);
+        }
+        return written;
+    }
+
+    private static long drain(GatheringByteChannel channel, ByteBuffer[] buffers, int count) throws IOException {
+        long written = 0;
+        int offset = 0;
+        while (offset < count) {
+            written += channel.write(buffers, offset, count - offset);
+            while (offset < count && !buffers[offset].hasRemaining())
+                buffers[offset++] = null;
+        }
+        return written;
+    }
+
+    private static ByteBuffer encode(CharSequence chars) {
+        try {
+            return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .encode(CharBuffer.wrap(chars));
+        } catch (CharacterCodingException e) {
+            // cannot happen, as errors are replaced
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface Chunker {
+        CharSequence serialize(int chunk);
+    }
+}
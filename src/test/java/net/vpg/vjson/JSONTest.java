@@ -1,13 +1,68 @@
 package net.vpg.vjson;
 
+import net.vpg.vjson.canonical.CanonicalJSON;
+import net.vpg.vjson.index.JSONIndex;
+import net.vpg.vjson.io.Compression;
+import net.vpg.vjson.io.PipelinedInputStream;
+import net.vpg.vjson.metrics.JSONMetrics;
+import net.vpg.vjson.metrics.MetricsListener;
+import net.vpg.vjson.metrics.ParseMetrics;
+import net.vpg.vjson.metrics.SerializeMetrics;
+import net.vpg.vjson.parser.CachingJSONParser;
+import net.vpg.vjson.parser.JSONHandler;
+import net.vpg.vjson.parser.JSONParser;
+import net.vpg.vjson.parser.ParseResult;
+import net.vpg.vjson.parser.ParseException;
+import net.vpg.vjson.patch.JSONPatch;
+import net.vpg.vjson.patch.PatchException;
+import net.vpg.vjson.patch.PatchOperation;
+import net.vpg.vjson.pretty.PrettyPrintConfig;
+import net.vpg.vjson.reader.BinaryJSONReader;
+import net.vpg.vjson.reader.DefaultJSONReader;
+import net.vpg.vjson.schema.JSONSchema;
+import net.vpg.vjson.schema.ValidationException;
+import net.vpg.vjson.sort.ExternalSorter;
+import net.vpg.vjson.tape.JSONStore;
+import net.vpg.vjson.tape.JSONTape;
+import net.vpg.vjson.tape.TapeValue;
+import net.vpg.vjson.transform.JSONTransform;
+import net.vpg.vjson.value.ConcurrentJSONArray;
+import net.vpg.vjson.value.ConcurrentJSONObject;
 import net.vpg.vjson.value.JSONArray;
 import net.vpg.vjson.value.JSONObject;
+import net.vpg.vjson.value.JSONPointer;
+import net.vpg.vjson.value.JSONString;
+import net.vpg.vjson.value.JSONValue;
+import net.vpg.vjson.writer.BinaryJSONWriter;
+import net.vpg.vjson.writer.JSONTranscoder;
+import net.vpg.vjson.writer.NumberWriter;
+import net.vpg.vjson.writer.ParallelJSONWriter;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 class JSONTest {
     static URL url;
@@ -33,4 +88,750 @@ class JSONTest {
     void checkCorrectParse() throws IOException {
         Assertions.assertEquals(obj.toString(), JSONObject.parse(url).toString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void checkBinaryRoundTrip() throws IOException {
+        JSONObject parsed = JSONObject.parse(url);
+        parsed.put("NESTED", new JSONArray().add(new JSONObject().put("INT", 1)).add(new JSONObject()).add(new JSONArray()));
+        byte[] bytes = BinaryJSONWriter.toBytes(parsed);
+        Assertions.assertEquals(parsed.toString(), JSONValue.parse(new BinaryJSONReader(bytes)).toString());
+    }
+
+    @Test
+    void checkTapeParse() throws IOException {
+        JSONTape tape = JSONTape.parse(url);
+        Assertions.assertEquals(obj.toString(), tape.getRoot().toValue().toString());
+        Assertions.assertEquals(-123, tape.getRoot().asObject().getTapeObject("NUMBERS").getInt("NEGATIVE"));
+    }
+
+    @Test
+    void checkTapeMaterialize() {
+        String text = "{\"a\":[1,2.5,{\"\":null,\"b\":[[],{}]}],\"c\":\"d\",\"e\":{\"f\":[true,false]}}";
+        TapeValue root = JSONTape.parse(text).getRoot();
+        Assertions.assertEquals(JSONValue.parse(text).toString(), root.toValue().toString());
+        Assertions.assertEquals(JSONValue.parse(text).getRaw(), root.getRaw());
+        // nesting is only bounded by the heap, not by the call stack
+        int depth = 100000;
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < depth; i++)
+            deep.append('[');
+        for (int i = 0; i < depth; i++)
+            deep.append(']');
+        TapeValue deepRoot = JSONTape.parse(deep.toString()).getRoot();
+        JSONValue value = deepRoot.toValue();
+        Object raw = deepRoot.getRaw();
+        for (int i = 1; i < depth; i++) {
+            value = value.toArray().get(0);
+            raw = ((List<?>) raw).get(0);
+        }
+        Assertions.assertTrue(value.toArray().isEmpty());
+        Assertions.assertTrue(((List<?>) raw).isEmpty());
+    }
+
+    @Test
+    void checkParseCache() {
+        CachingJSONParser parser = new CachingJSONParser(2, 1 << 20);
+        JSONValue first = parser.parse("{\"a\":[1,2]}");
+        Assertions.assertSame(first, parser.parse("{\"a\":[1,2]}"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> first.toObject().put("b", 1));
+        parser.parse("[1]");
+        parser.parse("[2]");
+        CachingJSONParser.Stats stats = parser.getStats();
+        Assertions.assertEquals(2, stats.getEntries());
+        Assertions.assertEquals(1, stats.getEvictions());
+        Assertions.assertNotSame(first, parser.parse("{\"a\":[1,2]}"));
+    }
+
+    @Test
+    void checkParseCacheReusedBuffer() {
+        CachingJSONParser parser = new CachingJSONParser(16, 1 << 20);
+        byte[] buffer = "[1,2]".getBytes(StandardCharsets.UTF_8);
+        JSONValue first = parser.parse(buffer);
+        // a pooled buffer refilled with other content must not change the cached key
+        byte[] refilled = "[3,4]".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(refilled, 0, buffer, 0, buffer.length);
+        Assertions.assertEquals("[3,4]", parser.parse(buffer).toString());
+        Assertions.assertSame(first, parser.parse("[1,2]".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(2, parser.getStats().getEntries());
+    }
+
+    @Test
+    void checkPatchDiffAndApply() {
+        JSONValue source = JSONValue.parse("{\"a\":[1,2,3,4,5],\"b\":{\"c\":true},\"d\":\"x\"}");
+        JSONValue target = JSONValue.parse("{\"a\":[1,3,4,6,5],\"b\":{\"c\":false},\"e\":null}");
+        JSONPatch patch = JSONPatch.diff(source, target);
+        Assertions.assertEquals(target.toString(), JSONPatch.of(JSONArray.parse(patch.toString())).apply(source).toString());
+        Assertions.assertTrue(JSONPatch.diff(target, target).isEmpty());
+    }
+
+    @Test
+    void checkPatchTestAfterModification() {
+        JSONValue document = JSONValue.parse("{\"a\":{\"x\":1}}");
+        JSONPatch patch = new JSONPatch()
+            .add(PatchOperation.test("/a", new JSONObject().put("x", 1)))
+            .add(PatchOperation.add("/a/y", 2))
+            .add(PatchOperation.test("/a", new JSONObject().put("x", 1).put("y", 2)));
+        Assertions.assertEquals("{\"a\":{\"x\":1,\"y\":2}}", patch.apply(document).toString());
+        JSONPatch failing = new JSONPatch().add(PatchOperation.test("/a/y", 3));
+        Assertions.assertThrows(PatchException.class, () -> failing.apply(document));
+    }
+
+    @Test
+    void checkPatchLargeNumbers() {
+        // distinct longs above 2^53 have the same double
+        JSONValue source = JSONValue.parse("{\"id\":9007199254740993}");
+        JSONValue target = JSONValue.parse("{\"id\":9007199254740992}");
+        JSONPatch patch = JSONPatch.diff(source, target);
+        Assertions.assertFalse(patch.isEmpty());
+        Assertions.assertEquals(target.toString(), patch.apply(JSONValue.parse(source.toString())).toString());
+        Assertions.assertThrows(PatchException.class,
+            () -> new JSONPatch().add(PatchOperation.test("/id", 9007199254740992L)).apply(source));
+        new JSONPatch().add(PatchOperation.test("/id", 9007199254740993L)).apply(source);
+        Assertions.assertTrue(JSONPatch.diff(JSONValue.parse("[1,2.5]"), JSONValue.parse("[1.0,2.50]")).isEmpty());
+    }
+
+    @Test
+    void checkMetrics() {
+        List<ParseMetrics> parses = new ArrayList<>();
+        List<SerializeMetrics> serializations = new ArrayList<>();
+        JSONMetrics.setListener(new MetricsListener() {
+            @Override
+            public void onParse(ParseMetrics metrics) {
+                parses.add(metrics);
+            }
+
+            @Override
+            public void onSerialize(SerializeMetrics metrics) {
+                serializations.add(metrics);
+            }
+        });
+        try {
+            String text = "{\"a\":[1,2,{\"b\":\"c\"}]}";
+            JSONValue.parse(text).toString();
+            Assertions.assertThrows(ParseException.class, () -> JSONValue.parse("[1,"));
+            Assertions.assertEquals(2, parses.size());
+            ParseMetrics metrics = parses.get(0);
+            Assertions.assertFalse(metrics.isFailed());
+            Assertions.assertEquals(text.length(), metrics.getChars());
+            Assertions.assertEquals(2, metrics.getValueCount(JSONValue.Type.NUMBER));
+            Assertions.assertEquals(3, metrics.getMaxDepth());
+            Assertions.assertTrue(parses.get(1).isFailed());
+            Assertions.assertEquals(1, parses.get(1).getValueCount(JSONValue.Type.NUMBER));
+            // the same depth as setMaxDepth, a scalar root is at depth 0
+            JSONValue.parse("5");
+            Assertions.assertEquals(0, parses.get(2).getMaxDepth());
+            Assertions.assertEquals(1, parses.get(2).getValueCount(JSONValue.Type.NUMBER));
+            new JSONParser().setMaxDepth(metrics.getMaxDepth()).parse(text);
+            Assertions.assertThrows(ParseException.class, () -> new JSONParser().setMaxDepth(metrics.getMaxDepth() - 1).parse(text));
+            Assertions.assertEquals(1, serializations.size());
+            Assertions.assertEquals(text.length(), serializations.get(0).getChars());
+        } finally {
+            JSONMetrics.setListener(null);
+        }
+    }
+
+    @Test
+    void checkParseLimits() {
+        JSONParser parser = new JSONParser().setMaxDepth(2);
+        Assertions.assertEquals("[[1]]", parser.parse("[[1]]").toString());
+        ParseException deep = Assertions.assertThrows(ParseException.class, () -> parser.parse("[[[1]]]"));
+        Assertions.assertEquals(ParseException.LIMIT_EXCEEDED, deep.getType());
+        char[] huge = new char[4 << 20];
+        Arrays.fill(huge, 'x');
+        huge[0] = '"';
+        huge[huge.length - 1] = '"';
+        JSONParser sized = new JSONParser().setMaxDocumentSize(1000);
+        Assertions.assertEquals("[1]", sized.parse("[1]").toString());
+        ParseException large = Assertions.assertThrows(ParseException.class, () -> sized.parse(new CharArrayReader(huge)));
+        Assertions.assertEquals(ParseException.LIMIT_EXCEEDED, large.getType());
+        // the string is rejected once the first buffer is exhausted, not after it has been read in full
+        Assertions.assertTrue(large.getPosition() < huge.length / 2);
+    }
+
+    @Test
+    void checkStringAcrossBuffers() {
+        // escapes right at the end of the first buffer of the reader
+        char[] run = new char[(1 << 20) - 4];
+        Arrays.fill(run, 'a');
+        String text = "[\"" + new String(run) + "\\n\\u0041\\\"b\"]";
+        String expected = new String(run) + "\nA\"b";
+        Assertions.assertTrue(expected.equals(JSONValue.parse(new StringReader(text)).toArray().get(0).toString()));
+        Assertions.assertTrue(expected.equals(JSONValue.parse(text).toArray().get(0).toString()));
+    }
+
+    @Test
+    void checkEscaping() {
+        String raw = "tab\t \"quoted\" back\\slash \u0001 \uABCD";
+        String escaped = JSONString.escape(raw);
+        Assertions.assertEquals("tab\\t \\\"quoted\\\" back\\\\slash \\u0001 \uABCD", escaped);
+        Assertions.assertEquals(raw, JSONString.unescape(escaped));
+        Assertions.assertEquals(raw, JSONValue.parse('"' + escaped + '"').toString());
+        Assertions.assertFalse(JSONString.needsEscaping("plain \uABCD"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSONString.unescape("bad \\x"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSONString.unescape("short \\u12"));
+    }
+
+    @Test
+    void checkDoubleFormatting() {
+        double[] values = {0.1, 1.0, -2.5, 100, 1e7, 1.0E-3, 9.999E-4, 1e23, 2.82879384806159E17,
+            Double.MAX_VALUE, Double.MIN_NORMAL, Double.MIN_VALUE, 4.35, 0.3};
+        for (double value : values) {
+            StringBuilder sb = new StringBuilder();
+            NumberWriter.append(sb, value);
+            String written = sb.toString();
+            Assertions.assertEquals(value, Double.parseDouble(written));
+            Assertions.assertTrue(written.length() <= Double.toString(value).length(), written);
+        }
+        StringBuilder sb = new StringBuilder();
+        NumberWriter.append(sb, 1e7);
+        sb.append(' ');
+        NumberWriter.append(sb, 0.001);
+        sb.append(' ');
+        NumberWriter.append(sb, 2.82879384806159E17);
+        Assertions.assertEquals("1.0E7 0.001 2.82879384806159E17", sb.toString());
+    }
+
+    @Test
+    void checkCompressedRoundTrip() throws IOException {
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < 20000; i++)
+            array.add(new JSONObject().put("i", i).put("s", "\uD83D\uDE00 " + i).put("l", JSONArray.ofLongs(i, -i)));
+        String expected = array.toString();
+        for (Compression compression : new Compression[]{Compression.NONE, Compression.GZIP, Compression.DEFLATE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            array.write(out, compression);
+            byte[] bytes = out.toByteArray();
+            Assertions.assertEquals(expected, new JSONParser().parse(new ByteArrayInputStream(bytes), Compression.AUTO).toString());
+            Assertions.assertEquals(expected, new JSONParser().parse(new ByteArrayInputStream(bytes), compression, true).toString());
+        }
+    }
+
+    @Test
+    void checkPipelinedStreamClose() throws IOException {
+        boolean[] closed = new boolean[1];
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 'x';
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        PipelinedInputStream in = new PipelinedInputStream(endless, 16, 2);
+        Assertions.assertEquals('x', in.read());
+        in.close();
+        Assertions.assertTrue(closed[0]);
+        Assertions.assertThrows(IOException.class, in::read);
+        PipelinedInputStream finite = new PipelinedInputStream(new ByteArrayInputStream(new byte[100]), 16, 2);
+        Assertions.assertEquals(100, finite.readAllBytes().length);
+        Assertions.assertEquals(-1, finite.read());
+        finite.close();
+    }
+
+    @Test
+    void checkSchemaValidation() {
+        JSONSchema schema = JSONSchema.compile("{\"type\":\"object\",\"required\":[\"id\"],\"properties\":{"
+            + "\"id\":{\"type\":\"integer\",\"minimum\":1},"
+            + "\"tags\":{\"type\":\"array\",\"items\":{\"$ref\":\"#/$defs/tag\"},\"uniqueItems\":true}},"
+            + "\"$defs\":{\"tag\":{\"type\":\"string\",\"maxLength\":3}}}");
+        String valid = "{\"id\":2,\"tags\":[\"a\",\"bc\"]}";
+        Assertions.assertEquals(valid, schema.parse(valid).toString());
+        Assertions.assertTrue(schema.isValid(JSONValue.parse(valid)));
+        ValidationException tooLong = Assertions.assertThrows(ValidationException.class, () -> schema.parse("{\"id\":2,\"tags\":[\"a\",\"long\"]}"));
+        Assertions.assertEquals("/tags/1", tooLong.getPath());
+        Assertions.assertEquals("maxLength", tooLong.getKeyword());
+        Assertions.assertEquals(ParseException.SCHEMA_VIOLATION, tooLong.getType());
+        ValidationException missing = Assertions.assertThrows(ValidationException.class, () -> schema.validate(JSONValue.parse("{\"tags\":[]}")));
+        Assertions.assertEquals("required", missing.getKeyword());
+        ValidationException duplicate = Assertions.assertThrows(ValidationException.class, () -> schema.parse("{\"id\":1,\"tags\":[\"a\",\"a\"]}"));
+        Assertions.assertEquals("uniqueItems", duplicate.getKeyword());
+        Assertions.assertFalse(schema.isValid(JSONValue.parse("{\"id\":0}")));
+    }
+
+    @Test
+    void checkCanonicalNumbers() {
+        // IEEE 754 bits and their ECMAScript form, from RFC 8785 and for the smallest subnormals
+        String[][] vectors = {
+            {"0000000000000000", "0"}, {"8000000000000000", "0"},
+            {"0000000000000001", "5e-324"}, {"8000000000000001", "-5e-324"},
+            {"0000000000000002", "1e-323"}, {"000000000000000e", "7e-323"},
+            {"7fefffffffffffff", "1.7976931348623157e+308"}, {"4340000000000000", "9007199254740992"},
+            {"4430000000000000", "295147905179352830000"}, {"44b52d02c7e14af5", "9.999999999999997e+22"},
+            {"44b52d02c7e14af6", "1e+23"}, {"44b52d02c7e14af7", "1.0000000000000001e+23"},
+            {"444b1ae4d6e2ef50", "1e+21"}, {"3eb0c6f7a0b5ed8c", "9.999999999999997e-7"},
+            {"3eb0c6f7a0b5ed8d", "0.000001"}, {"41b3de4355555553", "333333333.3333332"},
+            {"becbf647612f3696", "-0.0000033333333333333333"}, {"43143ff3c1cb0959", "1424953923781206.2"},
+        };
+        for (String[] vector : vectors) {
+            StringBuilder sb = new StringBuilder();
+            NumberWriter.appendCanonical(sb, Double.longBitsToDouble(Long.parseUnsignedLong(vector[0], 16)));
+            Assertions.assertEquals(vector[1], sb.toString());
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> NumberWriter.appendCanonical(new StringBuilder(), Double.NaN));
+    }
+
+    @Test
+    void checkCanonicalForm() throws NoSuchAlgorithmException {
+        JSONValue a = JSONValue.parse("{\"b\":[1.0,2e0,\"\\u00e9\\/\"],\"a\":{\"\\u20ac\":true,\"\\r\":null}}");
+        JSONValue b = JSONValue.parse("{ \"a\" : { \"\\r\" : null, \"\u20ac\" : true }, \"b\" : [ 1, 2, \"\u00e9/\" ] }");
+        Assertions.assertEquals("{\"a\":{\"\\r\":null,\"\u20ac\":true},\"b\":[1,2,\"\u00e9/\"]}", CanonicalJSON.toString(a));
+        Assertions.assertArrayEquals(CanonicalJSON.toBytes(a), CanonicalJSON.toBytes(b));
+        MessageDigest sha = MessageDigest.getInstance("SHA-256");
+        Assertions.assertArrayEquals(sha.digest(CanonicalJSON.toBytes(a)), CanonicalJSON.digest(b, MessageDigest.getInstance("SHA-256")));
+    }
+
+    @Test
+    void checkPrimitiveArrays() {
+        JSONArray longs = JSONValue.parse("[1,2,3]").toArray();
+        Assertions.assertTrue(longs.isPrimitive());
+        Assertions.assertEquals(6, longs.longStream().sum());
+        longs.add(4.5);
+        Assertions.assertFalse(longs.isPrimitive());
+        Assertions.assertEquals("[1,2,3,4.5]", longs.toString());
+        JSONArray doubles = JSONArray.ofDoubles(0.5, 1e-7);
+        Assertions.assertTrue(doubles.isPrimitive());
+        Assertions.assertEquals("[0.5,1.0E-7]", doubles.toString());
+        Assertions.assertEquals(1e-7, doubles.get(1).toDouble());
+        Assertions.assertEquals(doubles, JSONArray.parse(doubles.toString()));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> JSONArray.of(Arrays.asList(1, "a")).toLongArray());
+    }
+
+    @Test
+    void checkPointers() {
+        JSONValue document = JSONValue.parse("{\"a/b\":{\"m~n\":[10,20]},\"c\":[{\"d\":\"e\"}],\"f\":[1.5]}");
+        JSONPointer pointer = JSONPointer.compile("/a~1b/m~0n/1");
+        Assertions.assertEquals(20, pointer.getLong(document, -1));
+        Assertions.assertEquals(20.0, pointer.getDouble(document, -1));
+        Assertions.assertEquals(1.5, JSONPointer.compile("/f/0").getDouble(document, -1));
+        Assertions.assertEquals("e", JSONPointer.compile("/c/0/d").getString(document, null));
+        Assertions.assertEquals(-1, JSONPointer.compile("/a~1b/m~0n/2").getLong(document, -1));
+        Assertions.assertEquals(-1, JSONPointer.compile("/c/0/d").getInt(document, -1));
+        Assertions.assertFalse(JSONPointer.compile("/x/y").contains(document));
+        Assertions.assertSame(document, JSONPointer.compile("").resolve(document));
+        Assertions.assertEquals("/a~1b/m~0n/1", pointer.toString());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JSONPointer.compile("a"));
+    }
+
+    @Test
+    void checkPointersOnTapes() throws ParseException {
+        String text = "{\"a/b\":{\"m~n\":[10,20]},\"c\":[{\"d\":\"e\"}],\"n\":null}";
+        JSONStore<String> store = new JSONStore<>();
+        for (JSONValue document : new JSONValue[]{JSONTape.parse(text).getRoot(), store.put("doc", text)}) {
+            Assertions.assertEquals(20, JSONPointer.compile("/a~1b/m~0n/1").getLong(document, -1));
+            Assertions.assertEquals("e", JSONPointer.compile("/c/0/d").getString(document, null));
+            // the steps are looked up in the tape, not in materialized copies
+            Assertions.assertTrue(JSONPointer.compile("/c/0").resolve(document) instanceof TapeValue);
+            Assertions.assertTrue(JSONPointer.compile("/n").contains(document));
+            Assertions.assertFalse(JSONPointer.compile("/x").contains(document));
+            Assertions.assertNull(JSONPointer.compile("/c/1").resolve(document));
+            Assertions.assertNull(JSONPointer.compile("/c/-").resolve(document));
+        }
+    }
+
+    @Test
+    void checkParallelWrite() throws IOException {
+        ParallelJSONWriter writer = new ParallelJSONWriter(ForkJoinPool.commonPool(), 7);
+        JSONArray array = new JSONArray();
+        JSONObject object = new JSONObject();
+        for (int i = 0; i < 100; i++) {
+            array.add(new JSONObject().put("i", i));
+            object.put("k" + i, "\u00e9" + i);
+        }
+        Path file = Files.createTempFile("vjson", ".json");
+        try {
+            for (JSONValue value : new JSONValue[]{array, object, JSONArray.ofLongs(1, 2, 3), new JSONArray(), JSONValue.of("s")}) {
+                long written = writer.write(value, file);
+                byte[] bytes = Files.readAllBytes(file);
+                Assertions.assertEquals(bytes.length, written);
+                Assertions.assertEquals(value.deserialize(), new String(bytes, StandardCharsets.UTF_8));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void checkConcurrentCallbacks() {
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            ConcurrentJSONArray array = new ConcurrentJSONArray();
+            array.add(1).add(2);
+            Assertions.assertEquals(2, array.update(0, v -> array.size()).toInt());
+            Assertions.assertEquals(3, array.update(1, v -> JSONArray.parse(array.deserialize()).size() + 1).toInt());
+            Assertions.assertEquals("[2,3]", array.toString());
+            ConcurrentJSONObject object = new ConcurrentJSONObject().put("a", 1);
+            Assertions.assertEquals("{\"a\":1}", object.compute("b", (k, v) -> object.deserialize()).toString());
+            object.compute("c", (k, v) -> {
+                object.put("d", true);
+                return object.snapshot().size();
+            });
+            Assertions.assertEquals(3, object.toMap().get("c").toInt());
+            Assertions.assertTrue(object.toMap().get("d").toBoolean());
+        });
+    }
+
+    @Test
+    void checkConcurrentUpdates() throws InterruptedException {
+        ConcurrentJSONObject object = new ConcurrentJSONObject();
+        ConcurrentJSONArray array = new ConcurrentJSONArray().addLong(0);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            String own = "t" + t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    object.increment("shared", 1);
+                    object.merge(own, 1, (a, b) -> a.toLong() + b.toLong());
+                    array.update(0, v -> v.toLong() + 1);
+                    if (i % 100 == 0)
+                        JSONObject.parse(object.deserialize());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assertions.assertEquals(8000, object.toMap().get("shared").toLong());
+        Assertions.assertEquals(1000, object.snapshot().get("t3").toLong());
+        Assertions.assertEquals(8000, array.getLong(0));
+    }
+
+    @Test
+    void checkConcurrentArrayReads() throws InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean done = new AtomicBoolean();
+        ConcurrentJSONArray[] current = {new ConcurrentJSONArray()};
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    // equality and hashing must not see the elements while they are converted to values
+                    ConcurrentJSONArray array = current[0];
+                    array.isPrimitive();
+                    array.hashCode();
+                    Assertions.assertFalse(array.equals(new JSONArray().add("other")));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200 && failure.get() == null; i++) {
+            ConcurrentJSONArray array = new ConcurrentJSONArray();
+            current[0] = array;
+            for (int j = 0; j < 5000; j++)
+                array.addLong(j);
+            array.add("inflate");
+        }
+        done.set(true);
+        reader.join();
+        Assertions.assertNull(failure.get());
+        ConcurrentJSONArray array = new ConcurrentJSONArray().addLong(1).addLong(2);
+        Assertions.assertTrue(array.isPrimitive());
+        Assertions.assertEquals(new JSONArray().addLong(1).addLong(2), array);
+        Assertions.assertEquals(new JSONArray().addLong(1).addLong(2).hashCode(), array.hashCode());
+    }
+
+    @Test
+    void checkTranscoder() throws IOException {
+        String text = " { \"b\" : [ 1 , 2.50, { } , [ ] ] ,\n \"a\" : { \"c\" : \"\\u0041\\n\" , \"d\" : null } } ";
+        StringBuilder minified = new StringBuilder();
+        JSONTranscoder.minify(new DefaultJSONReader(text), minified);
+        // members keep their order, numbers and escapes are written like in a tree
+        Assertions.assertEquals("{\"b\":[1,2.5,{},[]],\"a\":{\"c\":\"A\\n\",\"d\":null}}", minified.toString());
+        String nested = "[{\"a\":[1,{\"b\":true}]},[],\"s\"]";
+        StringWriter pretty = new StringWriter();
+        JSONTranscoder.transcode(new StringReader(nested), pretty, new PrettyPrintConfig());
+        Assertions.assertEquals(JSONValue.parse(nested).toPrettyString(), pretty.toString());
+        Assertions.assertThrows(ParseException.class, () -> JSONTranscoder.minify(new DefaultJSONReader("[1,]"), new StringBuilder()));
+        Assertions.assertThrows(ParseException.class, () -> JSONTranscoder.minify(new DefaultJSONReader("{} []"), new StringBuilder()));
+    }
+
+    @Test
+    void checkTransform() {
+        JSONTransform transform = new JSONTransform()
+            .drop("/user/password")
+            .rename("/user/mail", "email")
+            .redact("/payments/*/card", "***")
+            .redact(value -> value.startsWith("secret"), null)
+            .inject("/user", "checked", true);
+        String in = "{\"user\":{\"name\":\"a\",\"password\":\"p\",\"mail\":\"m\",\"note\":\"secret!\"},"
+            + "\"payments\":[{\"card\":{\"no\":1},\"sum\":2},{\"card\":\"x\"}]}";
+        Assertions.assertEquals("{\"user\":{\"name\":\"a\",\"email\":\"m\",\"note\":null,\"checked\":true},"
+            + "\"payments\":[{\"card\":\"***\",\"sum\":2},{\"card\":\"***\"}]}", transform.transform(in));
+        Assertions.assertEquals("[1,3]", new JSONTransform().drop("/1").transform("[1,[2],3]"));
+        Assertions.assertThrows(ParseException.class, () -> transform.transform("{\"user\":"));
+        // commas are checked, not repaired, in kept and dropped values alike
+        JSONTransform dropping = new JSONTransform().drop("/x");
+        for (String malformed : new String[]{"[1 2]", "[1,,2]", "[1,2,]", "[,1]", "{\"a\":1 \"b\":2}", "{,}",
+            "{\"a\":1,}", "{\"x\":[1 2]}", "{\"x\":{\"a\":1,},\"b\":2}", "{\"x\":[[1],,[2]]}"})
+            Assertions.assertThrows(ParseException.class, () -> dropping.transform(malformed), malformed);
+        Assertions.assertEquals("{\"b\":[{}]}", dropping.transform("{\"x\":[[1],{\"a\":[]}],\"b\":[{}]}"));
+    }
+
+    @Test
+    void checkIndex() throws IOException {
+        Path file = Files.createTempFile("vjson", ".json");
+        try {
+            Files.write(file, "[ {\"id\":\"a\",\"v\":[1,\"]\"]}, {\"v\":\"\\\"{\",\"id\":\"b\"},\n3 ]".getBytes(StandardCharsets.UTF_8));
+            try (JSONIndex index = JSONIndex.open(file, "id")) {
+                Assertions.assertEquals(3, index.size());
+                Assertions.assertEquals("{\"id\":\"a\",\"v\":[1,\"]\"]}", new String(index.read(0), StandardCharsets.UTF_8));
+                Assertions.assertEquals("\"{", index.find("b").toObject().getString("v"));
+                Assertions.assertEquals(3, index.get(2).toInt());
+                Assertions.assertNull(index.find("c"));
+                Assertions.assertTrue(index.isCurrent());
+            }
+            Assertions.assertTrue(Files.exists(JSONIndex.sidecarOf(file)));
+            try (JSONIndex loaded = JSONIndex.load(file, JSONIndex.sidecarOf(file))) {
+                Assertions.assertEquals(1, loaded.indexOf("b"));
+            }
+            Files.write(file, "{}".getBytes(StandardCharsets.UTF_8));
+            Assertions.assertThrows(ParseException.class, () -> JSONIndex.build(file, null));
+        } finally {
+            Files.deleteIfExists(JSONIndex.sidecarOf(file));
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void checkParseAll() throws IOException {
+        Path directory = Files.createTempDirectory("vjson");
+        try {
+            List<Object> sources = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Path file = directory.resolve(i + ".json");
+                Files.write(file, (i == 7 ? "[" : "{\"i\":" + i + "}").getBytes(StandardCharsets.UTF_8));
+                sources.add(i % 2 == 0 ? file : file.toFile());
+            }
+            sources.add(directory.resolve("missing.json"));
+            sources.add(url);
+            List<ParseResult<Object>> results = new JSONParser().parseAll(sources, 3);
+            Assertions.assertEquals(sources.size(), results.size());
+            for (int i = 0; i < 20; i++) {
+                Assertions.assertSame(sources.get(i), results.get(i).getSource());
+                Assertions.assertEquals(i != 7, results.get(i).isSuccessful());
+                if (i != 7)
+                    Assertions.assertEquals(i, results.get(i).getValue().toObject().getInt("i"));
+            }
+            Assertions.assertTrue(results.get(7).getError() instanceof ParseException);
+            Assertions.assertTrue(results.get(20).getError() instanceof IOException);
+            Assertions.assertEquals(obj.toString(), results.get(21).getValue().toString());
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void checkHandler() {
+        StringBuilder events = new StringBuilder();
+        JSONHandler handler = new JSONHandler() {
+            @Override
+            public void startObject() {
+                events.append('{');
+            }
+
+            @Override
+            public void key(String key) {
+                events.append(key).append(':');
+            }
+
+            @Override
+            public void endObject() {
+                events.append('}');
+            }
+
+            @Override
+            public void startArray() {
+                events.append('[');
+            }
+
+            @Override
+            public void endArray() {
+                events.append(']');
+            }
+
+            @Override
+            public void value(long value) {
+                events.append('L').append(value).append(' ');
+            }
+
+            @Override
+            public void value(double value) {
+                events.append('D').append(value).append(' ');
+            }
+
+            @Override
+            public void value(Number value) {
+                events.append('N').append(value).append(' ');
+            }
+
+            @Override
+            public void value(CharSequence value) {
+                events.append('S').append(value).append(' ');
+            }
+
+            @Override
+            public void value(boolean value) {
+                events.append(value).append(' ');
+            }
+
+            @Override
+            public void nullValue() {
+                events.append("null ");
+            }
+        };
+        new JSONParser().parse(new DefaultJSONReader("{\"a\":[1,2.5,\"x\",true,null],\"b\":{}}"), handler);
+        Assertions.assertEquals("{a:[L1 D2.5 Sx true null ]b:{}}", events.toString());
+        events.setLength(0);
+        // callbacks are made as the document is read, up to the error
+        Assertions.assertThrows(ParseException.class, () -> new JSONParser().parse(new DefaultJSONReader("[1,{\"a\" 2}]"), handler));
+        Assertions.assertEquals("[L1 {a:", events.toString());
+    }
+
+    @Test
+    void checkRawViews() {
+        JSONObject object = JSONObject.parse("{\"a\":[1,{\"b\":\"c\"}],\"d\":null}");
+        Map<String, Object> view = object.asRawMap();
+        List<?> list = (List<?>) view.get("a");
+        Assertions.assertEquals(1L, ((Number) list.get(0)).longValue());
+        Assertions.assertEquals("c", ((Map<?, ?>) list.get(1)).get("b"));
+        Assertions.assertTrue(view.containsKey("d"));
+        Assertions.assertNull(view.get("d"));
+        // views are live and read-only
+        object.put("e", true);
+        Assertions.assertEquals(true, view.get("e"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> view.put("f", 1));
+        Assertions.assertThrows(UnsupportedOperationException.class, list::clear);
+        // getRaw still copies
+        Assertions.assertEquals(view, object.getRaw());
+        Assertions.assertNotSame(view, object.getRaw());
+    }
+
+    @Test
+    void checkExternalSort() throws IOException {
+        StringBuilder array = new StringBuilder("[");
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            int key = (i * 7919) % 100;
+            array.append(i == 0 ? "" : ",").append("{\"k\":").append(key).append(",\"i\":").append(i).append('}');
+            lines.append(key).append('\n');
+        }
+        array.append(']');
+        // small runs, so that the input is spilled and merged in more than one pass
+        ExternalSorter sorter = ExternalSorter.by(value -> value.toObject().getInt("k")).setRunSize(7);
+        StringBuilder sorted = new StringBuilder();
+        sorter.sortArray(new DefaultJSONReader(array.toString()), sorted);
+        JSONArray result = JSONArray.parse(sorted.toString());
+        Assertions.assertEquals(1000, result.size());
+        for (int i = 1; i < result.size(); i++) {
+            JSONObject previous = result.get(i - 1).toObject();
+            JSONObject current = result.get(i).toObject();
+            Assertions.assertTrue(previous.getInt("k") < current.getInt("k")
+                || previous.getInt("k") == current.getInt("k") && previous.getInt("i") < current.getInt("i"));
+        }
+        StringBuilder sortedLines = new StringBuilder();
+        ExternalSorter.by(JSONValue::toInt).setRunSize(10).sortLines(new DefaultJSONReader(lines.toString()), sortedLines);
+        Assertions.assertTrue(sortedLines.toString().startsWith("0\n0\n"));
+        Assertions.assertTrue(sortedLines.toString().endsWith("99\n"));
+        List<String> matches = new ArrayList<>();
+        ExternalSorter.mergeJoin(JSONArray.parse("[1,2,2,4]").toList().iterator(), JSONArray.parse("[2,2,3,4]").toList().iterator(),
+            JSONValue::toInt, (left, right) -> matches.add(left + "=" + right));
+        Assertions.assertEquals(Arrays.asList("2=2", "2=2", "2=2", "2=2", "4=4"), matches);
+    }
+
+    @Test
+    void checkRetainedSize() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++)
+            text.append(i == 0 ? "" : ",").append("{\"name\":\"value ").append(i).append("\",\"n\":[1,2]}");
+        text.append(']');
+        JSONValue value = JSONValue.parse(text.toString());
+        long estimate = value.estimateRetainedBytes();
+        // at least the characters themselves, and not absurdly more
+        Assertions.assertTrue(estimate > text.length() && estimate < text.length() * 50L, String.valueOf(estimate));
+        Assertions.assertTrue(JSONArray.ofLongs(new long[1000]).estimateRetainedBytes() >= 8000);
+        Assertions.assertEquals(0, JSONValue.parse("null").estimateRetainedBytes());
+        Assertions.assertEquals(text.length(), new JSONParser().setMaxRetainedBytes(estimate * 2).parse(text.toString()).toString().length());
+        ParseException exceeded = Assertions.assertThrows(ParseException.class,
+            () -> new JSONParser().setMaxRetainedBytes(estimate / 10).parse(text.toString()));
+        Assertions.assertEquals(ParseException.LIMIT_EXCEEDED, exceeded.getType());
+        // the budget trips while the document is read, not after it has been built
+        Assertions.assertTrue(exceeded.getPosition() > 0 && exceeded.getPosition() < text.length() / 2);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new JSONParser().setMaxRetainedBytes(-1));
+    }
+
+    @Test
+    void checkStoreReplaceAndRemove() throws ParseException {
+        JSONStore<String> store = new JSONStore<>(256);
+        store.put("a", "{\"name\":\"first\",\"n\":[1,2,3]}");
+        store.put("b", "[true,null]");
+        TapeValue first = store.get("a");
+        TapeValue second = store.get("b");
+        // replacing and removing free the regions, which must not be handed out to later documents
+        store.put("a", "{\"name\":\"replaced\"}");
+        Assertions.assertTrue(store.remove("b"));
+        for (int i = 0; i < 100; i++)
+            store.put("k" + i, "[\"filler " + i + "\"," + i + "]");
+        Assertions.assertEquals("{\"name\":\"first\",\"n\":[1,2,3]}", first.deserialize());
+        Assertions.assertEquals("[true,null]", second.deserialize());
+        Assertions.assertEquals("{\"name\":\"replaced\"}", store.get("a").deserialize());
+        Assertions.assertNull(store.get("b"));
+        Assertions.assertEquals(101, store.size());
+    }
+
+    @Test
+    void checkStoreCompact() throws ParseException {
+        JSONStore<Integer> store = new JSONStore<>(256);
+        for (int i = 0; i < 200; i++)
+            store.put(i, "{\"id\":" + i + ",\"tag\":\"t" + i + "\"}");
+        long used = store.getUsedBytes();
+        for (int i = 0; i < 200; i++)
+            if (i % 10 != 0)
+                store.remove(i);
+        Assertions.assertTrue(store.getUsedBytes() < used / 5);
+        TapeValue kept = store.get(50);
+        long allocated = store.getAllocatedBytes();
+        store.compact();
+        Assertions.assertTrue(store.getAllocatedBytes() < allocated, store.getAllocatedBytes() + " >= " + allocated);
+        Assertions.assertTrue(store.getAllocatedBytes() >= store.getUsedBytes());
+        Assertions.assertEquals("{\"id\":50,\"tag\":\"t50\"}", kept.deserialize());
+        for (int i = 0; i < 200; i += 10)
+            Assertions.assertEquals("{\"id\":" + i + ",\"tag\":\"t" + i + "\"}", store.get(i).deserialize());
+    }
+
+    @Test
+    void checkStoreConcurrentReaders() throws Exception {
+        JSONStore<String> store = new JSONStore<>(512);
+        store.put("doc", "[0,\"v0\"]");
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get() && failure.get() == null) {
+                // a view must keep showing one consistent version of the document
+                try {
+                    TapeValue view = store.get("doc");
+                    String text = view.deserialize();
+                    int n = Integer.parseInt(text.substring(1, text.indexOf(',')));
+                    if (!text.equals("[" + n + ",\"v" + n + "\"]") || !view.deserialize().equals(text))
+                        failure.set(text);
+                } catch (RuntimeException e) {
+                    failure.set(e.toString());
+                }
+            }
+        });
+        reader.start();
+        for (int i = 1; i < 20000; i++) {
+            store.put("doc", "[" + i + ",\"v" + i + "\"]");
+            if (i % 1000 == 0)
+                store.compact();
+        }
+        done.set(true);
+        reader.join();
+        Assertions.assertNull(failure.get());
+    }
+}